@@ -10,9 +10,20 @@ import simpledb.log.LogMgr;
  * the number of times the buffer has been pinned,
  * whether its contents have been modified,
  * and if so, the id and lsn of the modifying transaction.
+ * <P>
+ * The last bytes of each data page hold the page LSN,
+ * the LSN of the latest logged change to the page.
+ * It is written to disk with the page, so recovery can
+ * tell which changes a page already contains.
+ * <P>
+ * The buffer is also the latch of its page: as transactions
+ * modify different records of a page at the same time,
+ * they access the page while synchronized on the buffer,
+ * and the buffer writes the page to disk the same way.
  * @author Edward Sciore
  */
 public class Buffer {
+   public static final int PAGE_LSN_SIZE = Integer.BYTES;
    public static int numFlushes = 0;
    private FileMgr fm;
    private LogMgr lm;
@@ -21,6 +32,7 @@ public class Buffer {
    private int pins = 0;
    private int txnum = -1;
    private int lsn = -1;
+   private volatile int recLSN = -1;
 
    public Buffer(FileMgr fm, LogMgr lm) {
       this.fm = fm;
@@ -41,10 +53,46 @@ public class Buffer {
       return blk;
    }
 
+   /**
+    * Marks the buffer as modified by the specified transaction.
+    * If the change was logged, its LSN becomes the page LSN
+    * (and the LSN up to which the log is flushed before the page
+    * is written), unless the buffer already has a later one
+    * from another transaction's change to the page.
+    * Must be called while synchronized on the buffer.
+    * @param txnum the id of the modifying transaction
+    * @param lsn the LSN of the change's log record, or -1 if it was not logged
+    */
    public void setModified(int txnum, int lsn) {
       this.txnum = txnum;
-      if (lsn >= 0)
-         this.lsn = lsn;
+      if (lsn >= 0) {
+         if (lsn > this.lsn)
+            this.lsn = lsn;
+         if (recLSN < 0)
+            recLSN = lsn;
+         if (lsn > pageLSN())
+            contents.setInt(fm.blockSize() - PAGE_LSN_SIZE, lsn);
+      }
+   }
+
+   /**
+    * Returns the page LSN, which is stored at the end of the page:
+    * the LSN of the latest logged change to the page,
+    * or 0 if the page has never had a logged change.
+    * @return the page LSN
+    */
+   public int pageLSN() {
+      return contents.getInt(fm.blockSize() - PAGE_LSN_SIZE);
+   }
+
+   /**
+    * Returns the recovery LSN of the buffer: the LSN of the
+    * first logged change made since its contents were
+    * last written to disk, or -1 if there is none.
+    * @return the buffer's recovery LSN
+    */
+   public int recoveryLSN() {
+      return recLSN;
    }
 
    /**
@@ -77,11 +125,12 @@ public class Buffer {
    /**
     * Write the buffer to its disk block if it is dirty.
     */
-   void flush() {
+   synchronized void flush() {
       if (txnum >= 0) {
          lm.flush(lsn);
          fm.write(blk, contents);
          txnum = -1;
+         recLSN = -1;
       }
    }
 
@@ -0,0 +1,66 @@
+package simpledb.buffer;
+
+/**
+ * The background thread that writes dirty buffers to disk
+ * ahead of their replacement.
+ * The thread is a daemon, so it does not keep the
+ * server process alive.
+ * It is stopped with a flag rather than an interrupt:
+ * interrupting a thread inside FileChannel.write closes
+ * the channel, which the file manager shares with every
+ * other user of that file.
+ */
+class BufferFlusher extends Thread {
+   private BufferPartition[] partitions;
+   private double high, low;
+   private long interval;
+   private volatile boolean stopped = false;
+   private final Object monitor = new Object();
+
+   BufferFlusher(BufferPartition[] partitions, double high, double low, long interval) {
+      super("buffer-flusher");
+      this.partitions = partitions;
+      this.high = high;
+      this.low = low;
+      this.interval = interval;
+      setDaemon(true);
+   }
+
+   public void run() {
+      while (!stopped) {
+         for (BufferPartition part : partitions)
+            part.flushDirty(high, low);
+         synchronized (monitor) {
+            try {
+               if (!stopped)
+                  monitor.wait(interval);
+            }
+            catch (InterruptedException e) {
+               return;
+            }
+         }
+      }
+   }
+
+   /**
+    * Stops the thread after its current pass,
+    * and waits for it to finish.
+    */
+   void shutdown() {
+      synchronized (monitor) {
+         stopped = true;
+         monitor.notifyAll();
+      }
+      boolean interrupted = false;
+      while (isAlive()) {
+         try {
+            join();
+         }
+         catch (InterruptedException e) {
+            interrupted = true;
+         }
+      }
+      if (interrupted)
+         Thread.currentThread().interrupt();
+   }
+}
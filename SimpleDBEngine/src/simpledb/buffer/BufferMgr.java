@@ -1,71 +1,223 @@
 package simpledb.buffer;
 
+import java.util.*;
 import simpledb.file.*;
 import simpledb.log.LogMgr;
 
 /**
  * Manages the pinning and unpinning of buffers to blocks.
+ * The pool is split into partitions, each with its own lock,
+ * and a block is always served by the partition its id hashes to.
+ * Pins of blocks in different partitions therefore never contend.
  * @author Edward Sciore
  *
  */
 public class BufferMgr {
-   private Buffer[] bufferpool;
-   private int numAvailable;
-   private static final long MAX_TIME = 10000; // 10 seconds
+   // the smallest number of buffers the default partitioning will put in a partition
+   private static final int MIN_PARTITION_SIZE = 128;
+   private static final int MAX_PARTITIONS = 16;
+   private FileMgr fm;
+   private BufferPartition[] partitions;
+   private BufferFlusher flusher = null;
    
    /**
     * Creates a buffer manager having the specified number 
     * of buffer slots.
     * This constructor depends on a {@link FileMgr} and
     * {@link simpledb.log.LogMgr LogMgr} object.
+    * Buffers are replaced in least-recently-used order.
     * @param numbuffs the number of buffer slots to allocate
     */
    public BufferMgr(FileMgr fm, LogMgr lm, int numbuffs) {
-      bufferpool = new Buffer[numbuffs];
-      numAvailable = numbuffs;
-      for (int i=0; i<numbuffs; i++)
-         bufferpool[i] = new Buffer(fm, lm);
+      this(fm, lm, numbuffs, "lru");
+   }
+
+   /**
+    * Creates a buffer manager having the specified number
+    * of buffer slots and replacement policy.
+    * The pool is given one partition for every 128 buffers,
+    * up to 16 partitions; small pools have a single partition,
+    * so that no block has to wait while another
+    * partition has a free buffer.
+    * @param numbuffs the number of buffer slots to allocate
+    * @param policyname the name of the replacement policy
+    * @see ReplacementPolicy#create(String)
+    */
+   public BufferMgr(FileMgr fm, LogMgr lm, int numbuffs, String policyname) {
+      this(fm, lm, numbuffs, policyname, defaultPartitions(numbuffs));
+   }
+
+   /**
+    * Creates a buffer manager having the specified number
+    * of buffer slots, divided as evenly as possible
+    * among the specified number of partitions.
+    * @param numbuffs the number of buffer slots to allocate
+    * @param policyname the name of the replacement policy
+    * @param numparts the number of partitions
+    */
+   public BufferMgr(FileMgr fm, LogMgr lm, int numbuffs, String policyname, int numparts) {
+      this.fm = fm;
+      numparts = Math.max(1, Math.min(numparts, numbuffs));
+      partitions = new BufferPartition[numparts];
+      for (int i=0; i<numparts; i++) {
+         int size = numbuffs / numparts + (i < numbuffs % numparts ? 1 : 0);
+         partitions[i] = new BufferPartition(fm, lm, size, policyname);
+      }
    }
    
    /**
     * Returns the number of available (i.e. unpinned) buffers.
     * @return the number of available buffers
     */
-   public synchronized int available() {
+   public int available() {
+      int numAvailable = 0;
+      for (BufferPartition part : partitions)
+         numAvailable += part.available();
       return numAvailable;
    }
+
+   /**
+    * Returns the number of pins that found their block
+    * already in the pool.
+    * @return the number of buffer hits
+    */
+   public long hits() {
+      long hits = 0;
+      for (BufferPartition part : partitions)
+         hits += part.hits();
+      return hits;
+   }
+
+   /**
+    * Returns the number of pins that had to read their
+    * block into a buffer.
+    * @return the number of buffer misses
+    */
+   public long misses() {
+      long misses = 0;
+      for (BufferPartition part : partitions)
+         misses += part.misses();
+      return misses;
+   }
+
+   /**
+    * Resets the hit and miss counters to zero.
+    */
+   public void resetStatistics() {
+      for (BufferPartition part : partitions)
+         part.resetStatistics();
+   }
+
+   /**
+    * Returns the number of independently-locked partitions.
+    * @return the number of partitions
+    */
+   public int partitions() {
+      return partitions.length;
+   }
    
    /**
-    * Flushes the dirty buffers modified by the specified transaction.
+    * Flushes the dirty buffers modified by the specified transaction,
+    * and forces the written files to disk.
     * @param txnum the transaction's id number
     */
-   public synchronized void flushAll(int txnum) {
-      for (Buffer buff : bufferpool)
-         if (buff.modifyingTx() == txnum)
-         buff.flush();
+   public void flushAll(int txnum) {
+      for (BufferPartition part : partitions)
+         part.flushAll(txnum);
+      fm.syncAll();
    }
 
    /**
-    * Flushes all dirty buffers modified by any transaction
+    * Flushes all dirty buffers modified by any transaction,
+    * and forces the written files to disk.
     */
-   public synchronized void flushAll(){
-      for (Buffer buff : bufferpool)
-         if (buff.modifyingTx() >= 0)
-            buff.flush();
+   public void flushAll(){
+      for (BufferPartition part : partitions)
+         part.flushAll();
+      fm.syncAll();
    }
    
+   /**
+    * Returns the number of buffers whose contents have
+    * been modified but not yet written to disk.
+    * @return the number of dirty buffers
+    */
+   public int dirtyCount() {
+      int dirty = 0;
+      for (BufferPartition part : partitions)
+         dirty += part.dirtyCount();
+      return dirty;
+   }
+
+   /**
+    * Writes the unpinned buffers that have held unwritten
+    * changes since before the specified LSN,
+    * and forces the written files to disk.
+    * Used by checkpoints, so that a page that stays
+    * in the pool does not hold back log truncation forever.
+    * @param lsn the oldest recovery LSN to keep
+    */
+   public void flushOlderThan(int lsn) {
+      for (BufferPartition part : partitions)
+         part.flushOlderThan(lsn);
+      fm.syncAll();
+   }
+
+   /**
+    * Returns the dirty page table: each block whose buffer
+    * holds logged changes not yet written to disk,
+    * with the buffer's recovery LSN.
+    * Used by fuzzy checkpoints.
+    * @return the recovery LSN of each dirty block
+    */
+   public Map<BlockId,Integer> dirtyPages() {
+      Map<BlockId,Integer> dpt = new LinkedHashMap<>();
+      for (BufferPartition part : partitions)
+         part.dirtyPages(dpt);
+      return dpt;
+   }
+
+   /**
+    * Starts a background thread that writes unpinned dirty
+    * buffers to disk, so that a pin that needs to replace a
+    * buffer usually finds a clean one and does not have to
+    * wait for a write.
+    * Every interval, each partition in which more than
+    * the high-watermark fraction of buffers are dirty
+    * is flushed down to the low-watermark fraction.
+    * As with any other flush, the log is first flushed
+    * up to the buffer's LSN.
+    * @param high the fraction of dirty buffers that triggers flushing
+    * @param low the fraction of dirty buffers at which flushing stops
+    * @param interval the time between checks, in milliseconds
+    */
+   public synchronized void startFlusher(double high, double low, long interval) {
+      if (low > high)
+         throw new IllegalArgumentException("low watermark exceeds high watermark");
+      stopFlusher();
+      flusher = new BufferFlusher(partitions, high, low, interval);
+      flusher.start();
+   }
+
+   /**
+    * Stops the background flusher thread, if one is running,
+    * and waits for it to finish the pass it is making.
+    */
+   public synchronized void stopFlusher() {
+      if (flusher != null) {
+         flusher.shutdown();
+         flusher = null;
+      }
+   }
    
    /**
     * Unpins the specified data buffer. If its pin count
-    * goes to zero, then notify any waiting threads.
+    * goes to zero, then notify any threads waiting
+    * on that buffer's partition.
     * @param buff the buffer to be unpinned
     */
-   public synchronized void unpin(Buffer buff) {
-      buff.unpin();
-      if (!buff.isPinned()) {
-         numAvailable++;
-         notifyAll();
-      }
+   public void unpin(Buffer buff) {
+      partitionFor(buff.block()).unpin(buff);
    }
    
    /**
@@ -76,63 +228,17 @@ public class BufferMgr {
     * @param blk a reference to a disk block
     * @return the buffer pinned to that block
     */
-   public synchronized Buffer pin(BlockId blk) {
-      try {
-         long timestamp = System.currentTimeMillis();
-         Buffer buff = tryToPin(blk);
-         while (buff == null && !waitingTooLong(timestamp)) {
-            wait(MAX_TIME);
-            buff = tryToPin(blk);
-         }
-         if (buff == null)
-            throw new BufferAbortException();
-         return buff;
-      }
-      catch(InterruptedException e) {
-         throw new BufferAbortException();
-      }
-   }  
-   
-   private boolean waitingTooLong(long starttime) {
-      return System.currentTimeMillis() - starttime > MAX_TIME;
+   public Buffer pin(BlockId blk) {
+      return partitionFor(blk).pin(blk);
    }
-   
-   /**
-    * Tries to pin a buffer to the specified block. 
-    * If there is already a buffer assigned to that block
-    * then that buffer is used;  
-    * otherwise, an unpinned buffer from the pool is chosen.
-    * Returns a null value if there are no available buffers.
-    * @param blk a reference to a disk block
-    * @return the pinned buffer
-    */
-   private Buffer tryToPin(BlockId blk) {
-      Buffer buff = findExistingBuffer(blk);
-      if (buff == null) {
-         buff = chooseUnpinnedBuffer();
-         if (buff == null)
-            return null;
-         buff.assignToBlock(blk);
-      }
-      if (!buff.isPinned())
-         numAvailable--;
-      buff.pin();
-      return buff;
-   }
-   
-   private Buffer findExistingBuffer(BlockId blk) {
-      for (Buffer buff : bufferpool) {
-         BlockId b = buff.block();
-         if (b != null && b.equals(blk))
-            return buff;
-      }
-      return null;
+
+   private BufferPartition partitionFor(BlockId blk) {
+      int h = blk.hashCode();
+      h ^= (h >>> 16);
+      return partitions[(h & Integer.MAX_VALUE) % partitions.length];
    }
-   
-   private Buffer chooseUnpinnedBuffer() {
-      for (Buffer buff : bufferpool)
-         if (!buff.isPinned())
-         return buff;
-      return null;
+
+   private static int defaultPartitions(int numbuffs) {
+      return Math.max(1, Math.min(MAX_PARTITIONS, numbuffs / MIN_PARTITION_SIZE));
    }
 }
@@ -0,0 +1,39 @@
+package simpledb.buffer;
+
+import java.util.Random;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+
+/**
+ * Measures pin/unpin throughput as the buffer pool grows.
+ * Each round first touches every block once, so that the
+ * timed loop consists of buffer hits only; the cost then
+ * reflects the lookup and free-list work done by the
+ * buffer manager rather than disk I/O.
+ */
+public class BufferMgrBenchmark {
+   private static final int[] POOL_SIZES = {8, 64, 512, 4096, 32768};
+   private static final int OPS = 2000000;
+
+   public static void main(String[] args) {
+      for (int numbuffs : POOL_SIZES) {
+         SimpleDB db = new SimpleDB("buffermgrbenchmark", 400, numbuffs);
+         BufferMgr bm = db.bufferMgr();
+         BlockId[] blocks = new BlockId[numbuffs];
+         for (int i=0; i<numbuffs; i++) {
+            blocks[i] = new BlockId("benchfile", i);
+            bm.unpin(bm.pin(blocks[i]));
+         }
+
+         Random rand = new Random(448);
+         long start = System.nanoTime();
+         for (int i=0; i<OPS; i++) {
+            Buffer buff = bm.pin(blocks[rand.nextInt(numbuffs)]);
+            bm.unpin(buff);
+         }
+         double secs = (System.nanoTime() - start) / 1e9;
+         System.out.printf("pool size %6d: %,12.0f pin/unpin pairs per second%n",
+                           numbuffs, OPS / secs);
+      }
+   }
+}
@@ -0,0 +1,51 @@
+package simpledb.buffer;
+
+import java.util.Random;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+
+/**
+ * Measures pin/unpin throughput as the number of client
+ * threads grows, for a single-partition pool and for a
+ * partitioned pool of the same size.
+ * All pins are hits, so the numbers reflect lock contention
+ * in the buffer manager rather than disk I/O.
+ */
+public class BufferMgrConcurrencyBenchmark {
+   private static final int NUMBUFFS = 4096;
+   private static final int[] PARTITIONS = {1, 16};
+   private static final int[] THREADS = {1, 2, 4, 8, 16};
+   private static final int OPS_PER_THREAD = 500000;
+
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("bufferconcurrencybenchmark", 400, 8);
+      FileMgr fm = db.fileMgr();
+      System.out.println("available processors: " + Runtime.getRuntime().availableProcessors());
+      for (int numparts : PARTITIONS) {
+         BufferMgr bm = new BufferMgr(fm, db.logMgr(), NUMBUFFS, "lru", numparts);
+         BlockId[] blocks = new BlockId[NUMBUFFS];
+         for (int i=0; i<NUMBUFFS; i++) {
+            blocks[i] = new BlockId("benchfile", i);
+            bm.unpin(bm.pin(blocks[i]));
+         }
+         for (int numthreads : THREADS) {
+            Thread[] threads = new Thread[numthreads];
+            for (int t=0; t<numthreads; t++) {
+               Random rand = new Random(t);
+               threads[t] = new Thread(() -> {
+                  for (int i=0; i<OPS_PER_THREAD; i++)
+                     bm.unpin(bm.pin(blocks[rand.nextInt(NUMBUFFS)]));
+               });
+            }
+            long start = System.nanoTime();
+            for (Thread t : threads)
+               t.start();
+            for (Thread t : threads)
+               t.join();
+            double secs = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%2d partition(s), %2d thread(s): %,12.0f pin/unpin pairs per second%n",
+                              numparts, numthreads, numthreads * OPS_PER_THREAD / secs);
+         }
+      }
+   }
+}
@@ -0,0 +1,183 @@
+package simpledb.buffer;
+
+import java.util.*;
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+
+/**
+ * One independently-locked partition of the buffer pool.
+ * Each block is always handled by the same partition,
+ * so a partition can look up, replace and wait for buffers
+ * without coordinating with the others.
+ * Threads that cannot get a buffer wait on the partition's
+ * own monitor, and are only woken by unpins in that partition.
+ */
+class BufferPartition {
+   private Buffer[] bufferpool;
+   private Map<BlockId,Buffer> bufferMap = new HashMap<>();
+   private ReplacementPolicy policy;
+   private int numAvailable;
+   private long hits = 0, misses = 0;
+   private static final long MAX_TIME = 10000; // 10 seconds
+
+   BufferPartition(FileMgr fm, LogMgr lm, int numbuffs, String policyname) {
+      bufferpool = new Buffer[numbuffs];
+      numAvailable = numbuffs;
+      policy = ReplacementPolicy.create(policyname);
+      for (int i=0; i<numbuffs; i++) {
+         bufferpool[i] = new Buffer(fm, lm);
+         policy.unpinned(bufferpool[i]);
+      }
+   }
+
+   synchronized int available() {
+      return numAvailable;
+   }
+
+   synchronized long hits() {
+      return hits;
+   }
+
+   synchronized long misses() {
+      return misses;
+   }
+
+   synchronized void resetStatistics() {
+      hits = 0;
+      misses = 0;
+   }
+
+   synchronized void flushAll(int txnum) {
+      for (Buffer buff : bufferpool)
+         if (buff.modifyingTx() == txnum)
+            buff.flush();
+   }
+
+   synchronized void flushAll() {
+      for (Buffer buff : bufferpool)
+         if (buff.modifyingTx() >= 0)
+            buff.flush();
+   }
+
+   /**
+    * If more than the high-watermark fraction of the partition's
+    * buffers are dirty, writes unpinned dirty buffers to disk
+    * until no more than the low-watermark fraction remain dirty.
+    * The partition lock is taken separately for each buffer,
+    * so pins in this partition wait for at most one write.
+    * @param high the fraction of dirty buffers that triggers flushing
+    * @param low the fraction of dirty buffers at which flushing stops
+    * @return the number of buffers written
+    */
+   int flushDirty(double high, double low) {
+      int dirty = dirtyCount();
+      if (dirty <= high * bufferpool.length)
+         return 0;
+      int flushed = 0;
+      for (int i=0; i<bufferpool.length && dirty > low * bufferpool.length; i++) {
+         synchronized (this) {
+            Buffer buff = bufferpool[i];
+            if (!buff.isPinned() && buff.modifyingTx() >= 0) {
+               buff.flush();
+               dirty--;
+               flushed++;
+            }
+         }
+      }
+      return flushed;
+   }
+
+   /**
+    * Writes the unpinned buffers whose recovery LSN is
+    * older than the specified LSN, taking the partition
+    * lock separately for each buffer.
+    * @param lsn the oldest recovery LSN to keep
+    */
+   void flushOlderThan(int lsn) {
+      for (int i=0; i<bufferpool.length; i++) {
+         synchronized (this) {
+            Buffer buff = bufferpool[i];
+            int reclsn = buff.recoveryLSN();
+            if (!buff.isPinned() && reclsn >= 0 && reclsn < lsn)
+               buff.flush();
+         }
+      }
+   }
+
+   synchronized void dirtyPages(Map<BlockId,Integer> dpt) {
+      for (Buffer buff : bufferpool)
+         if (buff.recoveryLSN() >= 0)
+            dpt.put(buff.block(), buff.recoveryLSN());
+   }
+
+   synchronized int dirtyCount() {
+      int dirty = 0;
+      for (Buffer buff : bufferpool)
+         if (buff.modifyingTx() >= 0)
+            dirty++;
+      return dirty;
+   }
+
+   synchronized void unpin(Buffer buff) {
+      buff.unpin();
+      if (!buff.isPinned()) {
+         numAvailable++;
+         policy.unpinned(buff);
+         notifyAll();
+      }
+   }
+
+   synchronized Buffer pin(BlockId blk) {
+      try {
+         long timestamp = System.currentTimeMillis();
+         Buffer buff = tryToPin(blk);
+         while (buff == null && !waitingTooLong(timestamp)) {
+            wait(MAX_TIME);
+            buff = tryToPin(blk);
+         }
+         if (buff == null)
+            throw new BufferAbortException();
+         return buff;
+      }
+      catch(InterruptedException e) {
+         throw new BufferAbortException();
+      }
+   }
+
+   private boolean waitingTooLong(long starttime) {
+      return System.currentTimeMillis() - starttime > MAX_TIME;
+   }
+
+   /**
+    * Tries to pin a buffer to the specified block. 
+    * If there is already a buffer assigned to that block
+    * then that buffer is used;  
+    * otherwise, an unpinned buffer from the partition is chosen.
+    * Returns a null value if there are no available buffers.
+    * The block-to-buffer map is kept in step with the
+    * buffer's assignment, so both lookups take constant time.
+    * @param blk a reference to a disk block
+    * @return the pinned buffer
+    */
+   private Buffer tryToPin(BlockId blk) {
+      Buffer buff = bufferMap.get(blk);
+      if (buff != null)
+         hits++;
+      else {
+         buff = policy.chooseUnpinnedBuffer();
+         if (buff == null)
+            return null;
+         BlockId oldblk = buff.block();
+         if (oldblk != null)
+            bufferMap.remove(oldblk, buff);
+         buff.assignToBlock(blk);
+         bufferMap.put(blk, buff);
+         misses++;
+      }
+      if (!buff.isPinned())
+         numAvailable--;
+      buff.pin();
+      policy.pinned(buff);
+      return buff;
+   }
+}
@@ -0,0 +1,49 @@
+package simpledb.buffer;
+
+import java.util.*;
+
+/**
+ * The clock (second-chance) replacement policy.
+ * Each buffer has a reference bit that is set when it is pinned.
+ * The clock hand sweeps the buffers in a circle, clearing
+ * reference bits as it goes, and stops at the first unpinned
+ * buffer whose bit is already clear.
+ */
+class ClockPolicy implements ReplacementPolicy {
+   private List<Buffer> frames = new ArrayList<>();
+   private Map<Buffer,Integer> frameOf = new HashMap<>();
+   private BitSet refbits = new BitSet();
+   private int hand = 0;
+
+   public void pinned(Buffer buff) {
+      refbits.set(frameOf.get(buff));
+   }
+
+   public void unpinned(Buffer buff) {
+      if (!frameOf.containsKey(buff)) {
+         frameOf.put(buff, frames.size());
+         frames.add(buff);
+      }
+   }
+
+   /**
+    * Sweeps at most twice around the clock:
+    * the first pass may only clear reference bits,
+    * so an unpinned buffer is certain to be found on the second.
+    */
+   public Buffer chooseUnpinnedBuffer() {
+      int n = frames.size();
+      for (int i=0; i<2*n; i++) {
+         int frame = hand;
+         hand = (hand + 1) % n;
+         Buffer buff = frames.get(frame);
+         if (buff.isPinned())
+            continue;
+         if (refbits.get(frame))
+            refbits.clear(frame);
+         else
+            return buff;
+      }
+      return null;
+   }
+}
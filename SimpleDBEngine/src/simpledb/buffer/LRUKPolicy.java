@@ -0,0 +1,108 @@
+package simpledb.buffer;
+
+import java.util.*;
+import simpledb.file.BlockId;
+
+/**
+ * The LRU-K replacement policy.
+ * The policy remembers the times of the last K references
+ * to each block, and evicts the unpinned buffer whose K-th
+ * most recent reference is oldest.
+ * A block referenced fewer than K times is evicted before any
+ * block referenced K times, so blocks touched once by a
+ * sequential scan cannot push out frequently-used blocks
+ * such as those of the catalog tables.
+ * Reference histories are retained for a while after a block
+ * leaves the pool, so that a block that is re-read soon keeps
+ * its history.
+ * <p>
+ * The unpinned buffers are kept sorted by their K-th reference
+ * time, which cannot change until the buffer is pinned again,
+ * so choosing a victim takes logarithmic time.
+ * Only a reference moves a block's history to the end of the
+ * retention order; looking it up does not.
+ */
+class LRUKPolicy implements ReplacementPolicy {
+   private int k;
+   private long clock = 0;
+   private long unpins = 0;
+   private int numbuffs = 0;
+   private TreeSet<Candidate> victims = new TreeSet<>();
+   private Map<Buffer,Candidate> candidates = new HashMap<>();
+   private Map<BlockId,long[]> history =
+         new LinkedHashMap<BlockId,long[]>() {
+      protected boolean removeEldestEntry(Map.Entry<BlockId,long[]> eldest) {
+         return size() > 4 * numbuffs;
+      }
+   };
+
+   public LRUKPolicy(int k) {
+      this.k = k;
+   }
+
+   /**
+    * Records a reference to the buffer's block.
+    * The history array holds the last K reference times,
+    * most recent first.
+    */
+   public void pinned(Buffer buff) {
+      Candidate c = candidates.remove(buff);
+      if (c != null)
+         victims.remove(c);
+      long[] refs = history.remove(buff.block());
+      if (refs == null)
+         refs = new long[k];
+      System.arraycopy(refs, 0, refs, 1, k-1);
+      refs[0] = ++clock;
+      history.put(buff.block(), refs);
+   }
+
+   /**
+    * Makes the buffer a candidate for replacement.
+    * A buffer that holds no block has a K-th reference time
+    * of -1, and one whose block has fewer than K references
+    * has a K-th reference time of 0.
+    */
+   public void unpinned(Buffer buff) {
+      long kth;
+      if (buff.block() == null) {
+         numbuffs++;
+         kth = -1;
+      }
+      else {
+         long[] refs = history.get(buff.block());
+         kth = (refs == null) ? 0 : refs[k-1];
+      }
+      Candidate c = new Candidate(buff, kth, ++unpins);
+      victims.add(c);
+      candidates.put(buff, c);
+   }
+
+   /**
+    * Chooses the unpinned buffer having the oldest K-th reference.
+    * Ties are broken in least-recently-unpinned order.
+    */
+   public Buffer chooseUnpinnedBuffer() {
+      return victims.isEmpty() ? null : victims.first().buff;
+   }
+
+   /**
+    * An unpinned buffer, ordered by the K-th reference time
+    * of its block and then by the time it was unpinned.
+    */
+   private static class Candidate implements Comparable<Candidate> {
+      private Buffer buff;
+      private long kth, unpinned;
+
+      Candidate(Buffer buff, long kth, long unpinned) {
+         this.buff = buff;
+         this.kth = kth;
+         this.unpinned = unpinned;
+      }
+
+      public int compareTo(Candidate c) {
+         int cmp = Long.compare(kth, c.kth);
+         return (cmp != 0) ? cmp : Long.compare(unpinned, c.unpinned);
+      }
+   }
+}
@@ -0,0 +1,27 @@
+package simpledb.buffer;
+
+import java.util.*;
+
+/**
+ * The least-recently-used replacement policy.
+ * Unpinned buffers are kept on a free list in the order
+ * in which they were unpinned; the victim is the buffer
+ * at the head of that list.
+ * Every operation takes constant time.
+ */
+class LRUPolicy implements ReplacementPolicy {
+   private Set<Buffer> freeList = new LinkedHashSet<>();
+
+   public void pinned(Buffer buff) {
+      freeList.remove(buff);
+   }
+
+   public void unpinned(Buffer buff) {
+      freeList.add(buff);
+   }
+
+   public Buffer chooseUnpinnedBuffer() {
+      Iterator<Buffer> iter = freeList.iterator();
+      return iter.hasNext() ? iter.next() : null;
+   }
+}
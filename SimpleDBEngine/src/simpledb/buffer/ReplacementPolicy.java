@@ -0,0 +1,55 @@
+package simpledb.buffer;
+
+/**
+ * The interface implemented by each buffer replacement strategy.
+ * The buffer manager tells the policy whenever a buffer is
+ * pinned or becomes unpinned, and asks it to choose a
+ * victim when a block must be read into the pool.
+ * A policy is only ever called while the buffer manager
+ * holds its lock, so implementations need no synchronization.
+ */
+public interface ReplacementPolicy {
+
+   /**
+    * Called each time a buffer is pinned, whether the block
+    * was already in the pool or has just been read into it.
+    * @param buff the pinned buffer
+    */
+   void pinned(Buffer buff);
+
+   /**
+    * Called when a buffer's pin count drops to zero,
+    * and once for every buffer when the pool is created.
+    * @param buff the buffer that is now unpinned
+    */
+   void unpinned(Buffer buff);
+
+   /**
+    * Chooses an unpinned buffer to be reassigned.
+    * The buffer manager will pin the returned buffer
+    * (and so call {@link #pinned(Buffer)}) immediately afterwards.
+    * @return an unpinned buffer, or null if all buffers are pinned
+    */
+   Buffer chooseUnpinnedBuffer();
+
+   /**
+    * Create the replacement policy having the specified name.
+    * The recognized names are "lru", "clock" and "lru-k"
+    * (which uses the two most recent references of a block).
+    * @param name the name of the policy
+    * @return a new policy object
+    */
+   static ReplacementPolicy create(String name) {
+      switch (name.toLowerCase()) {
+      case "lru":
+         return new LRUPolicy();
+      case "clock":
+         return new ClockPolicy();
+      case "lru-k":
+      case "lru2":
+         return new LRUKPolicy(2);
+      default:
+         throw new IllegalArgumentException("unknown replacement policy " + name);
+      }
+   }
+}
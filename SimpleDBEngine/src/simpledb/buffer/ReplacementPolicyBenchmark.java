@@ -0,0 +1,39 @@
+package simpledb.buffer;
+
+import java.util.Random;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+
+/**
+ * Compares the hit ratios of the replacement policies on a
+ * workload that mixes a small set of hot blocks (standing in
+ * for the catalog tables) with repeated sequential scans of a
+ * table that is larger than the buffer pool.
+ */
+public class ReplacementPolicyBenchmark {
+   private static final String[] POLICIES = {"lru", "clock", "lru-k"};
+   private static final int NUMBUFFS = 64;
+   private static final int HOT_BLOCKS = 16;
+   private static final int SCAN_BLOCKS = 200;
+   private static final int ROUNDS = 200;
+
+   public static void main(String[] args) {
+      for (String policy : POLICIES) {
+         SimpleDB db = new SimpleDB("policybenchmark", 400, NUMBUFFS, policy);
+         BufferMgr bm = db.bufferMgr();
+         Random rand = new Random(448);
+         for (int r=0; r<ROUNDS; r++) {
+            for (int i=0; i<SCAN_BLOCKS; i++) {
+               // every few blocks of the scan, look something up in the catalog
+               if (i % 4 == 0)
+                  bm.unpin(bm.pin(new BlockId("hotfile", rand.nextInt(HOT_BLOCKS))));
+               bm.unpin(bm.pin(new BlockId("scanfile", i)));
+            }
+         }
+         long hits = bm.hits();
+         long misses = bm.misses();
+         System.out.printf("%-6s hits %8d  misses %8d  hit ratio %.3f%n",
+                           policy, hits, misses, hits / (double) (hits + misses));
+      }
+   }
+}
@@ -0,0 +1,43 @@
+package simpledb.file;
+
+/**
+ * The ways in which the file manager can make writes durable.
+ * The mode is chosen separately for each file, so that the log
+ * and the data files can trade safety for speed differently.
+ * <p>
+ * On the log, NONE and BATCHED give up more than the latest
+ * commits. A flush of the log then returns before its records
+ * are on disk, and so a data page written after the flush can
+ * reach the disk before the log records that describe its changes.
+ * After a crash, recovery may then be unable to undo those
+ * changes, and the database can be left inconsistent.
+ * Only FSYNC and DSYNC on the log keep the database recoverable,
+ * whatever the mode of the data files.
+ */
+public enum Durability {
+   /**
+    * Writes are left to the operating system; nothing is forced.
+    * On the log, a crash can leave the database inconsistent.
+    */
+   NONE,
+   /** Writes are buffered, and the file is forced each time it is synced. */
+   FSYNC,
+   /** The file is opened in "rwd" mode, so every write reaches the disk before returning. */
+   DSYNC,
+   /**
+    * A sync only marks the file as needing to be forced; a background
+    * thread forces marked files at a fixed interval.
+    * A crash can lose writes made in the last interval;
+    * on the log, it can leave the database inconsistent.
+    */
+   BATCHED;
+
+   /**
+    * Returns the mode having the specified name, ignoring case.
+    * @param name the name of the mode
+    * @return the corresponding mode
+    */
+   public static Durability parse(String name) {
+      return valueOf(name.trim().toUpperCase());
+   }
+}
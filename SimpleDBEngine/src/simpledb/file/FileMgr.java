@@ -1,13 +1,40 @@
 package simpledb.file;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * The file manager, which reads and writes blocks of the
+ * database files.
+ * Blocks are read and written with positional channel I/O,
+ * so the methods need no lock: I/O to different blocks,
+ * in the same file or in different files, proceeds in parallel.
+ * Only appending to a file and forcing it to disk
+ * lock that file (and no other).
+ * <P>
+ * The block size a database was created with is recorded
+ * in the file {@value #BLOCKSIZE_FILE} of its directory,
+ * and the database cannot be opened with another block size.
+ * An existing database that has no such file is assumed to
+ * have the block size it is opened with, which is then recorded.
+ */
 public class FileMgr {
+   public static final String BLOCKSIZE_FILE = "simpledb.blocksize";
    private File dbDirectory;
    private int blocksize;
    private boolean isNew;
-   private Map<String,RandomAccessFile> openFiles = new HashMap<>();
+   private Map<String,RandomAccessFile> openFiles = new ConcurrentHashMap<>();
+   private Map<String,Durability> fileModes = new ConcurrentHashMap<>();
+   private volatile Durability dataMode = Durability.FSYNC;
+   private Set<String> unsynced = ConcurrentHashMap.newKeySet();
+   private Set<String> syncRequested = ConcurrentHashMap.newKeySet();
+   private Set<String> deleted = ConcurrentHashMap.newKeySet();
+   private volatile long batchInterval = 100; // milliseconds
+   private Thread syncer = null;
 
    public FileMgr(File dbDirectory, int blocksize) {
       this.dbDirectory = dbDirectory;
@@ -22,70 +49,331 @@ public class FileMgr {
       for (String filename : dbDirectory.list())
          if (filename.startsWith("temp"))
          		new File(dbDirectory, filename).delete();
+
+      checkBlockSize();
    }
 
-   public synchronized void read(BlockId blk, Page p) {
+   /**
+    * Reads the specified block into the page.
+    * If the block lies (partly) beyond the end of the file,
+    * the rest of the page is left unchanged.
+    * A file that has been deleted cannot be read
+    * until it is written again.
+    * @param blk a reference to a disk block
+    * @param p the page to read into
+    */
+   public void read(BlockId blk, Page p) {
       try {
-         RandomAccessFile f = getFile(blk.fileName());
-         f.seek(blk.number() * blocksize);
-         f.getChannel().read(p.contents());
+         FileChannel fc = existingFile(blk.fileName()).getChannel();
+         ByteBuffer bb = p.contents();
+         long pos = position(blk);
+         while (bb.hasRemaining())
+            if (fc.read(bb, pos + bb.position()) < 0)
+               break;
       }
       catch (IOException e) {
          throw new RuntimeException("cannot read block " + blk);
       }
    }
 
-   public synchronized void write(BlockId blk, Page p) {
+   public void write(BlockId blk, Page p) {
       try {
-         RandomAccessFile f = getFile(blk.fileName());
-         f.seek(blk.number() * blocksize);
-         f.getChannel().write(p.contents());
+         deleted.remove(blk.fileName());
+         FileChannel fc = getFile(blk.fileName()).getChannel();
+         ByteBuffer bb = p.contents();
+         long pos = position(blk);
+         while (bb.hasRemaining())
+            fc.write(bb, pos + bb.position());
+         unsynced.add(blk.fileName());
       }
       catch (IOException e) {
          throw new RuntimeException("cannot write block" + blk);
       }
    }
 
-   public synchronized BlockId append(String filename) {
-      int newblknum = length(filename);
-      BlockId blk = new BlockId(filename, newblknum);
-      byte[] b = new byte[blocksize];
+   /**
+    * Appends a zeroed block to the end of the file.
+    * The file is locked while its length is read and extended,
+    * so concurrent appends get different blocks.
+    * @param filename the name of the file
+    * @return a reference to the new block
+    */
+   public BlockId append(String filename) {
       try {
-         RandomAccessFile f = getFile(blk.fileName());
-         f.seek(blk.number() * blocksize);
-         f.write(b);
+         deleted.remove(filename);
+         RandomAccessFile f = getFile(filename);
+         synchronized (f) {
+            BlockId blk = new BlockId(filename, length(filename));
+            ByteBuffer bb = ByteBuffer.allocate(blocksize);
+            long pos = position(blk);
+            while (bb.hasRemaining())
+               f.getChannel().write(bb, pos + bb.position());
+            unsynced.add(filename);
+            return blk;
+         }
       }
       catch (IOException e) {
-         throw new RuntimeException("cannot append block" + blk);
+         throw new RuntimeException("cannot append block to " + filename);
       }
-      return blk;
    }
 
+   /**
+    * Returns the number of blocks in the specified file.
+    * A file that has been deleted has no length
+    * until it is written again.
+    * @param filename the name of the file
+    * @return the number of blocks in the file
+    */
    public int length(String filename) {
       try {
-         RandomAccessFile f = getFile(filename);
-         return (int)(f.length() / blocksize);
+         RandomAccessFile f = existingFile(filename);
+         return (int)(f.getChannel().size() / blocksize);
       }
       catch (IOException e) {
          throw new RuntimeException("cannot access " + filename);
       }
    }
 
+   /**
+    * Makes the writes to the specified file durable,
+    * as far as the file's durability mode requires.
+    * A FSYNC file is forced to disk, a BATCHED file is
+    * marked for the background syncer, and
+    * NONE and DSYNC files need nothing further.
+    * @param filename the name of the file
+    */
+   public void sync(String filename) {
+      Durability mode = durability(filename);
+      if (mode == Durability.FSYNC)
+         force(filename);
+      else if (mode == Durability.BATCHED) {
+         if (unsynced.remove(filename))
+            syncRequested.add(filename);
+      }
+      else
+         unsynced.remove(filename);
+   }
+
+   /**
+    * Forces every file that has been written since it was last
+    * forced, regardless of its durability mode (except NONE).
+    * Used at checkpoints, when the data files must
+    * be on disk before the checkpoint is logged.
+    */
+   public void syncAll() {
+      List<String> filenames = new ArrayList<>(unsynced);
+      filenames.addAll(syncRequested);
+      for (String filename : filenames) {
+         if (durability(filename) != Durability.NONE)
+            force(filename);
+         else
+            unsynced.remove(filename);
+      }
+   }
+
+   /**
+    * Sets the durability mode of the specified file,
+    * overriding the mode used for data files.
+    * If the file is already open, it is reopened in the new mode.
+    * @param filename the name of the file
+    * @param mode the file's durability mode
+    */
+   public synchronized void setDurability(String filename, Durability mode) {
+      if (openFiles.containsKey(filename))
+         force(filename);
+      fileModes.put(filename, mode);
+      reopen(filename);
+      if (mode == Durability.BATCHED)
+         startSyncer();
+   }
+
+   /**
+    * Sets the durability mode of every file that
+    * has not been given a mode of its own.
+    * @param mode the durability mode of the data files
+    */
+   public synchronized void setDataDurability(Durability mode) {
+      syncAll();
+      dataMode = mode;
+      for (String filename : new ArrayList<>(openFiles.keySet()))
+         if (!fileModes.containsKey(filename))
+            reopen(filename);
+      if (mode == Durability.BATCHED)
+         startSyncer();
+   }
+
+   /**
+    * Sets how often the background syncer forces
+    * the files in BATCHED mode.
+    * @param interval the time between forces, in milliseconds
+    */
+   public synchronized void setBatchInterval(long interval) {
+      batchInterval = interval;
+   }
+
+   /**
+    * Returns the names of the files in the database
+    * directory that start with the specified prefix.
+    * @param prefix the beginning of the file names
+    * @return the names of the matching files
+    */
+   public List<String> fileNames(String prefix) {
+      List<String> result = new ArrayList<>();
+      for (String filename : dbDirectory.list())
+         if (filename.startsWith(prefix))
+            result.add(filename);
+      return result;
+   }
+
+   /**
+    * Closes and deletes the specified file.
+    * No other thread may be using the file. Reading the
+    * file afterwards is an error, rather than creating
+    * an empty file, until the file is written again.
+    * @param filename the name of the file
+    */
+   public synchronized void delete(String filename) {
+      deleted.add(filename);
+      reopen(filename);
+      unsynced.remove(filename);
+      syncRequested.remove(filename);
+      fileModes.remove(filename);
+      new File(dbDirectory, filename).delete();
+   }
+
+   public Durability durability(String filename) {
+      return fileModes.getOrDefault(filename, dataMode);
+   }
+
    public boolean isNew() {
       return isNew;
    }
+
+   /**
+    * Compares the block size with the one the database
+    * was created with, recording it if it is not yet known.
+    */
+   private void checkBlockSize() {
+      File f = new File(dbDirectory, BLOCKSIZE_FILE);
+      try {
+         if (f.exists()) {
+            String stored = new String(Files.readAllBytes(f.toPath())).trim();
+            if (!stored.equals(Integer.toString(blocksize)))
+               throw new IllegalStateException("the database " + dbDirectory
+                     + " has block size " + stored + ", not " + blocksize);
+         }
+         else {
+            try (Writer w = new FileWriter(f)) {
+               w.write(blocksize + "\n");
+            }
+         }
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot check the block size of " + dbDirectory);
+      }
+   }
    
    public int blockSize() {
       return blocksize;
    }
 
+   // a package private method, needed by MappedFileMgr
+   FileChannel channel(String filename) throws IOException {
+      return existingFile(filename).getChannel();
+   }
+
+   private long position(BlockId blk) {
+      return (long) blk.number() * blocksize;
+   }
+
    private RandomAccessFile getFile(String filename) throws IOException {
       RandomAccessFile f = openFiles.get(filename);
       if (f == null) {
-         File dbTable = new File(dbDirectory, filename);
-         f = new RandomAccessFile(dbTable, "rws");
-         openFiles.put(filename, f);
+         try {
+            f = openFiles.computeIfAbsent(filename, this::open);
+         }
+         catch (UncheckedIOException e) {
+            throw e.getCause();
+         }
       }
       return f;
    }
+
+   /**
+    * Returns the file for reading, which must not
+    * have been deleted since it was last written.
+    */
+   private RandomAccessFile existingFile(String filename) throws IOException {
+      if (deleted.contains(filename))
+         throw new FileNotFoundException(filename + " has been deleted");
+      return getFile(filename);
+   }
+
+   private RandomAccessFile open(String filename) {
+      try {
+         File dbTable = new File(dbDirectory, filename);
+         String mode = (durability(filename) == Durability.DSYNC) ? "rwd" : "rw";
+         return new RandomAccessFile(dbTable, mode);
+      }
+      catch (IOException e) {
+         throw new UncheckedIOException(e);
+      }
+   }
+
+   private void reopen(String filename) {
+      RandomAccessFile f = openFiles.remove(filename);
+      if (f != null) {
+         try {
+            f.close();
+         }
+         catch (IOException e) {
+            throw new RuntimeException("cannot close " + filename);
+         }
+      }
+   }
+
+   /**
+    * Forces the file to disk if it has been written since it was
+    * last forced. The file is locked so that a thread that finds
+    * nothing to do knows that an earlier force has completed.
+    */
+   private void force(String filename) {
+      if (deleted.contains(filename))
+         return;
+      try {
+         RandomAccessFile f = getFile(filename);
+         synchronized (f) {
+            boolean written = unsynced.remove(filename);
+            written |= syncRequested.remove(filename);
+            if (written)
+               f.getChannel().force(false);
+         }
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot sync " + filename);
+      }
+   }
+
+   /**
+    * Starts the daemon thread that forces BATCHED files
+    * whose sync has been requested.
+    */
+   private void startSyncer() {
+      if (syncer != null)
+         return;
+      syncer = new Thread(() -> {
+         try {
+            while (true) {
+               Thread.sleep(batchInterval);
+               for (String filename : new ArrayList<>(syncRequested))
+                  force(filename);
+            }
+         }
+         catch (InterruptedException e) {
+            // the process is shutting down
+         }
+      }, "file-syncer");
+      syncer.setDaemon(true);
+      syncer.start();
+   }
 }
@@ -0,0 +1,94 @@
+package simpledb.file;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Measures random block-read throughput as the number of
+ * reader threads grows, comparing the file manager against
+ * the original synchronized seek-then-read implementation
+ * (reproduced below as SeekingFileMgr).
+ * The file is read once beforehand so that the reads are
+ * served from the OS cache and the cost measured is the
+ * file manager's, not the disk's.
+ */
+public class FileMgrBenchmark {
+   private static final int BLOCKSIZE = 4096;
+   private static final int NUMBLOCKS = 4096;
+   private static final int READS_PER_THREAD = 50000;
+   private static final int[] THREADS = {1, 2, 4, 8, 16};
+   private static final String FILENAME = "benchfile";
+
+   interface BlockReader {
+      void read(BlockId blk, Page p);
+   }
+
+   public static void main(String[] args) throws Exception {
+      File dir = new File("filemgrbenchmark");
+      FileMgr fm = new FileMgr(dir, BLOCKSIZE);
+      Page p = new Page(BLOCKSIZE);
+      while (fm.length(FILENAME) < NUMBLOCKS) {
+         BlockId blk = fm.append(FILENAME);
+         p.setInt(0, blk.number());
+         fm.write(blk, p);
+      }
+      fm.syncAll();
+
+      SeekingFileMgr old = new SeekingFileMgr(dir);
+      for (int i=0; i<NUMBLOCKS; i++)
+         fm.read(new BlockId(FILENAME, i), p);
+
+      for (int n : THREADS) {
+         double before = run(n, old::read);
+         double after  = run(n, fm::read);
+         System.out.printf("%2d threads: seek+read %,10.0f  positional %,10.0f reads/sec%n",
+                           n, before, after);
+      }
+   }
+
+   private static double run(int numthreads, BlockReader reader) throws InterruptedException {
+      Thread[] threads = new Thread[numthreads];
+      for (int t=0; t<numthreads; t++) {
+         int seed = t;
+         threads[t] = new Thread(() -> {
+            Random rand = new Random(seed);
+            Page p = new Page(BLOCKSIZE);
+            for (int i=0; i<READS_PER_THREAD; i++) {
+               int blknum = rand.nextInt(NUMBLOCKS);
+               reader.read(new BlockId(FILENAME, blknum), p);
+               if (p.getInt(0) != blknum)
+                  throw new IllegalStateException("read the wrong block");
+            }
+         });
+      }
+      long start = System.nanoTime();
+      for (Thread t : threads)
+         t.start();
+      for (Thread t : threads)
+         t.join();
+      double secs = (System.nanoTime() - start) / 1e9;
+      return numthreads * READS_PER_THREAD / secs;
+   }
+
+   /**
+    * The read path of the file manager before positional I/O:
+    * every read locks the whole manager, seeks and reads.
+    */
+   static class SeekingFileMgr {
+      private RandomAccessFile f;
+
+      SeekingFileMgr(File dir) throws IOException {
+         f = new RandomAccessFile(new File(dir, FILENAME), "r");
+      }
+
+      synchronized void read(BlockId blk, Page p) {
+         try {
+            f.seek((long) blk.number() * BLOCKSIZE);
+            f.getChannel().read(p.contents());
+         }
+         catch (IOException e) {
+            throw new RuntimeException("cannot read block " + blk);
+         }
+      }
+   }
+}
@@ -0,0 +1,129 @@
+package simpledb.file;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A file manager that memory-maps the table files.
+ * Each table file is mapped read-only in segments of
+ * SEGMENT_SIZE bytes; a block read from a mapped file is
+ * copied out of the mapping instead of going through a
+ * read system call, and {@link #view(BlockId)} returns a page
+ * that reads the mapping directly, without any copy.
+ * <P>
+ * Writes and appends still go through the file channel,
+ * so a mapping always reflects what has been written.
+ * A segment is remapped when a block past its end is requested,
+ * which happens after an append grows the file; mapping
+ * ahead of the end of the file is not safe.
+ * Only the table files are mapped: files ending in ".tbl",
+ * other than the temporary tables (whose names begin with
+ * "temp"). The log, the free-space maps and the temporary
+ * tables are read and written as before. The indexes store
+ * their records in tables (a file per hash bucket, and the
+ * leaf and directory files of a B-tree), which the file
+ * manager cannot tell from other tables, so they are mapped too.
+ */
+public class MappedFileMgr extends FileMgr {
+   public static long SEGMENT_SIZE = 64 * 1024 * 1024;
+
+   private int blocksPerSegment;
+   private Map<String,MappedByteBuffer[]> mappings = new ConcurrentHashMap<>();
+
+   public MappedFileMgr(File dbDirectory, int blocksize) {
+      super(dbDirectory, blocksize);
+      blocksPerSegment = (int) Math.max(1, SEGMENT_SIZE / blocksize);
+   }
+
+   /**
+    * Reads the specified block into the page,
+    * copying it out of the file's mapping if it is mapped.
+    */
+   @Override
+   public void read(BlockId blk, Page p) {
+      ByteBuffer src = mapped(blk);
+      if (src == null)
+         super.read(blk, p);
+      else
+         p.contents().put(src);
+   }
+
+   /**
+    * Returns a read-only page that views the specified block
+    * in the file's mapping, without copying it.
+    * The page sees later writes to the block once they reach the file;
+    * it must not be used for blocks that may be modified in
+    * the buffer pool but not yet written.
+    * If the block is not mapped, its contents are read into a new page.
+    * @param blk a reference to a disk block
+    * @return a read-only page holding the block's contents
+    */
+   public Page view(BlockId blk) {
+      ByteBuffer src = mapped(blk);
+      if (src != null)
+         return new Page(src);  // slices of a read-only mapping are read-only
+      Page p = new Page(blockSize());
+      super.read(blk, p);
+      return p;
+   }
+
+   private boolean isMapped(String filename) {
+      return filename.endsWith(".tbl") && !filename.startsWith("temp");
+   }
+
+   /**
+    * Returns a slice of the mapping that holds the specified block,
+    * or null if the file is not mapped or the block
+    * lies beyond the end of the file.
+    */
+   private ByteBuffer mapped(BlockId blk) {
+      if (!isMapped(blk.fileName()))
+         return null;
+      int seg = blk.number() / blocksPerSegment;
+      int offset = (blk.number() % blocksPerSegment) * blockSize();
+      MappedByteBuffer[] segs = mappings.get(blk.fileName());
+      if (!covers(segs, seg, offset))
+         segs = remap(blk.fileName(), seg);
+      if (!covers(segs, seg, offset))
+         return null;
+      return segs[seg].slice(offset, blockSize());
+   }
+
+   private boolean covers(MappedByteBuffer[] segs, int seg, int offset) {
+      return segs != null && seg < segs.length && segs[seg] != null
+            && segs[seg].capacity() >= offset + blockSize();
+   }
+
+   /**
+    * Maps the specified segment of the file again,
+    * up to the current end of the file.
+    * The array of segments is replaced rather than modified,
+    * so readers never need to lock it.
+    */
+   private synchronized MappedByteBuffer[] remap(String filename, int seg) {
+      try {
+         FileChannel fc = channel(filename);
+         long segbytes = (long) blocksPerSegment * blockSize();
+         long size = fc.size() / blockSize() * blockSize();
+         int numsegs = (int) ((size + segbytes - 1) / segbytes);
+         MappedByteBuffer[] segs = mappings.get(filename);
+         MappedByteBuffer[] newsegs = new MappedByteBuffer[Math.max(numsegs, segs == null ? 0 : segs.length)];
+         if (segs != null)
+            System.arraycopy(segs, 0, newsegs, 0, segs.length);
+         if (seg < numsegs) {
+            long start = seg * segbytes;
+            long length = Math.min(segbytes, size - start);
+            newsegs[seg] = fc.map(FileChannel.MapMode.READ_ONLY, start, length);
+         }
+         mappings.put(filename, newsegs);
+         return newsegs;
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot map " + filename);
+      }
+   }
+}
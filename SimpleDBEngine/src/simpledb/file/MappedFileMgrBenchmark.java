@@ -0,0 +1,72 @@
+package simpledb.file;
+
+import java.io.File;
+
+/**
+ * Measures full scans of a table file, comparing
+ * blocks copied in by read system calls (FileMgr),
+ * blocks copied out of the mapping (MappedFileMgr.read),
+ * and zero-copy views of the mapping (MappedFileMgr.view).
+ * Each scan reads every int of every block, as a scan
+ * that examines every record would.
+ * The file is scanned once beforehand, so that all three
+ * read from the OS cache.
+ */
+public class MappedFileMgrBenchmark {
+   private static final int BLOCKSIZE = 400;
+   private static final int NUMBLOCKS = 100000;
+   private static final int ROUNDS = 5;
+   private static final String FILENAME = "scan.tbl";
+
+   public static void main(String[] args) {
+      File dir = new File("mappedfilemgrbenchmark");
+      FileMgr fm = new FileMgr(dir, BLOCKSIZE);
+      Page p = new Page(BLOCKSIZE);
+      while (fm.length(FILENAME) < NUMBLOCKS) {
+         BlockId blk = fm.append(FILENAME);
+         for (int pos=0; pos<BLOCKSIZE; pos+=Integer.BYTES)
+            p.setInt(pos, blk.number());
+         fm.write(blk, p);
+      }
+      MappedFileMgr mfm = new MappedFileMgr(dir, BLOCKSIZE);
+      scanCopied(fm);
+
+      for (int r=0; r<ROUNDS; r++) {
+         long t0 = System.nanoTime();
+         long sum1 = scanCopied(fm);
+         long t1 = System.nanoTime();
+         long sum2 = scanCopied(mfm);
+         long t2 = System.nanoTime();
+         long sum3 = scanViewed(mfm);
+         long t3 = System.nanoTime();
+         if (sum1 != sum2 || sum1 != sum3)
+            throw new IllegalStateException("scans disagree");
+         System.out.printf("round %d: read %6.1f ms  mapped copy %6.1f ms  mapped view %6.1f ms%n",
+                           r, (t1-t0)/1e6, (t2-t1)/1e6, (t3-t2)/1e6);
+      }
+   }
+
+   private static long scanCopied(FileMgr fm) {
+      Page p = new Page(BLOCKSIZE);
+      long sum = 0;
+      for (int i=0; i<NUMBLOCKS; i++) {
+         fm.read(new BlockId(FILENAME, i), p);
+         sum += sumBlock(p);
+      }
+      return sum;
+   }
+
+   private static long scanViewed(MappedFileMgr mfm) {
+      long sum = 0;
+      for (int i=0; i<NUMBLOCKS; i++)
+         sum += sumBlock(mfm.view(new BlockId(FILENAME, i)));
+      return sum;
+   }
+
+   private static long sumBlock(Page p) {
+      long sum = 0;
+      for (int pos=0; pos<BLOCKSIZE; pos+=Integer.BYTES)
+         sum += p.getInt(pos);
+      return sum;
+   }
+}
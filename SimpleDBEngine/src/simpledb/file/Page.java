@@ -17,6 +17,11 @@ public class Page {
       bb = ByteBuffer.wrap(b);
    }
 
+   // For creating views of a mapped file, needed by MappedFileMgr
+   Page(ByteBuffer bb) {
+      this.bb = bb;
+   }
+
    public int getInt(int offset) {
       return bb.getInt(offset);
    }
@@ -39,6 +44,25 @@ public class Page {
       bb.put(b);
    }
    
+   /**
+    * Copies the specified number of bytes of the page,
+    * starting at the offset. Unlike getBytes, the bytes
+    * are not preceded by their length.
+    */
+   public byte[] getRawBytes(int offset, int length) {
+      byte[] b = new byte[length];
+      bb.get(offset, b);
+      return b;
+   }
+
+   /**
+    * Copies the bytes into the page at the specified offset,
+    * without their length.
+    */
+   public void setRawBytes(int offset, byte[] b) {
+      bb.put(offset, b);
+   }
+
    public String getString(int offset) {
       byte[] b = getBytes(offset);
       return new String(b, CHARSET);
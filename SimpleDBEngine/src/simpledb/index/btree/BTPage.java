@@ -39,10 +39,16 @@ public class BTPage {
     * @return the position before where the search key goes
     */
    public int findSlotBefore(Constant searchkey) {
-      int slot = 0;
-      while (slot < getNumRecs() && getDataVal(slot).compareTo(searchkey) < 0)
-         slot++;
-      return slot-1;
+      // binary search, since large pages hold thousands of records
+      int lo = 0, hi = getNumRecs();
+      while (lo < hi) {
+         int mid = (lo + hi) >>> 1;
+         if (getDataVal(mid).compareTo(searchkey) < 0)
+            lo = mid + 1;
+         else
+            hi = mid;
+      }
+      return lo-1;
    }
    
    /**
@@ -255,16 +261,25 @@ public class BTPage {
          setVal(to, fldname, getVal(from, fldname));
    }
    
+   /**
+    * Move the records starting at the specified slot to
+    * the (empty) destination page.
+    * The records are copied in one pass and each page's
+    * record count is set once, rather than deleting the
+    * records one at a time, which would shift the rest
+    * of the page each time.
+    */
    private void transferRecs(int slot, BTPage dest) {
+      Schema sch = layout.schema();
+      int numrecs = getNumRecs();
       int destslot = 0;
-      while (slot < getNumRecs()) {
-         dest.insert(destslot);
-         Schema sch = layout.schema();
+      for (int i=slot; i<numrecs; i++) {
          for (String fldname : sch.fields())
-            dest.setVal(destslot, fldname, getVal(slot, fldname));
-         delete(slot);
+            dest.setVal(destslot, fldname, getVal(i, fldname));
          destslot++;
       }
+      dest.setNumRecs(destslot);
+      setNumRecs(slot);
    }
    
    private int fldpos(int slot, String fldname) {
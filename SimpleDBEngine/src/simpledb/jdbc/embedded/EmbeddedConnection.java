@@ -15,6 +15,7 @@ class EmbeddedConnection extends ConnectionAdapter {
    private SimpleDB db;
    private Transaction currentTx;
    private Planner planner;
+   private boolean readOnly = false;
 
    /**
     * Creates a connection
@@ -46,7 +47,7 @@ class EmbeddedConnection extends ConnectionAdapter {
     */
    public void commit() throws SQLException {
       currentTx.commit();
-      currentTx = db.newTx();
+      currentTx = newTx();
    }
 
    /**
@@ -54,7 +55,28 @@ class EmbeddedConnection extends ConnectionAdapter {
     */
    public void rollback() throws SQLException {
       currentTx.rollback();
-      currentTx = db.newTx();
+      currentTx = newTx();
+   }
+
+   /**
+    * Makes the connection's transactions read-only, or not.
+    * A read-only transaction reads a snapshot of the database
+    * and takes no locks to do so.
+    * If the mode changes, the current transaction is committed
+    * and a new one begins in the new mode.
+    */
+   public void setReadOnly(boolean readOnly) throws SQLException {
+      if (readOnly != this.readOnly) {
+         this.readOnly = readOnly;
+         commit();
+      }
+   }
+
+   /**
+    * Determines whether the connection's transactions are read-only.
+    */
+   public boolean isReadOnly() throws SQLException {
+      return readOnly;
    }
 
    /**
@@ -65,5 +87,12 @@ class EmbeddedConnection extends ConnectionAdapter {
    Transaction getTransaction() {  
       return currentTx;
    }
+
+   private Transaction newTx() {
+      Transaction tx = db.newTx();
+      if (readOnly)
+         tx.setReadOnly();
+      return tx;
+   }
 }
 
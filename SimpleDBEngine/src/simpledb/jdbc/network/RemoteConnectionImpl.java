@@ -16,6 +16,7 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
    private SimpleDB db;
    private Transaction currentTx;
    private Planner planner;
+   private boolean readOnly = false;
    
    /**
     * Creates a remote connection
@@ -45,6 +46,27 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
       currentTx.commit();
    }
    
+   /**
+    * Makes the connection's transactions read-only, or not.
+    * If the mode changes, the current transaction is committed
+    * and a new one begins in the new mode.
+    * @see simpledb.jdbc.network.RemoteConnection#setReadOnly(boolean)
+    */
+   public void setReadOnly(boolean readOnly) throws RemoteException {
+      if (readOnly != this.readOnly) {
+         this.readOnly = readOnly;
+         commit();
+      }
+   }
+   
+   /**
+    * Determines whether the connection's transactions are read-only.
+    * @see simpledb.jdbc.network.RemoteConnection#isReadOnly()
+    */
+   public boolean isReadOnly() throws RemoteException {
+      return readOnly;
+   }
+   
 // The following methods are used by the server-side classes.
    
    /**
@@ -62,7 +84,7 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
     */
    void commit() {
       currentTx.commit();
-      currentTx = db.newTx();
+      currentTx = newTx();
    }
    
    /**
@@ -71,7 +93,14 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
     */
    void rollback() {
       currentTx.rollback();
-      currentTx = db.newTx();
+      currentTx = newTx();
+   }
+   
+   private Transaction newTx() {
+      Transaction tx = db.newTx();
+      if (readOnly)
+         tx.setReadOnly();
+      return tx;
    }
 }
 
@@ -0,0 +1,30 @@
+package simpledb.log;
+
+import java.io.File;
+import simpledb.file.*;
+
+/**
+ * Measures commit latency for each durability mode of the log file.
+ * A single thread repeatedly appends a commit-sized record
+ * and flushes the log up to it.
+ */
+public class DurabilityBenchmark {
+   private static final int COMMITS = 2000;
+
+   public static void main(String[] args) {
+      for (Durability mode : Durability.values()) {
+         FileMgr fm = new FileMgr(new File("durabilitybenchmark_" + mode), 400);
+         fm.setDurability("simpledb.log", mode);
+         LogMgr lm = new LogMgr(fm, "simpledb.log");
+         byte[] rec = new byte[2*Integer.BYTES];
+         long start = System.nanoTime();
+         for (int i=0; i<COMMITS; i++) {
+            int lsn = lm.append(rec);
+            lm.flush(lsn);
+         }
+         double micros = (System.nanoTime() - start) / 1e3 / COMMITS;
+         lm.close();
+         System.out.printf("%-8s %8.1f microseconds per commit%n", mode, micros);
+      }
+   }
+}
@@ -0,0 +1,96 @@
+package simpledb.log;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import simpledb.file.*;
+
+/**
+ * The dictionary of the file names that appear in log records.
+ * A log record refers to a file by a small id instead of
+ * by its name. An id is assigned the first time a name is
+ * used and never changes.
+ * The dictionary is kept in its own file next to the log
+ * segments, so that truncating the log never loses an entry.
+ * The file is forced before a new id is returned, so no
+ * log record on disk can refer to an id that is not.
+ * Temporary tables are not logged, so they get no id.
+ * Each block of the file holds a count, followed by that many names.
+ */
+class FileDictionary {
+   private FileMgr fm;
+   private String filename;
+   private Map<String,Integer> ids = new ConcurrentHashMap<>();
+   private Map<Integer,String> names = new ConcurrentHashMap<>();
+   private Page page;
+   private int blknum = 0;
+   private int pos = Integer.BYTES;
+
+   FileDictionary(FileMgr fm, String filename) {
+      this.fm = fm;
+      this.filename = filename;
+      fm.setDurability(filename, Durability.FSYNC);
+      page = new Page(new byte[fm.blockSize()]);
+      int size = fm.length(filename);
+      for (int b=0; b<size; b++) {
+         blknum = b;
+         fm.read(new BlockId(filename, b), page);
+         int count = page.getInt(0);
+         pos = Integer.BYTES;
+         for (int i=0; i<count; i++) {
+            String name = page.getString(pos);
+            add(name);
+            pos += Page.maxLength(name.length());
+         }
+      }
+   }
+
+   /**
+    * Returns the id of the specified file name,
+    * assigning it the next id if it has none.
+    * @param name the name of a file
+    * @return the id of the file
+    */
+   int id(String name) {
+      Integer id = ids.get(name);
+      return (id != null) ? id : assign(name);
+   }
+
+   /**
+    * Returns the file name having the specified id.
+    * @param id the id of a file
+    * @return the name of the file
+    */
+   String name(int id) {
+      String name = names.get(id);
+      if (name == null)
+         throw new IllegalStateException("unknown log file id " + id);
+      return name;
+   }
+
+   private synchronized int assign(String name) {
+      Integer id = ids.get(name);
+      if (id != null)
+         return id;
+      int needed = Page.maxLength(name.length());
+      if (Integer.BYTES + needed > fm.blockSize())
+         throw new IllegalArgumentException("file name too long: " + name);
+      if (pos + needed > fm.blockSize()) {
+         page = new Page(new byte[fm.blockSize()]);
+         blknum++;
+         pos = Integer.BYTES;
+      }
+      page.setString(pos, name);
+      pos += needed;
+      page.setInt(0, page.getInt(0) + 1);
+      fm.write(new BlockId(filename, blknum), page);
+      fm.sync(filename);
+      return add(name);
+   }
+
+   private int add(String name) {
+      int id = names.size();
+      names.put(id, name);
+      ids.put(name, id);
+      return id;
+   }
+}
@@ -0,0 +1,89 @@
+package simpledb.log;
+
+import java.util.*;
+import simpledb.file.*;
+
+/**
+ * A class that provides the ability to move through the
+ * records of the log file in the order they were written,
+ * starting at a given LSN.
+ * Records are written right to left within a log block,
+ * so the iterator locates all of the records of a block
+ * when it reads the block, and returns them in reverse.
+ *
+ * @author Edward Sciore
+ */
+public class ForwardLogIterator implements Iterator<byte[]> {
+   private FileMgr fm;
+   private LogMgr lm;
+   private int blknum;
+   private int lastblk;
+   private Page p;
+   private Deque<Integer> positions = new ArrayDeque<>();
+   private int nextlsn;
+   private int lsn = -1;
+
+   /**
+    * Creates an iterator for the records in the log file,
+    * positioned before the first record of the specified block
+    * whose LSN is at least the specified LSN.
+    */
+   ForwardLogIterator(FileMgr fm, LogMgr lm, int blknum, int lastblk, int lsn) {
+      this.fm = fm;
+      this.lm = lm;
+      this.blknum = blknum;
+      this.lastblk = lastblk;
+      p = new Page(new byte[fm.blockSize()]);
+      moveToBlock(blknum);
+      while (hasNext() && nextlsn < lsn) {
+         positions.pop();
+         nextlsn++;
+      }
+   }
+
+   /**
+    * Determines if there is a later record in the log file.
+    * @return true if there is a later record
+    */
+   public boolean hasNext() {
+      while (positions.isEmpty() && blknum < lastblk) {
+         blknum++;
+         moveToBlock(blknum);
+      }
+      return !positions.isEmpty();
+   }
+
+   /**
+    * Moves to the next log record, reading
+    * the next block if the current one is exhausted.
+    * @return the next later log record
+    */
+   public byte[] next() {
+      if (!hasNext())
+         throw new NoSuchElementException();
+      byte[] rec = p.getBytes(positions.pop());
+      lsn = nextlsn++;
+      return rec;
+   }
+
+   /**
+    * Returns the LSN of the record most recently
+    * returned by next().
+    * @return the LSN of the current log record
+    */
+   public int lsn() {
+      return lsn;
+   }
+
+   /**
+    * Reads the specified log block and finds the
+    * positions of its records, oldest first.
+    */
+   private void moveToBlock(int blknum) {
+      lm.read(blknum, p);
+      positions.clear();
+      for (int pos=p.getInt(0); pos<fm.blockSize(); pos+=Integer.BYTES+p.getInt(pos))
+         positions.push(pos);
+      nextlsn = p.getInt(LogMgr.LSN_OFFSET) - positions.size() + 1;
+   }
+}
@@ -0,0 +1,50 @@
+package simpledb.log;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.Page;
+
+/**
+ * Measures commit throughput with and without group commit.
+ * Each committer thread repeatedly appends a commit-sized
+ * record and flushes the log up to it, which is what
+ * {@link simpledb.tx.recovery.RecoveryMgr#commit()} does.
+ */
+public class GroupCommitBenchmark {
+   private static final int[] COMMITTERS = {1, 8, 64};
+   private static final long DURATION = 3000; // milliseconds
+
+   public static void main(String[] args) throws Exception {
+      for (long delay : new long[] {0, 1, 2}) {
+         for (int n : COMMITTERS) {
+            SimpleDB db = new SimpleDB("groupcommitbenchmark" + delay + "_" + n, 400, 8);
+            LogMgr lm = db.logMgr();
+            lm.setGroupCommit(delay, SimpleDB.GROUP_COMMIT_BATCH);
+            int[] commits = new int[n];
+            long end = System.currentTimeMillis() + DURATION;
+            Thread[] threads = new Thread[n];
+            for (int t=0; t<n; t++) {
+               int id = t;
+               threads[t] = new Thread(() -> {
+                  byte[] rec = new byte[2*Integer.BYTES];
+                  Page p = new Page(rec);
+                  p.setInt(Integer.BYTES, id);
+                  while (System.currentTimeMillis() < end) {
+                     int lsn = lm.append(rec);
+                     lm.flush(lsn);
+                     commits[id]++;
+                  }
+               });
+               threads[t].start();
+            }
+            int total = 0;
+            for (int t=0; t<n; t++) {
+               threads[t].join();
+               total += commits[t];
+            }
+            lm.close();
+            System.out.printf("group commit delay %d ms, %2d committer(s): %,10.0f commits/sec%n",
+                              delay, n, total * 1000.0 / DURATION);
+         }
+      }
+   }
+}
@@ -6,26 +6,33 @@ import simpledb.file.*;
 /**
  * A class that provides the ability to move through the
  * records of the log file in reverse order.
- * 
+ * The log blocks are numbered across the segment files,
+ * and the iterator stops at the first block of the
+ * oldest segment that has not been truncated.
+ *
  * @author Edward Sciore
  */
-class LogIterator implements Iterator<byte[]> {
+public class LogIterator implements Iterator<byte[]> {
    private FileMgr fm;
-   private BlockId blk;
+   private LogMgr lm;
+   private int blknum;
    private Page p;
    private int currentpos;
    private int boundary;
+   private int nextlsn;
+   private int lsn = -1;
 
    /**
     * Creates an iterator for the records in the log file,
     * positioned after the last log record.
     */
-   public LogIterator(FileMgr fm, BlockId blk) {
+   LogIterator(FileMgr fm, LogMgr lm, int blknum) {
       this.fm = fm;
-      this.blk = blk;
+      this.lm = lm;
+      this.blknum = blknum;
       byte[] b = new byte[fm.blockSize()];
       p = new Page(b);
-      moveToBlock(blk);
+      moveToBlock(blknum);
    }
 
    /**
@@ -34,7 +41,7 @@ class LogIterator implements Iterator<byte[]> {
     * @return true if there is an earlier record
     */
    public boolean hasNext() {
-      return currentpos<fm.blockSize() || blk.number()>0;
+      return currentpos<fm.blockSize() || blknum>lm.firstBlock();
    }
 
    /**
@@ -46,22 +53,33 @@ class LogIterator implements Iterator<byte[]> {
     */
    public byte[] next() {
       if (currentpos == fm.blockSize()) {
-         blk = new BlockId(blk.fileName(), blk.number()-1);
-         moveToBlock(blk);
+         blknum--;
+         moveToBlock(blknum);
       }
       byte[] rec = p.getBytes(currentpos);
       currentpos += Integer.BYTES + rec.length;
+      lsn = nextlsn--;
       return rec;
    }
 
+   /**
+    * Returns the LSN of the record most recently
+    * returned by next().
+    * @return the LSN of the current log record
+    */
+   public int lsn() {
+      return lsn;
+   }
+
    /**
     * Moves to the specified log block
     * and positions it at the first record in that block
     * (i.e., the most recent one).
     */
-   private void moveToBlock(BlockId blk) {
-      fm.read(blk, p);
+   private void moveToBlock(int blknum) {
+      lm.read(blknum, p);
       boundary = p.getInt(0);
       currentpos = boundary;
+      nextlsn = p.getInt(LogMgr.LSN_OFFSET);
    }
 }
@@ -1,63 +1,383 @@
 package simpledb.log;
 
-import java.util.Iterator;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.*;
 import simpledb.file.*;
 
 /**
- * The log manager, which is responsible for 
- * writing log records into a log file. The tail of 
- * the log is kept in a bytebuffer, which is flushed
- * to disk when needed. 
+ * The log manager, which is responsible for
+ * writing log records into a log file. The tail of
+ * the log is kept in a ring of log pages. Records are
+ * appended to the newest page; when it fills up, it is
+ * handed to a dedicated writer thread, which streams the
+ * full pages to disk, and appending moves on to the next page.
+ * An append therefore waits only when every page of the
+ * ring is full and not yet written.
+ * <P>
+ * The log is split into segment files, each holding a fixed
+ * number of blocks. Log blocks are numbered across the segments,
+ * and a segment is named after its first block: the segment
+ * starting at block 2048 of log "simpledb.log" is the file
+ * "simpledb.log.2048". Segments that are no longer needed for
+ * recovery are deleted by {@link #truncate(int)}.
+ * The segments are read under a read lock, which
+ * truncation takes in write mode to delete them, so that
+ * a segment is never read while it is being deleted.
+ * <P>
+ * Each log block begins with a header holding the boundary
+ * and the LSN of the last record in the block. The LSNs therefore
+ * survive a restart, and the iterator knows the LSN of each record.
+ * <P>
+ * Log records refer to files by the ids of a file dictionary,
+ * which is kept in the file named after the log with the
+ * suffix ".files".
  * @author Edward Sciore
  */
 public class LogMgr {
+   public static final int DEFAULT_SEGMENT_SIZE = 1024; // blocks
+   static final int LSN_OFFSET = Integer.BYTES;
+   private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
    private FileMgr fm;
    private String logfile;
-   private Page logpage;
-   private BlockId currentblk;
+   private int segmentSize;
+   private NavigableMap<Integer,String> segments = new ConcurrentSkipListMap<>();
+   private ReadWriteLock segmentLock = new ReentrantReadWriteLock();
+   private volatile int oldestNeededLSN;
+   private byte[][] ring;
+   private Page[] pages;
+   private int[] blknums;   // the log block held by each page
+   private int head;        // the page receiving new records
+   private int oldest;      // the oldest full page not yet written
+   private int fullPages = 0;
    private int latestLSN = 0;
    private int lastSavedLSN = 0;
+   private int requestedLSN = 0;
+   private long maxDelay = 0;
+   private int maxBatch = 1;
+   private int flushWaiters = 0;
+   private int flushRequests = 0;
+   private long appendedBytes = 0;
+   private FileDictionary dictionary;
+   private Thread writer;
+   private boolean closed = false;
 
    /**
-    * Creates the manager for the specified log file.
-    * If the log file does not yet exist, it is created
-    * with an empty first block.
+    * Creates the manager for the specified log file,
+    * with a single log page.
     * @param FileMgr the file manager
     * @param logfile the name of the log file
     */
    public LogMgr(FileMgr fm, String logfile) {
+      this(fm, logfile, 1, DEFAULT_SEGMENT_SIZE);
+   }
+
+   /**
+    * Creates the manager for the specified log file,
+    * and starts its writer thread.
+    * The existing segments of the log are located; if there
+    * are none, the log is created with an empty first block.
+    * A log written before the log was segmented (that is,
+    * a single file named after the log) is converted.
+    * Each segment gets the durability mode of the log file.
+    * @param FileMgr the file manager
+    * @param logfile the name of the log file
+    * @param numpages the number of log pages in the ring
+    * @param segmentSize the number of blocks in each segment file
+    */
+   public LogMgr(FileMgr fm, String logfile, int numpages, int segmentSize) {
       this.fm = fm;
       this.logfile = logfile;
-      byte[] b = new byte[fm.blockSize()];
-      logpage = new Page(b);
-      int logsize = fm.length(logfile);
-      if (logsize == 0)
-         currentblk = appendNewBlock();
+      this.segmentSize = Math.max(1, segmentSize);
+      ring = new byte[numpages][fm.blockSize()];
+      pages = new Page[numpages];
+      for (int i=0; i<numpages; i++)
+         pages[i] = new Page(ring[i]);
+      blknums = new int[numpages];
+      head = oldest = 0;
+      findSegments();
+      if (segments.isEmpty()) {
+         addSegment(0);
+         pages[head].setInt(0, fm.blockSize());
+         pages[head].setInt(LSN_OFFSET, 0);
+         fm.write(blockId(0), pages[head]);
+         fm.sync(segments.get(0));
+         blknums[head] = 0;
+      }
       else {
-         currentblk = new BlockId(logfile, logsize-1);
-         fm.read(currentblk, logpage);
+         Map.Entry<Integer,String> last = segments.lastEntry();
+         blknums[head] = last.getKey() + fm.length(last.getValue()) - 1;
+         fm.read(blockId(blknums[head]), pages[head]);
+         latestLSN = lastSavedLSN = requestedLSN = pages[head].getInt(LSN_OFFSET);
       }
+      oldestNeededLSN = firstLSN();
+      dictionary = new FileDictionary(fm, logfile + ".files");
+      writer = new Thread(this::writeLoop, "log-writer");
+      writer.setDaemon(true);
+      writer.start();
+      if (fm.fileNames(logfile).contains(logfile))
+         convertUnsegmentedLog();
+   }
+
+   /**
+    * Enables group commit.
+    * When a flush is requested, the writer thread may then wait
+    * up to the specified delay for other threads to ask for a flush,
+    * so that a single write makes all of their records durable.
+    * The writer stops waiting as soon as the specified number
+    * of threads are waiting.
+    * It only waits if more than one flush has been asked for since
+    * the previous write, so a lone committer is never delayed.
+    * @param maxDelay the longest time to wait, in milliseconds; 0 disables group commit
+    * @param maxBatch the number of waiting threads that triggers the write immediately
+    */
+   public synchronized void setGroupCommit(long maxDelay, int maxBatch) {
+      this.maxDelay = maxDelay;
+      this.maxBatch = Math.max(1, maxBatch);
    }
 
    /**
     * Ensures that the log record corresponding to the
     * specified LSN has been written to disk.
     * All earlier log records will also be written to disk.
+    * The calling thread asks the writer thread for the write,
+    * and waits until the durable LSN reaches the specified one.
+    * An LSN beyond the latest record is taken to be
+    * the LSN of the latest record.
     * @param lsn the LSN of a log record
     */
-   public void flush(int lsn) {
-      if (lsn >= lastSavedLSN)
-         flush();
+   public synchronized void flush(int lsn) {
+      flushRequests++;
+      lsn = Math.min(lsn, latestLSN);
+      if (lsn <= lastSavedLSN)
+         return;
+      requestedLSN = Math.max(requestedLSN, lsn);
+      flushWaiters++;
+      boolean interrupted = false;
+      try {
+         notifyAll();
+         while (lsn > lastSavedLSN) {
+            try {
+               wait();
+            }
+            catch (InterruptedException e) {
+               interrupted = true;
+            }
+         }
+      }
+      finally {
+         flushWaiters--;
+         if (interrupted)
+            Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * Flushes the log and stops the writer thread,
+    * waiting for it to finish.
+    * The writer is woken rather than interrupted, because an
+    * interrupt during a write would close the file's channel.
+    * The log manager must not be used afterwards.
+    */
+   public void close() {
+      synchronized (this) {
+         if (closed)
+            return;
+         flush(latestLSN);
+         closed = true;
+         notifyAll();
+      }
+      boolean interrupted = false;
+      while (writer.isAlive()) {
+         try {
+            writer.join();
+         }
+         catch (InterruptedException e) {
+            interrupted = true;
+         }
+      }
+      if (interrupted)
+         Thread.currentThread().interrupt();
+   }
+
+   public synchronized LogIterator iterator() {
+      flush(latestLSN);
+      return new LogIterator(fm, this, blknums[head]);
+   }
+
+   /**
+    * Returns an iterator that reads the log forwards,
+    * starting at the record having the specified LSN
+    * (or at the first record in the log, if that record
+    * has been truncated).
+    * The block holding that record is found by a binary
+    * search on the LSNs in the block headers.
+    * @param lsn the LSN of the first record to return
+    * @return an iterator positioned before that record
+    */
+   public synchronized ForwardLogIterator forwardIterator(int lsn) {
+      flush(latestLSN);
+      Page p = new Page(new byte[fm.blockSize()]);
+      int blknum = findBlock(lsn, p, blknums[head]);
+      return new ForwardLogIterator(fm, this, blknum, blknums[head], lsn);
+   }
+
+   /**
+    * Returns the log record having the specified LSN.
+    * The record is first flushed, if need be, and its
+    * block is then found by a binary search, so the records
+    * of other transactions are not read.
+    * @param lsn the LSN of an existing log record
+    * @return the bytes of the log record
+    */
+   public byte[] record(int lsn) {
+      int lastblk;
+      synchronized (this) {
+         flush(lsn);
+         lastblk = blknums[head];
+      }
+      Page p = new Page(new byte[fm.blockSize()]);
+      findBlock(lsn, p, lastblk);
+      int pos = p.getInt(0);
+      for (int n = p.getInt(LSN_OFFSET); n > lsn; n--)
+         pos += Integer.BYTES + p.getInt(pos);
+      return p.getBytes(pos);
+   }
+
+   /**
+    * Deletes the segments whose records all precede the
+    * specified LSN. The segment being appended to is never deleted.
+    * The caller guarantees that recovery needs no record
+    * before that LSN, which is the case for the START CHECKPOINT
+    * record of a completed checkpoint.
+    * The whole log is flushed first, so that the last block of
+    * every segment but the current one is on disk; a segment
+    * whose last block is not is kept.
+    * @param lsn the LSN of the oldest record still needed
+    */
+   public void truncate(int lsn) {
+      flush(Integer.MAX_VALUE);
+      oldestNeededLSN = Math.max(oldestNeededLSN, lsn);
+      segmentLock.writeLock().lock();
+      try {
+         Iterator<Map.Entry<Integer,String>> iter = segments.entrySet().iterator();
+         Map.Entry<Integer,String> seg = iter.next();
+         while (iter.hasNext()) {
+            Map.Entry<Integer,String> next = iter.next();
+            int lastblk = next.getKey() - 1;
+            if (fm.length(seg.getValue()) <= lastblk - seg.getKey())
+               return; // the segment's last block has not been written
+            Page p = new Page(new byte[fm.blockSize()]);
+            fm.read(blockId(lastblk), p);
+            if (p.getInt(LSN_OFFSET) >= lsn)
+               return;
+            segments.remove(seg.getKey());
+            fm.delete(seg.getValue());
+            seg = next;
+         }
+      }
+      finally {
+         segmentLock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * Returns the current size of the log, over all its segments.
+    * @return the size of the log in bytes
+    */
+   public long logSize() {
+      segmentLock.readLock().lock();
+      try {
+         long blocks = 0;
+         for (String segment : segments.values())
+            blocks += fm.length(segment);
+         return blocks * fm.blockSize();
+      }
+      finally {
+         segmentLock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Returns the LSN of the oldest record that recovery
+    * may need: the START CHECKPOINT record of the most recent
+    * completed checkpoint, or the first record in the log
+    * if no checkpoint has completed since the server started.
+    * @return the oldest needed LSN
+    */
+   public int oldestNeededLSN() {
+      return oldestNeededLSN;
+   }
+
+   /**
+    * Returns the size of the largest record that fits in a log page.
+    * @return the maximum record size in bytes
+    */
+   public int maxRecordSize() {
+      return fm.blockSize() - HEADER_SIZE - Integer.BYTES;
    }
 
-   public Iterator<byte[]> iterator() {
-      flush();
-      return new LogIterator(fm, currentblk);
+   /**
+    * Returns the number of bytes appended to the log
+    * since the log manager was created.
+    * @return the number of bytes appended
+    */
+   public synchronized long appendedBytes() {
+      return appendedBytes;
+   }
+
+   /**
+    * Returns the id that log records use for the specified file.
+    * @param filename the name of the file
+    * @return the file's id
+    */
+   public int fileId(String filename) {
+      return dictionary.id(filename);
+   }
+
+   /**
+    * Returns the name of the file having the specified id.
+    * @param id the id of a file
+    * @return the name of the file
+    */
+   public String fileName(int id) {
+      return dictionary.name(id);
+   }
+
+   // Package private methods, needed by the log iterators
+
+   int firstBlock() {
+      return segments.firstKey();
    }
 
    /**
-    * Appends a log record to the log buffer. 
-    * The record consists of an arbitrary array of bytes. 
+    * Reads the specified log block into the page,
+    * while no segment can be deleted.
+    * @param blknum the number of a log block
+    * @param p the page to read into
+    * @throws IllegalStateException if the block has been truncated
+    */
+   void read(int blknum, Page p) {
+      segmentLock.readLock().lock();
+      try {
+         if (blknum < firstBlock())
+            throw new IllegalStateException("log block " + blknum + " has been truncated");
+         fm.read(blockId(blknum), p);
+      }
+      finally {
+         segmentLock.readLock().unlock();
+      }
+   }
+
+   BlockId blockId(int blknum) {
+      Map.Entry<Integer,String> seg = segments.floorEntry(blknum);
+      return new BlockId(seg.getValue(), blknum - seg.getKey());
+   }
+
+   /**
+    * Appends a log record to the log buffer.
+    * The record consists of an arbitrary array of bytes.
     * Log records are written right to left in the buffer.
     * The size of the record is written before the bytes.
     * The beginning of the buffer contains the location
@@ -68,12 +388,12 @@ public class LogMgr {
     * @return the LSN of the final value
     */
    public synchronized int append(byte[] logrec) {
+      Page logpage = pages[head];
       int boundary = logpage.getInt(0);
       int recsize = logrec.length;
       int bytesneeded = recsize + Integer.BYTES;
-      if (boundary - bytesneeded < Integer.BYTES) { // the log record doesn't fit,
-         flush();        // so move to the next block.
-         currentblk = appendNewBlock();
+      if (boundary - bytesneeded < HEADER_SIZE) { // the log record doesn't fit,
+         logpage = moveToNewPage();                 // so move to the next block.
          boundary = logpage.getInt(0);
       }
       int recpos = boundary - bytesneeded;
@@ -81,24 +401,200 @@ public class LogMgr {
       logpage.setBytes(recpos, logrec);
       logpage.setInt(0, recpos); // the new boundary
       latestLSN += 1;
+      appendedBytes += bytesneeded;
+      logpage.setInt(LSN_OFFSET, latestLSN);
       return latestLSN;
    }
 
    /**
-    * Initialize the bytebuffer and append it to the log file.
+    * Hands the head page to the writer thread, waiting
+    * if the ring is full, and initializes the next page
+    * for the next log block.
+    * The new block is not appended to the file here;
+    * the writer creates it when it first writes the page.
+    * If the current segment is full, the block starts a new one.
     */
-   private BlockId appendNewBlock() {
-      BlockId blk = fm.append(logfile);     
+   private Page moveToNewPage() {
+      int nextblknum = blknums[head] + 1;
+      if (nextblknum - segments.lastKey() >= segmentSize)
+         addSegment(nextblknum);
+      fullPages++;
+      notifyAll();
+      boolean interrupted = false;
+      while (fullPages == ring.length) {
+         try {
+            wait();
+         }
+         catch (InterruptedException e) {
+            interrupted = true;
+         }
+      }
+      if (interrupted)
+         Thread.currentThread().interrupt();
+      head = (oldest + fullPages) % ring.length;
+      blknums[head] = nextblknum;
+      Page logpage = pages[head];
       logpage.setInt(0, fm.blockSize());
-      fm.write(blk, logpage);
-      return blk;
+      logpage.setInt(LSN_OFFSET, latestLSN);
+      return logpage;
    }
 
    /**
-    * Write the buffer to the log file.
+    * The body of the writer thread.
+    * Each round writes the full pages, plus a copy of the
+    * head page if a flush has asked for records in it,
+    * and then makes the writes durable. The full pages are
+    * written without holding the lock, since no thread modifies
+    * them until they are released at the end of the round.
+    * The thread stops once the log manager is closed; it then
+    * does no more I/O, so interrupting it cannot close a file.
     */
-   private void flush() {
-      fm.write(currentblk, logpage);
-      lastSavedLSN = latestLSN;
+   private void writeLoop() {
+      byte[] headcopy = new byte[fm.blockSize()];
+      Page headpage = new Page(headcopy);
+      while (true) {
+         int count, first, headblknum = -1, savedLSN;
+         synchronized (this) {
+            try {
+               while (!closed && fullPages == 0 && requestedLSN <= lastSavedLSN)
+                  wait();
+               if (!closed && fullPages == 0)
+                  awaitGroup();
+            }
+            catch (InterruptedException e) {
+               if (!closed)
+                  continue;
+            }
+            if (closed)
+               return;
+            count = fullPages;
+            first = oldest;
+            savedLSN = (count > 0) ? pages[(first + count - 1) % ring.length].getInt(LSN_OFFSET)
+                                   : lastSavedLSN;
+            if (requestedLSN > savedLSN) {
+               System.arraycopy(ring[head], 0, headcopy, 0, headcopy.length);
+               headblknum = blknums[head];
+               savedLSN = headpage.getInt(LSN_OFFSET);
+            }
+            flushRequests = 0;
+         }
+
+         Set<String> written = new LinkedHashSet<>();
+         for (int i=0; i<count; i++) {
+            int n = (first + i) % ring.length;
+            BlockId blk = blockId(blknums[n]);
+            fm.write(blk, pages[n]);
+            written.add(blk.fileName());
+         }
+         if (headblknum >= 0) {
+            BlockId blk = blockId(headblknum);
+            fm.write(blk, headpage);
+            written.add(blk.fileName());
+         }
+         for (String segment : written)
+            fm.sync(segment);
+
+         synchronized (this) {
+            oldest = (first + count) % ring.length;
+            fullPages -= count;
+            lastSavedLSN = Math.max(lastSavedLSN, savedLSN);
+            notifyAll();
+         }
+      }
+   }
+
+   /**
+    * Waits for more threads to ask for a flush,
+    * if group commit is enabled and that seems worthwhile.
+    */
+   private void awaitGroup() throws InterruptedException {
+      if (maxDelay > 0 && flushRequests > 1) {
+         long deadline = System.currentTimeMillis() + maxDelay;
+         long remaining = maxDelay;
+         while (!closed && flushWaiters < maxBatch && fullPages == 0 && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+         }
+      }
+   }
+
+   /**
+    * Locates the existing segments of the log.
+    * A trailing segment that was created but never
+    * written (because of a crash) is deleted.
+    */
+   private void findSegments() {
+      String prefix = logfile + ".";
+      for (String filename : fm.fileNames(prefix)) {
+         String suffix = filename.substring(prefix.length());
+         if (!suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit)) {
+            fm.setDurability(filename, fm.durability(logfile));
+            segments.put(Integer.parseInt(suffix), filename);
+         }
+      }
+      while (!segments.isEmpty() && fm.length(segments.lastEntry().getValue()) == 0)
+         fm.delete(segments.pollLastEntry().getValue());
+   }
+
+   /**
+    * Finds the first block up to the specified one whose last
+    * record has an LSN of at least the specified LSN, that is,
+    * the block holding that record, by a binary search on the
+    * LSNs in the block headers. The block is read into the page.
+    * @return the number of the block
+    */
+   private int findBlock(int lsn, Page p, int lastblk) {
+      int lo = firstBlock(), hi = lastblk;
+      while (lo < hi) {
+         int mid = (lo + hi) >>> 1;
+         read(mid, p);
+         if (p.getInt(LSN_OFFSET) < lsn)
+            lo = mid + 1;
+         else
+            hi = mid;
+      }
+      read(lo, p);
+      return lo;
+   }
+
+   private void addSegment(int firstblk) {
+      String filename = logfile + "." + firstblk;
+      fm.setDurability(filename, fm.durability(logfile));
+      segments.put(firstblk, filename);
+   }
+
+   /**
+    * Returns the LSN of the first record in the log,
+    * which is the LSN of the last record of the first block
+    * less the number of other records in that block.
+    */
+   private int firstLSN() {
+      Page p = new Page(new byte[fm.blockSize()]);
+      read(firstBlock(), p);
+      int lsn = p.getInt(LSN_OFFSET);
+      for (int pos=p.getInt(0); pos<fm.blockSize(); pos+=Integer.BYTES+p.getInt(pos))
+         lsn--;
+      return lsn + 1;
+   }
+
+   /**
+    * Appends the records of an unsegmented log, oldest first,
+    * to this log, and then deletes the unsegmented log file.
+    * That file has no LSN in its block headers, so its records
+    * begin right after the boundary.
+    */
+   private void convertUnsegmentedLog() {
+      Page p = new Page(new byte[fm.blockSize()]);
+      int size = fm.length(logfile);
+      for (int b=0; b<size; b++) {
+         fm.read(new BlockId(logfile, b), p);
+         Deque<byte[]> recs = new ArrayDeque<>();
+         for (int pos=p.getInt(0); pos<fm.blockSize(); pos+=Integer.BYTES+p.getInt(pos))
+            recs.push(p.getBytes(pos));
+         for (byte[] rec : recs)
+            append(rec);
+      }
+      flush(latestLSN);
+      fm.delete(logfile);
    }
 }
@@ -0,0 +1,37 @@
+package simpledb.log;
+
+import java.io.File;
+import simpledb.file.FileMgr;
+
+/**
+ * Measures a log-heavy append workload for different numbers
+ * of log pages. With a single page, every page boundary waits
+ * for the writer thread to write and force the full page;
+ * with a ring of pages, the writer streams full pages to disk
+ * while appending continues.
+ * Reports the append rate and the longest single append.
+ */
+public class LogWriterBenchmark {
+   private static final int[] RING_SIZES = {1, 2, 8, 32};
+   private static final int NUMRECS = 200000;
+   private static final int RECSIZE = 60;
+
+   public static void main(String[] args) {
+      for (int numpages : RING_SIZES) {
+         FileMgr fm = new FileMgr(new File("logwriterbenchmark" + numpages), 400);
+         LogMgr lm = new LogMgr(fm, "simpledb.log", numpages, LogMgr.DEFAULT_SEGMENT_SIZE);
+         byte[] rec = new byte[RECSIZE];
+         long longest = 0;
+         long start = System.nanoTime();
+         for (int i=0; i<NUMRECS; i++) {
+            long t = System.nanoTime();
+            lm.append(rec);
+            longest = Math.max(longest, System.nanoTime() - t);
+         }
+         double secs = (System.nanoTime() - start) / 1e9;
+         lm.close();
+         System.out.printf("%2d log page(s): %,10.0f appends/sec, longest append %7.3f ms%n",
+                           numpages, NUMRECS / secs, longest / 1e6);
+      }
+   }
+}
@@ -15,20 +15,19 @@ class TableMgr {
    // The max characters a tablename or fieldname can have.
    public static final int MAX_NAME = 16;
    private Layout tcatLayout, fcatLayout;
+   private boolean hasFormats; // whether tblcat has the format field
 
    /**
     * Create a new catalog manager for the database system.
     * If the database is new, the two catalog tables
     * are created.
+    * The catalog of a database created before tables had
+    * a format has no format field in tblcat; its tables are
+    * all in the fixed format, and so must be any new table.
     * @param isNew has the value true if the database is new
     * @param tx the startup transaction
     */
    public TableMgr(boolean isNew, Transaction tx) {
-      Schema tcatSchema = new Schema();
-      tcatSchema.addStringField("tblname", MAX_NAME);
-      tcatSchema.addIntField("slotsize");
-      tcatLayout = new Layout(tcatSchema);
-
       Schema fcatSchema = new Schema();
       fcatSchema.addStringField("tblname", MAX_NAME);
       fcatSchema.addStringField("fldname", MAX_NAME);
@@ -37,6 +36,14 @@ class TableMgr {
       fcatSchema.addIntField("offset");
       fcatLayout = new Layout(fcatSchema);
 
+      hasFormats = isNew || hasField("tblcat", "format", tx);
+      Schema tcatSchema = new Schema();
+      tcatSchema.addStringField("tblname", MAX_NAME);
+      tcatSchema.addIntField("slotsize");
+      if (hasFormats)
+         tcatSchema.addStringField("format", MAX_NAME);
+      tcatLayout = new Layout(tcatSchema);
+
       if (isNew) {
          createTable("tblcat", tcatSchema, tx);
          createTable("fldcat", fcatSchema, tx);
@@ -50,12 +57,28 @@ class TableMgr {
     * @param tx the transaction creating the table
     */
    public void createTable(String tblname, Schema sch, Transaction tx) {
-      Layout layout = new Layout(sch);
+      createTable(tblname, sch, PageFormat.FIXED, tx);
+   }
+
+   /**
+    * Create a new table having the specified name and schema,
+    * whose records are stored in the specified format.
+    * @param tblname the name of the new table
+    * @param sch the table's schema
+    * @param format the format of the table's pages
+    * @param tx the transaction creating the table
+    */
+   public void createTable(String tblname, Schema sch, PageFormat format, Transaction tx) {
+      if (!hasFormats && format != PageFormat.FIXED)
+         throw new IllegalStateException("the catalog of this database has no table formats");
+      Layout layout = new Layout(sch, format);
       // insert one record into tblcat
       TableScan tcat = new TableScan(tx, "tblcat", tcatLayout);
       tcat.insert();
       tcat.setString("tblname", tblname);
       tcat.setInt("slotsize", layout.slotSize());
+      if (hasFormats)
+         tcat.setString("format", format.formatName());
       tcat.close();
 
       // insert a record into fldcat for each field
@@ -80,10 +103,14 @@ class TableMgr {
     */
    public Layout getLayout(String tblname, Transaction tx) {
       int size = -1;
+      PageFormat format = PageFormat.FIXED;
     TableScan tcat = new TableScan(tx, "tblcat", tcatLayout);
       while(tcat.next())
          if(tcat.getString("tblname").equals(tblname)) {
             size = tcat.getInt("slotsize");
+            PageFormat f = hasFormats ? PageFormat.forName(tcat.getString("format")) : null;
+            if (f != null)
+               format = f;
             break;
          }
       tcat.close();
@@ -101,6 +128,20 @@ class TableMgr {
             sch.addField(fldname, fldtype, fldlen);
          }
       fcat.close();
-      return new Layout(sch, offsets, size);
+      return new Layout(sch, offsets, size, format);
+   }
+
+   /**
+    * Determines whether the catalog has the specified field
+    * for the specified table.
+    */
+   private boolean hasField(String tblname, String fldname, Transaction tx) {
+      TableScan fcat = new TableScan(tx, "fldcat", fcatLayout);
+      boolean found = false;
+      while (!found && fcat.next())
+         found = fcat.getString("tblname").equals(tblname)
+               && fcat.getString("fldname").equals(fldname);
+      fcat.close();
+      return found;
    }
 }
\ No newline at end of file
@@ -12,12 +12,12 @@ import simpledb.record.*;
  * @author Edward Sciore
  */
 public class ChunkScan implements Scan {
-   private List<RecordPage> buffs = new ArrayList<>();
+   private List<TablePage> buffs = new ArrayList<>();
    private Transaction tx;
    private String filename;
    private Layout layout;
    private int startbnum, endbnum, currentbnum;
-   private RecordPage rp;
+   private TablePage rp;
    private int currentslot;
 
    /**
@@ -35,7 +35,7 @@ public class ChunkScan implements Scan {
       this.endbnum   = endbnum;
       for (int i=startbnum; i<=endbnum; i++) {
          BlockId blk = new BlockId(filename, i);
-         buffs.add(new RecordPage(tx, blk, layout));
+         buffs.add(TablePage.open(tx, blk, layout));
       }
       moveToBlock(startbnum);
    }
@@ -1,6 +1,6 @@
 package simpledb.parse;
 
-import simpledb.record.Schema;
+import simpledb.record.*;
 
 /**
  * Data for the SQL <i>create table</i> statement.
@@ -9,13 +9,22 @@ import simpledb.record.Schema;
 public class CreateTableData {
    private String tblname;
    private Schema sch;
+   private PageFormat format;
    
    /**
     * Saves the table name and schema.
     */
    public CreateTableData(String tblname, Schema sch) {
+      this(tblname, sch, PageFormat.FIXED);
+   }
+   
+   /**
+    * Saves the table name, schema and page format.
+    */
+   public CreateTableData(String tblname, Schema sch, PageFormat format) {
       this.tblname = tblname;
       this.sch = sch;
+      this.format = format;
    }
    
    /**
@@ -33,5 +42,13 @@ public class CreateTableData {
    public Schema newSchema() {
       return sch;
    }
+   
+   /**
+    * Returns the format in which the new table stores its records.
+    * @return the format of the new table's pages
+    */
+   public PageFormat format() {
+      return format;
+   }
 }
 
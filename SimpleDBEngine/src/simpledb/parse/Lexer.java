@@ -161,6 +161,6 @@ public class Lexer {
     private void initKeywords() {
         keywords = Arrays.asList("select", "from", "where", "and",
                 "insert", "into", "values", "delete", "update", "set",
-                "create", "table", "int", "varchar", "view", "as", "index", "on", "checkpoint", "crash");
+                "create", "table", "int", "varchar", "view", "as", "index", "on", "checkpoint", "crash", "format");
     }
 }
\ No newline at end of file
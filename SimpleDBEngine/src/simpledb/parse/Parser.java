@@ -193,7 +193,14 @@ public class Parser {
         lex.eatDelim('(');
         Schema sch = fieldDefs();
         lex.eatDelim(')');
-        return new CreateTableData(tblname, sch);
+        PageFormat format = PageFormat.FIXED;
+        if (lex.matchKeyword("format")) {
+            lex.eatKeyword("format");
+            format = PageFormat.forName(lex.eatId());
+            if (format == null)
+                throw new BadSyntaxException();
+        }
+        return new CreateTableData(tblname, sch, format);
     }
 
     private Schema fieldDefs() {
@@ -1,5 +1,6 @@
 package simpledb.plan;
 
+import java.util.Collection;
 import simpledb.query.Scan;
 import simpledb.record.*;
 
@@ -45,4 +46,13 @@ public interface Plan {
     * @return the query's schema
     */
    public Schema schema();
+
+   /**
+    * Tells the plan that its scan will only be asked
+    * for the specified fields, so that the tables
+    * below it can read just those fields.
+    * A plan that cannot pass this on ignores it.
+    * @param fldnames the names of the fields needed
+    */
+   public default void pushProjection(Collection<String> fldnames) {}
 }
@@ -1,5 +1,6 @@
 package simpledb.plan;
 
+import java.util.Collection;
 import simpledb.query.ProductScan;
 import simpledb.query.Scan;
 import simpledb.record.Schema;
@@ -76,4 +77,13 @@ public class ProductPlan implements Plan {
    public Schema schema() {
       return schema;
    }
+
+   /**
+    * Passes the fields on to both underlying queries.
+    * @see simpledb.plan.Plan#pushProjection(java.util.Collection)
+    */
+   public void pushProjection(Collection<String> fldnames) {
+      p1.pushProjection(fldnames);
+      p2.pushProjection(fldnames);
+   }
 }
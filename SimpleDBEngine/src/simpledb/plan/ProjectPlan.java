@@ -1,6 +1,6 @@
 package simpledb.plan;
 
-import java.util.List;
+import java.util.*;
 import simpledb.record.Schema;
 import simpledb.query.*;
 
@@ -22,6 +22,7 @@ public class ProjectPlan implements Plan {
       this.p = p;
       for (String fldname : fieldlist)
          schema.add(fldname, p.schema());
+      p.pushProjection(fieldlist);
    }
 
    /**
@@ -69,4 +70,13 @@ public class ProjectPlan implements Plan {
    public Schema schema() {
       return schema;
    }
+
+   /**
+    * Does nothing: the underlying query has already
+    * been told the fields of the projection, and
+    * only those can be asked of the projection.
+    * @see simpledb.plan.Plan#pushProjection(java.util.Collection)
+    */
+   public void pushProjection(Collection<String> fldnames) {
+   }
 }
@@ -1,5 +1,6 @@
 package simpledb.plan;
 
+import java.util.*;
 import simpledb.query.Predicate;
 import simpledb.query.Scan;
 import simpledb.query.SelectScan;
@@ -83,4 +84,15 @@ public class SelectPlan implements Plan {
    public Schema schema() {
       return p.schema();
    }
+
+   /**
+    * Passes the fields on to the underlying query,
+    * together with the fields of the predicate.
+    * @see simpledb.plan.Plan#pushProjection(java.util.Collection)
+    */
+   public void pushProjection(Collection<String> fldnames) {
+      Collection<String> needed = new HashSet<>(fldnames);
+      needed.addAll(pred.fields());
+      p.pushProjection(needed);
+   }
 }
@@ -1,5 +1,6 @@
 package simpledb.plan;
 
+import java.util.*;
 import simpledb.tx.Transaction;
 import simpledb.metadata.*;
 import simpledb.query.Scan;
@@ -13,6 +14,7 @@ public class TablePlan implements Plan {
    private Transaction tx;
    private Layout layout;
    private StatInfo si;
+   private Collection<String> fields;
    
    /**
     * Creates a leaf node in the query tree corresponding
@@ -32,7 +34,7 @@ public class TablePlan implements Plan {
     * @see simpledb.plan.Plan#open()
     */
    public Scan open() {
-      return new TableScan(tx, tblname, layout);
+      return new TableScan(tx, tblname, layout, fields);
    }
    
    /**
@@ -70,4 +72,16 @@ public class TablePlan implements Plan {
    public Schema schema() {
       return layout.schema();
    }
+
+   /**
+    * Keeps the fields of the table that are needed,
+    * so that the table scan can read just those.
+    * @see simpledb.plan.Plan#pushProjection(java.util.Collection)
+    */
+   public void pushProjection(Collection<String> fldnames) {
+      fields = new HashSet<>();
+      for (String fldname : fldnames)
+         if (layout.schema().hasField(fldname))
+            fields.add(fldname);
+   }
 }
@@ -137,6 +137,18 @@ public class Predicate {
       return null;
    }
 
+   /**
+    * Returns the names of the fields
+    * that the predicate mentions.
+    * @return the names of the fields of the predicate
+    */
+   public Collection<String> fields() {
+      Collection<String> fldnames = new HashSet<String>();
+      for (Term t : terms)
+         t.addFields(fldnames);
+      return fldnames;
+   }
+
    public String toString() {
       Iterator<Term> iter = terms.iterator();
       if (!iter.hasNext()) 
@@ -1,5 +1,6 @@
 package simpledb.query;
 
+import java.util.Collection;
 import simpledb.plan.Plan;
 import simpledb.record.*;
 
@@ -118,6 +119,18 @@ public class Term {
       return lhs.appliesTo(sch) && rhs.appliesTo(sch);
    }
    
+   /**
+    * Adds the names of the fields that the term
+    * mentions to the specified collection.
+    * @param fldnames the collection of field names
+    */
+   public void addFields(Collection<String> fldnames) {
+      if (lhs.isFieldName())
+         fldnames.add(lhs.asFieldName());
+      if (rhs.isFieldName())
+         fldnames.add(rhs.asFieldName());
+   }
+   
    public String toString() {
       return lhs.toString() + "=" + rhs.toString();
    }
@@ -0,0 +1,92 @@
+package simpledb.record;
+
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.index.Index;
+import simpledb.index.btree.BTreeIndex;
+import simpledb.query.Constant;
+
+/**
+ * A regression benchmark across block sizes.
+ * For each block size, with the buffer pool given the same
+ * amount of memory, it fills a table, scans it, builds a
+ * B-tree index on it and probes the index, checking each result.
+ * Small blocks exercise the record and B-tree page logic with
+ * few slots per page; large blocks with thousands of them.
+ */
+public class BlockSizeBenchmark {
+   private static final int[] BLOCK_SIZES = {400, 4096, 16384, 65536};
+   private static final int POOL_BYTES = 4 * 1024 * 1024;
+   private static final int NUMRECS = 20000;
+   private static final int PROBES = 2000;
+
+   public static void main(String[] args) {
+      for (int blocksize : BLOCK_SIZES) {
+         int numbuffs = Math.max(8, POOL_BYTES / blocksize);
+         SimpleDB db = new SimpleDB("blocksizebenchmark" + blocksize, blocksize, numbuffs);
+         Transaction tx = db.newTx();
+         Schema sch = new Schema();
+         sch.addIntField("A");
+         sch.addStringField("B", 20);
+         Layout layout = new Layout(sch);
+         Schema idxsch = new Schema();
+         idxsch.addIntField("block");
+         idxsch.addIntField("id");
+         idxsch.addIntField("dataval");
+         Layout idxlayout = new Layout(idxsch);
+
+         long t0 = System.nanoTime();
+         TableScan ts = new TableScan(tx, "T", layout);
+         for (int i=0; i<NUMRECS; i++) {
+            ts.insert();
+            ts.setInt("A", i);
+            ts.setString("B", "rec" + i);
+         }
+         ts.close();
+         tx.commit();
+
+         long t1 = System.nanoTime();
+         tx = db.newTx();
+         ts = new TableScan(tx, "T", layout);
+         long sum = 0;
+         int count = 0;
+         ts.beforeFirst();
+         while (ts.next()) {
+            sum += ts.getInt("A");
+            if (!ts.getString("B").equals("rec" + ts.getInt("A")))
+               throw new IllegalStateException("bad record at " + ts.getRid());
+            count++;
+         }
+         check(count == NUMRECS && sum == (long) NUMRECS * (NUMRECS-1) / 2, "scan");
+
+         long t2 = System.nanoTime();
+         Index idx = new BTreeIndex(tx, "Tidx", idxlayout);
+         ts.beforeFirst();
+         while (ts.next())
+            idx.insert(new Constant(ts.getInt("A")), ts.getRid());
+
+         long t3 = System.nanoTime();
+         for (int i=0; i<PROBES; i++) {
+            int key = (int) ((long) i * 7919 % NUMRECS);
+            idx.beforeFirst(new Constant(key));
+            check(idx.next(), "index probe");
+            ts.moveToRid(idx.getDataRid());
+            check(ts.getInt("A") == key, "index probe");
+         }
+         long t4 = System.nanoTime();
+         idx.close();
+         ts.close();
+         tx.commit();
+
+         System.out.printf("block size %6d (%5d buffers): insert %7.1f ms  scan %6.1f ms  "
+                           + "index build %7.1f ms  probe %6.1f ms%n",
+                           blocksize, numbuffs, (t1-t0)/1e6, (t2-t1)/1e6,
+                           (t3-t2)/1e6, (t4-t3)/1e6);
+      }
+   }
+
+   private static void check(boolean ok, String what) {
+      if (!ok)
+         throw new IllegalStateException(what + " returned a wrong result");
+   }
+}
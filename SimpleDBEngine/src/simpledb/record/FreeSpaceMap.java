@@ -0,0 +1,124 @@
+package simpledb.record;
+
+import simpledb.file.BlockId;
+import simpledb.tx.Transaction;
+
+/**
+ * The free-space map of a table: for each block of the
+ * table's file, whether the block has room for another record.
+ * The map is kept in its own file, named after the table with
+ * the extension ".fsm", one integer per block of the table.
+ * A block that the file does not reach yet is not full,
+ * so the map grows only when a block is marked full.
+ * <p>
+ * The map is a hint. It is read without locks, and a block
+ * that is not marked full may have no slot that an inserter
+ * can use. A block is marked full only by a transaction that
+ * has found no room in it for another record; the mark is changed like
+ * any record, under an XLock on its entry, and is logged,
+ * so that it is undone if the transaction rolls back.
+ */
+class FreeSpaceMap {
+   static final int NOT_FULL = 0, FULL = 1;
+   private Transaction tx;
+   private String filename;
+   private int entriesPerBlock;
+
+   /**
+    * Creates the free-space map of the specified table file.
+    * @param tx the transaction
+    * @param tblfile the name of the table's file
+    */
+   FreeSpaceMap(Transaction tx, String tblfile) {
+      this.tx = tx;
+      int dot = tblfile.lastIndexOf('.');
+      filename = (dot < 0 ? tblfile : tblfile.substring(0, dot)) + ".fsm";
+      entriesPerBlock = tx.blockSize() / Integer.BYTES;
+   }
+
+   /**
+    * Determines whether the block is marked full.
+    * @param blknum the number of the table block
+    * @return true if the block is marked full
+    */
+   boolean isFull(int blknum) {
+      return firstNotFull(blknum, blknum+1) < 0;
+   }
+
+   /**
+    * Marks the block as full.
+    * @param blknum the number of the table block
+    */
+   void setFull(int blknum) {
+      BlockId blk = entryBlock(blknum);
+      while (tx.peekSize(filename) <= blk.number())
+         tx.append(filename);
+      set(blk, blknum, FULL);
+   }
+
+   /**
+    * Marks the block as not full, if it is marked full.
+    * @param blknum the number of the table block
+    */
+   void setNotFull(int blknum) {
+      BlockId blk = entryBlock(blknum);
+      if (blk.number() < tx.peekSize(filename))
+         set(blk, blknum, NOT_FULL);
+   }
+
+   /**
+    * Finds the next block that is not marked full,
+    * going round the table from the specified block and
+    * stopping before the block at which the search began.
+    * @param from the block to search from
+    * @param start the block at which the search began
+    * @param numblocks the number of blocks in the table
+    * @return the number of the block, or -1 if there is none
+    */
+   int nextNotFull(int from, int start, int numblocks) {
+      if (from > start) {
+         int blknum = firstNotFull(from, numblocks);
+         if (blknum >= 0)
+            return blknum;
+         from = 0;
+      }
+      return firstNotFull(from, start);
+   }
+
+   private int firstNotFull(int from, int to) {
+      int fsmsize = tx.peekSize(filename);
+      int blknum = from;
+      while (blknum < to) {
+         BlockId blk = entryBlock(blknum);
+         if (blk.number() >= fsmsize)
+            return blknum;
+         int last = Math.min(to, (blk.number() + 1) * entriesPerBlock);
+         tx.pin(blk);
+         while (blknum < last && tx.peekInt(blk, offset(blknum)) == FULL)
+            blknum++;
+         tx.unpin(blk);
+         if (blknum < last)
+            return blknum;
+      }
+      return -1;
+   }
+
+   private void set(BlockId blk, int blknum, int val) {
+      tx.pin(blk);
+      if (tx.peekInt(blk, offset(blknum)) != val)
+         tx.setInt(blk, entry(blknum), offset(blknum), val, true);
+      tx.unpin(blk);
+   }
+
+   private BlockId entryBlock(int blknum) {
+      return new BlockId(filename, blknum / entriesPerBlock);
+   }
+
+   private int entry(int blknum) {
+      return blknum % entriesPerBlock;
+   }
+
+   private int offset(int blknum) {
+      return entry(blknum) * Integer.BYTES;
+   }
+}
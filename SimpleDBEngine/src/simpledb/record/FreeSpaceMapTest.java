@@ -0,0 +1,101 @@
+package simpledb.record;
+
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Checks that inserts reuse the slots freed by deletes:
+ * after records are deleted all over a table, as many
+ * inserts fill the holes without growing the file, and
+ * an insert after a delete in the middle of a full table
+ * goes straight to that block.
+ */
+public class FreeSpaceMapTest {
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("fsmtest", 400, 8);
+      Schema sch = new Schema();
+      sch.addIntField("A");
+      sch.addStringField("B", 9);
+      Layout layout = new Layout(sch);
+
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "T", layout);
+      for (int i=0; i<500; i++) {
+         ts.insert();
+         ts.setInt("A", i);
+         ts.setString("B", "rec"+i);
+      }
+      ts.close();
+      tx.commit();
+      int size = size(db);
+      System.out.println("500 records in " + size + " blocks");
+
+      tx = db.newTx();
+      ts = new TableScan(tx, "T", layout);
+      int deleted = 0;
+      while (ts.next())
+         if (ts.getInt("A") % 3 == 0) {
+            ts.delete();
+            deleted++;
+         }
+      ts.close();
+      tx.commit();
+
+      tx = db.newTx();
+      ts = new TableScan(tx, "T", layout);
+      for (int i=0; i<deleted; i++) {
+         ts.insert();
+         ts.setInt("A", 1000+i);
+         ts.setString("B", "rec"+(1000+i));
+      }
+      ts.close();
+      tx.commit();
+      check("reinserting " + deleted + " deleted records", size(db) == size);
+
+      tx = db.newTx();
+      ts = new TableScan(tx, "T", layout);
+      RID middle = null;
+      while (ts.next())
+         if (ts.getRid().blockNumber() == size/2) {
+            middle = ts.getRid();
+            ts.delete();
+            break;
+         }
+      ts.close();
+      tx.commit();
+
+      tx = db.newTx();
+      ts = new TableScan(tx, "T", layout);
+      ts.insert();
+      ts.setInt("A", -1);
+      ts.setString("B", "middle");
+      check("inserting after a delete in block " + middle.blockNumber(),
+            ts.getRid().equals(middle) && size(db) == size);
+      ts.close();
+      tx.commit();
+
+      tx = db.newTx();
+      ts = new TableScan(tx, "T", layout);
+      Set<Integer> values = new HashSet<>();
+      int count = 0;
+      while (ts.next()) {
+         values.add(ts.getInt("A"));
+         count++;
+      }
+      ts.close();
+      tx.commit();
+      check("reading back " + count + " records", count == 500 && values.size() == 500);
+   }
+
+   private static int size(SimpleDB db) {
+      Transaction tx = db.newTx();
+      int size = tx.size("T.tbl");
+      tx.commit();
+      return size;
+   }
+
+   private static void check(String msg, boolean ok) {
+      System.out.println(msg + (ok ? ": ok" : ": FAILED"));
+   }
+}
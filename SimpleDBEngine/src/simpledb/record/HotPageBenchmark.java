@@ -0,0 +1,116 @@
+package simpledb.record;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.ConcurrencyMgr;
+import simpledb.tx.concurrency.LockAbortException;
+
+/**
+ * Measures update throughput when all the records being updated
+ * are on the same block, with block locks and with record locks.
+ * Each thread runs transactions that read a counter field of
+ * one of its own records, work for a while, and write the
+ * incremented counter back; no two threads touch the same record.
+ * A transaction that is aborted by the deadlock policy is rolled
+ * back and retried after a short random pause.
+ * With block locks, every transaction SLocks the block and then
+ * waits to upgrade, so most of them end in a deadlock.
+ * At the end, the counters must add up to the number
+ * of committed transactions.
+ */
+public class HotPageBenchmark {
+   private static final int THREADS = 8;
+   private static final int RECORDS_PER_THREAD = 4;
+   private static final long DURATION = 3000; // milliseconds
+   private static final long WORK_NANOS = 200000;
+
+   public static void main(String[] args) throws Exception {
+      SimpleDB.LOG_DURABILITY = "none";
+      SimpleDB.DATA_DURABILITY = "none";
+      SimpleDB db = new SimpleDB("hotpagebenchmark", 400, 8);
+      Schema sch = new Schema();
+      sch.addIntField("id");
+      sch.addIntField("counter");
+      Layout layout = new Layout(sch);
+
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "hot", layout);
+      List<RID> rids = new ArrayList<>();
+      for (int i=0; i<THREADS*RECORDS_PER_THREAD; i++) {
+         ts.insert();
+         ts.setInt("id", i);
+         ts.setInt("counter", 0);
+         rids.add(ts.getRid());
+      }
+      ts.close();
+      tx.commit();
+      int blocks = (int) rids.stream().mapToInt(RID::blockNumber).distinct().count();
+      System.out.println(rids.size() + " records on " + blocks + " block(s)");
+
+      for (boolean recordLocks : new boolean[] {false, true}) {
+         ConcurrencyMgr.RECORD_LOCKS = recordLocks;
+         run(db, layout, rids, recordLocks ? "record locks" : "block locks");
+      }
+   }
+
+   private static void run(SimpleDB db, Layout layout, List<RID> rids, String label)
+         throws InterruptedException {
+      int before = total(db, layout);
+      int[] commits = new int[THREADS];
+      int[] aborts = new int[THREADS];
+      long end = System.currentTimeMillis() + DURATION;
+      PrintStream out = System.out;
+      System.setOut(new PrintStream(OutputStream.nullOutputStream())); // commit messages
+      Thread[] threads = new Thread[THREADS];
+      for (int t=0; t<THREADS; t++) {
+         int id = t;
+         threads[t] = new Thread(() -> {
+            Random rand = new Random(id);
+            while (System.currentTimeMillis() < end) {
+               RID rid = rids.get(id + THREADS * rand.nextInt(RECORDS_PER_THREAD));
+               Transaction tx = db.newTx();
+               TableScan ts = new TableScan(tx, "hot", layout);
+               try {
+                  ts.moveToRid(rid);
+                  int n = ts.getInt("counter");
+                  LockSupport.parkNanos(WORK_NANOS);
+                  ts.setInt("counter", n+1);
+                  ts.close();
+                  tx.commit();
+                  commits[id]++;
+               }
+               catch (LockAbortException e) {
+                  tx.rollback(); // also unpins the scan's block
+                  aborts[id]++;
+                  LockSupport.parkNanos(rand.nextInt((int) WORK_NANOS));
+               }
+            }
+         });
+         threads[t].start();
+      }
+      for (Thread t : threads)
+         t.join();
+      System.setOut(out);
+
+      int committed = Arrays.stream(commits).sum();
+      int totalAborts = Arrays.stream(aborts).sum();
+      int counted = total(db, layout) - before;
+      System.out.printf("%-13s %,8.0f commits/sec %,7d aborts  counters %s%n",
+                        label, committed * 1000.0 / DURATION, totalAborts,
+                        (counted == committed) ? "ok" : "WRONG: " + counted + " != " + committed);
+   }
+
+   private static int total(SimpleDB db, Layout layout) {
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "hot", layout);
+      int sum = 0;
+      while (ts.next())
+         sum += ts.getInt("counter");
+      ts.close();
+      tx.commit();
+      return sum;
+   }
+}
@@ -15,6 +15,7 @@ public class Layout {
    private Schema schema;
    private Map<String,Integer> offsets;
    private int slotsize;
+   private PageFormat format;
 
    /**
     * This constructor creates a Layout object from a schema. 
@@ -25,7 +26,22 @@ public class Layout {
     * @param schema the schema of the table's records
     */
    public Layout(Schema schema) {
+      this(schema, PageFormat.FIXED);
+   }
+
+   /**
+    * Creates a Layout object from a schema, for a table
+    * whose records are stored in the specified format.
+    * The offsets and slot size are those of the fixed format;
+    * in the slotted format, the slot size is the most
+    * that a record can take, and in the PAX format they
+    * determine where the values of each field start.
+    * @param schema the schema of the table's records
+    * @param format the format of the table's pages
+    */
+   public Layout(Schema schema, PageFormat format) {
       this.schema = schema;
+      this.format = format;
       offsets  = new HashMap<>();
       int pos = Integer.BYTES; // leave space for the empty/inuse flag
       for (String fldname : schema.fields()) {
@@ -45,9 +61,22 @@ public class Layout {
     * @param recordlen the already-calculated length of each record
     */
    public Layout(Schema schema, Map<String,Integer> offsets, int slotsize) {
+      this(schema, offsets, slotsize, PageFormat.FIXED);
+   }
+
+   /**
+    * Create a Layout object from the specified metadata,
+    * for a table whose records are stored in the specified format.
+    * @param schema the schema of the table's records
+    * @param offsets the already-calculated offsets of the fields within a record
+    * @param slotsize the already-calculated length of each record
+    * @param format the format of the table's pages
+    */
+   public Layout(Schema schema, Map<String,Integer> offsets, int slotsize, PageFormat format) {
       this.schema    = schema;
       this.offsets   = offsets;
       this.slotsize = slotsize;
+      this.format = format;
    }
 
    /**
@@ -75,7 +104,20 @@ public class Layout {
       return slotsize;
    }
 
-   private int lengthInBytes(String fldname) {
+   /**
+    * Return the format in which the records are stored.
+    * @return the format of the table's pages
+    */
+   public PageFormat format() {
+      return format;
+   }
+
+   /**
+    * Return the most bytes that a value of the field can take.
+    * @param fldname the name of the field
+    * @return the length of the field, in bytes
+    */
+   int lengthInBytes(String fldname) {
       int fldtype = schema.type(fldname);
       if (fldtype == INTEGER)
          return Integer.BYTES;
@@ -0,0 +1,57 @@
+package simpledb.record;
+
+import simpledb.server.SimpleDB;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * Measures how many bytes of log an insert-heavy workload writes.
+ * It inserts rows into a student-like table, then deletes
+ * every other one, and reports the log bytes per inserted
+ * and per deleted row, next to the size of a row's slot.
+ */
+public class LogVolumeBenchmark {
+   private static final int NUMROWS = 10000;
+
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("logvolumebenchmark", 400, 8);
+      LogMgr lm = db.logMgr();
+      Schema sch = new Schema();
+      sch.addIntField("sid");
+      sch.addStringField("sname", 10);
+      sch.addIntField("majorid");
+      sch.addIntField("gradyear");
+      Layout layout = new Layout(sch);
+
+      Transaction tx = db.newTx();
+      long start = lm.appendedBytes();
+      TableScan ts = new TableScan(tx, "student", layout);
+      for (int i=0; i<NUMROWS; i++) {
+         ts.insert();
+         ts.setInt("sid", i);
+         ts.setString("sname", "stu" + i);
+         ts.setInt("majorid", i % 40);
+         ts.setInt("gradyear", 2000 + i % 25);
+      }
+      ts.close();
+      tx.commit();
+      long inserted = lm.appendedBytes() - start;
+
+      tx = db.newTx();
+      start = lm.appendedBytes();
+      ts = new TableScan(tx, "student", layout);
+      int count = 0;
+      while (ts.next())
+         if (ts.getInt("sid") % 2 == 0) {
+            ts.delete();
+            count++;
+         }
+      ts.close();
+      tx.commit();
+      long deleted = lm.appendedBytes() - start;
+
+      System.out.printf("slot size %d bytes%n", layout.slotSize());
+      System.out.printf("insert: %.1f log bytes per row%n", (double) inserted / NUMROWS);
+      System.out.printf("delete: %.1f log bytes per row%n", (double) deleted / count);
+   }
+}
@@ -0,0 +1,51 @@
+package simpledb.record;
+
+/**
+ * The ways in which the records of a table can be
+ * stored in its blocks. A table's format is chosen
+ * when the table is created, and is kept in the catalog.
+ */
+public enum PageFormat {
+   /**
+    * Every record has a slot of the same size,
+    * big enough for the longest values of its fields;
+    * see RecordPage.
+    */
+   FIXED,
+
+   /**
+    * Every record takes only the bytes its values need,
+    * and is found through a slot directory at the end
+    * of the block; see SlottedPage.
+    */
+   SLOTTED,
+
+   /**
+    * Every record has a slot, as in the fixed format,
+    * but the values of each field are stored together,
+    * so that a scan can read just the fields it needs;
+    * see PaxPage.
+    */
+   PAX;
+
+   /**
+    * Returns the name of the format, as it is
+    * written in SQL and kept in the catalog.
+    * @return the name of the format
+    */
+   public String formatName() {
+      return name().toLowerCase();
+   }
+
+   /**
+    * Returns the format having the specified name.
+    * @param name the name of the format
+    * @return the format, or null if there is none
+    */
+   public static PageFormat forName(String name) {
+      for (PageFormat f : values())
+         if (f.formatName().equals(name))
+            return f;
+      return null;
+   }
+}
@@ -0,0 +1,91 @@
+package simpledb.record;
+
+import java.util.*;
+import simpledb.metadata.MetadataMgr;
+import simpledb.plan.*;
+import simpledb.query.Scan;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Measures a scan that adds up 3 of the 20 integer fields
+ * of a table, with the table in the fixed format and in the
+ * PAX format. The scan is the projection of the table on
+ * those fields, which passes them down to the table scan.
+ * Both tables fit in the buffer pool and are read once
+ * before timing, so the difference is the cost of reading
+ * the values, not of reading the blocks.
+ * The two scans must get the same sums.
+ */
+public class PaxBenchmark {
+   private static final int FIELDS = 20;
+   private static final int RECORDS = 20000;
+   private static final int SCANS = 20;
+   private static final List<String> PROJECTED = Arrays.asList("f0", "f7", "f13");
+
+   public static void main(String[] args) {
+      SimpleDB.BLOCK_SIZE = 4096;
+      SimpleDB.BUFFER_SIZE = 1000;
+      SimpleDB.LOG_DURABILITY = "none";
+      SimpleDB.DATA_DURABILITY = "none";
+      SimpleDB db = new SimpleDB("paxbenchmark");
+      Schema sch = new Schema();
+      for (int i=0; i<FIELDS; i++)
+         sch.addIntField("f" + i);
+
+      for (PageFormat format : new PageFormat[] {PageFormat.FIXED, PageFormat.PAX})
+         load(db, format.formatName() + "t", sch, format);
+
+      long fixedSum = 0, paxSum = 0;
+      for (int round=0; round<2; round++) { // the first round warms up
+         long start = System.nanoTime();
+         for (int i=0; i<SCANS; i++)
+            fixedSum = sum(db, "fixedt");
+         long fixedTime = System.nanoTime() - start;
+         start = System.nanoTime();
+         for (int i=0; i<SCANS; i++)
+            paxSum = sum(db, "paxt");
+         long paxTime = System.nanoTime() - start;
+         if (round == 1) {
+            report(db, "fixed", "fixedt", fixedTime);
+            report(db, "pax", "paxt", paxTime);
+         }
+      }
+      System.out.println("sums " + ((fixedSum == paxSum) ? "ok" : "WRONG: " + fixedSum + " != " + paxSum));
+   }
+
+   private static void load(SimpleDB db, String tblname, Schema sch, PageFormat format) {
+      MetadataMgr mdm = db.mdMgr();
+      Transaction tx = db.newTx();
+      mdm.createTable(tblname, sch, format, tx);
+      Layout layout = mdm.getLayout(tblname, tx);
+      TableScan ts = new TableScan(tx, tblname, layout);
+      for (int r=0; r<RECORDS; r++) {
+         ts.insert();
+         for (int i=0; i<FIELDS; i++)
+            ts.setInt("f" + i, r * FIELDS + i);
+      }
+      ts.close();
+      tx.commit();
+   }
+
+   private static long sum(SimpleDB db, String tblname) {
+      Transaction tx = db.newTx();
+      Plan p = new ProjectPlan(new TablePlan(tx, tblname, db.mdMgr()), PROJECTED);
+      Scan s = p.open();
+      long sum = 0;
+      while (s.next())
+         for (String fldname : PROJECTED)
+            sum += s.getInt(fldname);
+      s.close();
+      tx.commit();
+      return sum;
+   }
+
+   private static void report(SimpleDB db, String label, String tblname, long nanos) {
+      Transaction tx = db.newTx();
+      int blocks = tx.size(tblname + ".tbl");
+      tx.commit();
+      System.out.printf("%-6s %,6d blocks %,8.2f ms per scan%n", label, blocks, nanos / 1e6 / SCANS);
+   }
+}
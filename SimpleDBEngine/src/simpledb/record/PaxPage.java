@@ -0,0 +1,165 @@
+package simpledb.record;
+
+import static java.sql.Types.INTEGER;
+import java.util.*;
+import simpledb.file.*;
+import simpledb.tx.Transaction;
+
+/**
+ * Store records in a block column by column (PAX):
+ * the block holds as many slots as the fixed format, but
+ * their empty/inuse flags are stored together at the start
+ * of the block, followed by the values of each field for
+ * all the slots, one field after the other.
+ * A record is locked and logged as in the fixed format,
+ * except that an insertion is logged value by value.
+ * <p>
+ * A page that is given the fields a scan needs reads
+ * them for the whole block at once, the first time that
+ * the scan looks for a record: it locks every slot as
+ * it reads the flags, then copies the values of each of
+ * those fields in one piece, and serves the scan from the
+ * copies until the page is modified.
+ * The other fields are read from the block as usual.
+ */
+public class PaxPage extends RecordPage {
+   private int capacity;
+   private Collection<String> fields;
+   private boolean[] used;
+   private Map<String,int[]> ints;
+   private Map<String,String[]> strings;
+
+   /**
+    * Creates the page of the block, which reads
+    * every field from the block as it is asked for.
+    * @param tx the transaction
+    * @param blk a reference to the disk block
+    * @param layout the layout of the table's records
+    */
+   public PaxPage(Transaction tx, BlockId blk, Layout layout) {
+      this(tx, blk, layout, null);
+   }
+
+   /**
+    * Creates the page of the block, which reads the
+    * specified fields for all the records at once.
+    * @param tx the transaction
+    * @param blk a reference to the disk block
+    * @param layout the layout of the table's records
+    * @param fields the fields to read at once, or null
+    */
+   public PaxPage(Transaction tx, BlockId blk, Layout layout, Collection<String> fields) {
+      super(tx, blk, layout);
+      this.fields = fields;
+      capacity = tx.blockSize() / layout.slotSize();
+   }
+
+   public int getInt(int slot, String fldname) {
+      int[] vals = (ints == null) ? null : ints.get(fldname);
+      return (vals != null) ? vals[slot] : super.getInt(slot, fldname);
+   }
+
+   public String getString(int slot, String fldname) {
+      String[] vals = (strings == null) ? null : strings.get(fldname);
+      return (vals != null) ? vals[slot] : super.getString(slot, fldname);
+   }
+
+   public void setInt(int slot, String fldname, int val) {
+      clear();
+      super.setInt(slot, fldname, val);
+   }
+
+   public void setString(int slot, String fldname, String val) {
+      clear();
+      super.setString(slot, fldname, val);
+   }
+
+   public void delete(int slot) {
+      clear();
+      super.delete(slot);
+   }
+
+   public void format() {
+      clear();
+      super.format();
+   }
+
+   public int nextAfter(int slot) {
+      if (fields == null)
+         return super.nextAfter(slot);
+      if (used == null)
+         materialize();
+      for (int s=slot+1; s<capacity; s++)
+         if (used[s])
+            return s;
+      return -1;
+   }
+
+   public int insertAfter(int slot) {
+      clear();
+      return super.insertAfter(slot);
+   }
+
+   int flagPos(int slot) {
+      return slot * Integer.BYTES;
+   }
+
+   /**
+    * The values of a field start where the field would start
+    * in a fixed slot, times the number of slots: after the
+    * flags and the values of the fields before it.
+    */
+   int fieldPos(int slot, String fldname) {
+      return capacity * layout.offset(fldname) + slot * layout.lengthInBytes(fldname);
+   }
+
+   boolean isValidSlot(int slot) {
+      return slot < capacity;
+   }
+
+   /**
+    * The values of a slot are not contiguous,
+    * so its insertion is not logged as a single record.
+    */
+   void beginInsert(int slot) {
+   }
+
+   /**
+    * Locks and reads every flag, and then copies the values
+    * of the scan's fields for the slots in use.
+    */
+   private void materialize() {
+      used = new boolean[capacity];
+      for (int slot=0; slot<capacity; slot++)
+         used[slot] = tx.getInt(blk, slot, flagPos(slot)) == USED;
+      ints = new HashMap<>();
+      strings = new HashMap<>();
+      Schema sch = layout.schema();
+      for (String fldname : fields) {
+         if (!sch.hasField(fldname))
+            continue;
+         int len = layout.lengthInBytes(fldname);
+         Page column = new Page(tx.peekBytes(blk, fieldPos(0, fldname), capacity * len));
+         if (sch.type(fldname) == INTEGER) {
+            int[] vals = new int[capacity];
+            for (int slot=0; slot<capacity; slot++)
+               if (used[slot])
+                  vals[slot] = column.getInt(slot * len);
+            ints.put(fldname, vals);
+         }
+         else {
+            String[] vals = new String[capacity];
+            for (int slot=0; slot<capacity; slot++)
+               if (used[slot])
+                  vals[slot] = column.getString(slot * len);
+            strings.put(fldname, vals);
+         }
+      }
+   }
+
+   private void clear() {
+      used = null;
+      ints = null;
+      strings = null;
+   }
+}
@@ -0,0 +1,83 @@
+package simpledb.record;
+
+import java.util.*;
+import simpledb.plan.*;
+import simpledb.query.Scan;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Checks the PAX format: a table created in SQL with
+ * "format pax" and a table in the fixed format give the
+ * same answers to the same queries, which read only some
+ * of their fields, after the same inserts, updates and
+ * deletes, and after a rollback.
+ */
+public class PaxPageTest {
+   private static final int N = 200;
+
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("paxtest");
+      Planner planner = db.planner();
+      Transaction tx = db.newTx();
+      planner.executeUpdate("create table F(A int, B varchar(10), C int)", tx);
+      planner.executeUpdate("create table P(A int, B varchar(10), C int) format pax", tx);
+      tx.commit();
+      tx = db.newTx();
+      check("creating a pax table in SQL", db.mdMgr().getLayout("p", tx).format() == PageFormat.PAX);
+      tx.commit();
+
+      tx = db.newTx();
+      for (int i=0; i<N; i++)
+         for (String tbl : new String[] {"F", "P"})
+            planner.executeUpdate("insert into " + tbl + "(A,B,C) values(" + i + ", 'rec" + i%7 + "', " + i%10 + ")", tx);
+      tx.commit();
+      check("inserting", same(db, "select A, B from T where C=3"));
+
+      tx = db.newTx();
+      for (String tbl : new String[] {"F", "P"}) {
+         planner.executeUpdate("update " + tbl + " set B='seven' where C=7", tx);
+         planner.executeUpdate("delete from " + tbl + " where B='rec2'", tx);
+      }
+      tx.commit();
+      check("updating and deleting", same(db, "select A, C from T where B='seven'")
+                                     && same(db, "select A from T"));
+
+      tx = db.newTx();
+      planner.executeUpdate("delete from P where C=3", tx);
+      planner.executeUpdate("update P set A=0", tx);
+      tx.rollback();
+      check("rolling back", same(db, "select A, B, C from T"));
+   }
+
+   /**
+    * Runs the query on the fixed and pax tables,
+    * and compares their answers.
+    */
+   private static boolean same(SimpleDB db, String query) {
+      List<String> fixed = answer(db, query.replace(" T", " F"));
+      List<String> pax = answer(db, query.replace(" T", " P"));
+      return !fixed.isEmpty() && fixed.equals(pax);
+   }
+
+   private static List<String> answer(SimpleDB db, String query) {
+      Transaction tx = db.newTx();
+      Plan p = db.planner().createQueryPlan(query, tx);
+      Scan s = p.open();
+      List<String> result = new ArrayList<>();
+      while (s.next()) {
+         String row = "";
+         for (String fldname : p.schema().fields())
+            row += s.getVal(fldname) + " ";
+         result.add(row);
+      }
+      s.close();
+      tx.commit();
+      Collections.sort(result);
+      return result;
+   }
+
+   private static void check(String msg, boolean ok) {
+      System.out.println(msg + (ok ? ": ok" : ": FAILED"));
+   }
+}
@@ -42,6 +42,10 @@ public class RID {
 		return blknum == r.blknum && slot==r.slot;
 	}
 
+	public int hashCode() {
+		return 31 * blknum + slot;
+	}
+
 	public String toString() {
 		return "[" + blknum + ", " + slot + "]";
 	}
@@ -6,18 +6,24 @@ import simpledb.tx.Transaction;
 
 /**
  * Store a record at a given location in a block. 
+ * The records are locked one by one, not the block:
+ * reading a slot (even to find that it is empty) takes an
+ * SLock on its record, and changing it an XLock.
  * @author Edward Sciore
  */
-public class RecordPage {
+public class RecordPage implements TablePage {
    public static final int EMPTY = 0, USED = 1;
-   private Transaction tx;
-   private BlockId blk;
-   private Layout layout;
+   // the transaction, block and layout are shared with subclasses
+   final Transaction tx;
+   final BlockId blk;
+   final Layout layout;
+   private FreeSpaceMap fsm;
 
    public RecordPage(Transaction tx, BlockId blk, Layout layout) {
       this.tx = tx;
       this.blk = blk;
       this.layout = layout;
+      fsm = new FreeSpaceMap(tx, blk.fileName());
       tx.pin(blk);
    }
 
@@ -28,8 +34,7 @@ public class RecordPage {
     * @return the integer stored in that field
     */
    public int getInt(int slot, String fldname) {
-      int fldpos = offset(slot) + layout.offset(fldname);
-      return tx.getInt(blk, fldpos);
+      return tx.getInt(blk, slot, fieldPos(slot, fldname));
    }
 
    /**
@@ -39,8 +44,7 @@ public class RecordPage {
     * @return the string stored in that field
     */
    public String getString(int slot, String fldname) {
-      int fldpos = offset(slot) + layout.offset(fldname);
-      return tx.getString(blk, fldpos);
+      return tx.getString(blk, slot, fieldPos(slot, fldname));
    }
 
    /**
@@ -50,8 +54,7 @@ public class RecordPage {
     * @param val the integer value stored in that field
     */
    public void setInt(int slot, String fldname, int val) {
-      int fldpos = offset(slot) + layout.offset(fldname);
-      tx.setInt(blk, fldpos, val, true);
+      tx.setInt(blk, slot, fieldPos(slot, fldname), val, true);
    }
 
    /**
@@ -61,12 +64,17 @@ public class RecordPage {
     * @param val the string value stored in that field
     */
    public void setString(int slot, String fldname, String val) {
-      int fldpos = offset(slot) + layout.offset(fldname);
-      tx.setString(blk, fldpos, val, true);
+      tx.setString(blk, slot, fieldPos(slot, fldname), val, true);
    }
    
+   /**
+    * Mark the slot as empty, and the block
+    * as not full in the table's free-space map.
+    * @param slot the slot of the record
+    */
    public void delete(int slot) {
       setFlag(slot, EMPTY);
+      fsm.setNotFull(blk.number());
    }
    
    /** Use the layout to format a new block of records.
@@ -76,14 +84,14 @@ public class RecordPage {
    public void format() {
       int slot = 0;
       while (isValidSlot(slot)) {
-         tx.setInt(blk, offset(slot), EMPTY, false); 
+         tx.setInt(blk, slot, flagPos(slot), EMPTY, false); 
          Schema sch = layout.schema();
          for (String fldname : sch.fields()) {
-            int fldpos = offset(slot) + layout.offset(fldname);
+            int fldpos = fieldPos(slot, fldname);
             if (sch.type(fldname) == INTEGER)
-               tx.setInt(blk, fldpos, 0, false);
+               tx.setInt(blk, slot, fldpos, 0, false);
             else
-               tx.setString(blk, fldpos, "", false);
+               tx.setString(blk, slot, fldpos, "", false);
          }
          slot++;
       }
@@ -93,10 +101,39 @@ public class RecordPage {
       return searchAfter(slot, USED);
    }
  
+   /**
+    * Mark the first empty slot after the specified one as used.
+    * The insertion is logged as a whole: the flag and the
+    * values the caller then stores in the slot are logged
+    * together, as a single record.
+    * An empty slot whose record another transaction has locked
+    * is passed over: it may have been emptied by a delete
+    * that is not yet committed, or be examined by a reader.
+    * The flag of a slot is first looked at without a lock,
+    * and checked again once the record is locked.
+    * If the search covers the whole block and finds no other
+    * empty slot, the block is marked full in the table's
+    * free-space map.
+    * @param slot the slot to search after, or -1
+    * @return the new slot, or -1 if there is no empty slot
+    */
    public int insertAfter(int slot) {
-      int newslot = searchAfter(slot, EMPTY);
-      if (newslot >= 0)
+      int newslot = -1;
+      boolean full = (slot < 0);
+      for (int s=slot+1; isValidSlot(s) && (newslot < 0 || full); s++) {
+         if (tx.peekInt(blk, flagPos(s)) != EMPTY)
+            continue;
+         if (newslot < 0 && tx.tryXLock(blk, s) && tx.getInt(blk, s, flagPos(s)) == EMPTY)
+            newslot = s;
+         else
+            full = false;
+      }
+      if (newslot >= 0) {
+         beginInsert(newslot);
          setFlag(newslot, USED);
+      }
+      if (full)
+         fsm.setFull(blk.number());
       return newslot;
    }
   
@@ -104,29 +141,66 @@ public class RecordPage {
       return blk;
    }
    
+   // Auxiliary methods that give the positions of the slots,
+   // which a subclass can store differently
+
+   /**
+    * Returns the position of the empty/inuse flag of a slot.
+    * @param slot the slot of the record
+    * @return the offset of the flag in the block
+    */
+   int flagPos(int slot) {
+      return offset(slot);
+   }
+
+   /**
+    * Returns the position of a field of a slot.
+    * @param slot the slot of the record
+    * @param fldname the name of the field
+    * @return the offset of the field in the block
+    */
+   int fieldPos(int slot, String fldname) {
+      return offset(slot) + layout.offset(fldname);
+   }
+
+   /**
+    * Determines whether the slot fits in the block.
+    * @param slot the slot of the record
+    * @return true if the block has that slot
+    */
+   boolean isValidSlot(int slot) {
+      return offset(slot+1) <= tx.blockSize();
+   }
+
+   /**
+    * Begins the insertion of a record in the slot,
+    * which is logged as a single record when the slot
+    * is stored in contiguous bytes.
+    * @param slot the slot of the new record
+    */
+   void beginInsert(int slot) {
+      tx.beginInsert(blk, slot, offset(slot), layout.slotSize());
+   }
+
    // Private auxiliary methods
    
    /**
     * Set the record's empty/inuse flag.
     */
    private void setFlag(int slot, int flag) {
-      tx.setInt(blk, offset(slot), flag, true); 
+      tx.setInt(blk, slot, flagPos(slot), flag, true); 
    }
 
    private int searchAfter(int slot, int flag) {
       slot++;
       while (isValidSlot(slot)) {
-         if (tx.getInt(blk, offset(slot)) == flag)
+         if (tx.getInt(blk, slot, flagPos(slot)) == flag)
             return slot;
          slot++;
       }
       return -1;
    }
 
-   private boolean isValidSlot(int slot) {
-      return offset(slot+1) <= tx.blockSize();
-   }
-
    private int offset(int slot) {
       return slot * layout.slotSize();
    }
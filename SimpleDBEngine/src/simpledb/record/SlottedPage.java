@@ -0,0 +1,458 @@
+package simpledb.record;
+
+import static java.sql.Types.INTEGER;
+import java.util.*;
+import simpledb.file.*;
+import simpledb.tx.Transaction;
+
+/**
+ * Store records of variable length in a block.
+ * The block begins with a header: the number of slots, the
+ * offset at which its free space begins, and the number of
+ * bytes left behind by records that were deleted or rewritten.
+ * The records follow the header. Each takes only the bytes
+ * of its values, in the order of the schema's fields:
+ * four for an integer, and for a string its length
+ * followed by its characters.
+ * The slot directory grows back from the end of the block;
+ * the entry of a slot holds its status and the offset
+ * and length of its record.
+ * <p>
+ * Setting a string to a value of another length rewrites
+ * the record, in place if it does not grow or is the last
+ * record of the block, and otherwise at the beginning of the
+ * free space, compacting the records of the block if needed.
+ * If the block has no room for the record, it moves to
+ * another block: its slot becomes FORWARDED, and the offset
+ * and length of its entry hold the block and slot where the
+ * record now lives, as a MOVED record. A MOVED record is only
+ * reached through its slot of origin, so that the RID of a
+ * record does not change.
+ * <p>
+ * Since rewriting one record can move the others,
+ * the block is locked as a whole, not record by record.
+ * A block is marked full in the table's free-space map
+ * when it has no room for a record of the largest size.
+ */
+public class SlottedPage implements TablePage {
+   public static final int EMPTY = 0, USED = 1, FORWARDED = 2, MOVED = 3;
+   private static final int NUMSLOTS = 0;
+   private static final int FREESTART = Integer.BYTES;
+   private static final int GARBAGE = 2 * Integer.BYTES;
+   private static final int HEADER_SIZE = 3 * Integer.BYTES;
+   private static final int ENTRY_SIZE = 3 * Integer.BYTES;
+   private Transaction tx;
+   private BlockId blk;
+   private Layout layout;
+   private FreeSpaceMap fsm;
+
+   public SlottedPage(Transaction tx, BlockId blk, Layout layout) {
+      this.tx = tx;
+      this.blk = blk;
+      this.layout = layout;
+      fsm = new FreeSpaceMap(tx, blk.fileName());
+      tx.pin(blk);
+   }
+
+   public int getInt(int slot, String fldname) {
+      if (status(blk, slot) != FORWARDED)
+         return tx.getInt(blk, fieldPos(blk, slot, fldname));
+      BlockId b = target(slot);
+      tx.pin(b);
+      int val = tx.getInt(b, fieldPos(b, targetSlot(slot), fldname));
+      tx.unpin(b);
+      return val;
+   }
+
+   public String getString(int slot, String fldname) {
+      if (status(blk, slot) != FORWARDED)
+         return tx.getString(blk, fieldPos(blk, slot, fldname));
+      BlockId b = target(slot);
+      tx.pin(b);
+      String val = tx.getString(b, fieldPos(b, targetSlot(slot), fldname));
+      tx.unpin(b);
+      return val;
+   }
+
+   public void setInt(int slot, String fldname, int val) {
+      if (status(blk, slot) != FORWARDED) {
+         tx.setInt(blk, fieldPos(blk, slot, fldname), val, true);
+         return;
+      }
+      BlockId b = target(slot);
+      tx.pin(b);
+      tx.setInt(b, fieldPos(b, targetSlot(slot), fldname), val, true);
+      tx.unpin(b);
+   }
+
+   /**
+    * Store a string at the specified field of the specified slot.
+    * A string of another length rewrites the record,
+    * which may then move to another block.
+    * @param slot the slot of the record
+    * @param fldname the name of the field
+    * @param val the string value stored in that field
+    */
+   public void setString(int slot, String fldname, String val) {
+      BlockId b = blk;
+      int s = slot;
+      if (status(blk, slot) == FORWARDED) {
+         b = target(slot);
+         s = targetSlot(slot);
+         tx.pin(b);
+      }
+      int pos = fieldPos(b, s, fldname);
+      if (tx.getInt(b, pos) == val.getBytes(Page.CHARSET).length)
+         tx.setString(b, pos, val, true);
+      else {
+         Object[] vals = readRecord(b, s);
+         vals[layout.schema().fields().indexOf(fldname)] = val;
+         if (!rewrite(b, s, vals))
+            relocate(slot, b, s, vals);
+      }
+      if (b != blk)
+         tx.unpin(b);
+   }
+
+   /**
+    * Delete the record in the specified slot, and mark
+    * its block as not full in the table's free-space map.
+    * @param slot the slot of the record
+    */
+   public void delete(int slot) {
+      if (status(blk, slot) == FORWARDED) {
+         BlockId b = target(slot);
+         tx.pin(b);
+         remove(b, targetSlot(slot));
+         tx.unpin(b);
+         setEntry(blk, slot, EMPTY, 0, 0);
+         fsm.setNotFull(blk.number());
+      }
+      else
+         remove(blk, slot);
+   }
+
+   /**
+    * Format a new block, with no slots.
+    * These values should not be logged
+    * (because the old values are meaningless).
+    */
+   public void format() {
+      format(blk);
+   }
+
+   /**
+    * Return the first slot after the specified one that
+    * holds a record, passing over the MOVED records.
+    * @param slot the slot to search after, or -1
+    * @return the slot, or -1 if there is none
+    */
+   public int nextAfter(int slot) {
+      int numslots = tx.getInt(blk, NUMSLOTS);
+      for (int s=slot+1; s<numslots; s++) {
+         int status = status(blk, s);
+         if (status == USED || status == FORWARDED)
+            return s;
+      }
+      return -1;
+   }
+
+   /**
+    * Insert a record with default values in the first empty
+    * slot after the specified one, or in a new slot.
+    * If the block has no room for a record of the largest
+    * size, it is marked full in the table's free-space map.
+    * @param slot the slot to search after, or -1
+    * @return the new slot, or -1 if the block has no room
+    */
+   public int insertAfter(int slot) {
+      Schema sch = layout.schema();
+      Object[] vals = new Object[sch.fields().size()];
+      for (int i=0; i<vals.length; i++)
+         vals[i] = (sch.type(sch.fields().get(i)) == INTEGER) ? (Object) 0 : "";
+      return insert(blk, slot, USED, vals);
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
+   // Private auxiliary methods
+
+   private void format(BlockId b) {
+      tx.setInt(b, NUMSLOTS, 0, false);
+      tx.setInt(b, FREESTART, HEADER_SIZE, false);
+      tx.setInt(b, GARBAGE, 0, false);
+   }
+
+   /**
+    * Inserts a record with the specified values in the block,
+    * in the first empty slot after the specified one
+    * or in a new slot.
+    * @return the new slot, or -1 if the block has no room
+    */
+   private int insert(BlockId b, int slot, int status, Object[] vals) {
+      if (!hasRoom(b, layout.slotSize())) {
+         fsm.setFull(b.number());
+         return -1;
+      }
+      int size = size(vals);
+      if (!hasRoom(b, size))
+         return -1;
+      int numslots = tx.getInt(b, NUMSLOTS);
+      int s = Math.min(slot+1, numslots);
+      while (s < numslots && status(b, s) != EMPTY)
+         s++;
+      if (s == numslots) {
+         if (dirStart(b) - tx.getInt(b, FREESTART) < ENTRY_SIZE)
+            compact(b);
+         tx.setInt(b, NUMSLOTS, numslots+1, true);
+         setEntry(b, s, EMPTY, 0, 0);
+      }
+      store(b, s, status, vals);
+      return s;
+   }
+
+   /**
+    * Rewrites the record of the slot with the specified values:
+    * in place if it does not grow or is the last record of the
+    * block, and otherwise as a new record of the slot.
+    * @return false, with the record unchanged,
+    * if the block has no room for the new values
+    */
+   private boolean rewrite(BlockId b, int s, Object[] vals) {
+      int offset = tx.getInt(b, entryPos(s) + Integer.BYTES);
+      int length = tx.getInt(b, entryPos(s) + 2 * Integer.BYTES);
+      int size = size(vals);
+      int freestart = tx.getInt(b, FREESTART);
+      boolean last = (offset + length == freestart);
+      if (size <= length || (last && offset + size <= dirStart(b))) {
+         writeRecord(b, offset, vals);
+         if (last)
+            tx.setInt(b, FREESTART, offset + size, true);
+         else
+            addGarbage(b, length - size);
+         setEntry(b, s, status(b, s), offset, size);
+         return true;
+      }
+      if (available(b) + length < size)
+         return false;
+      addGarbage(b, length);
+      setEntry(b, s, status(b, s), 0, 0);
+      return store(b, s, status(b, s), vals);
+   }
+
+   /**
+    * Moves the record of the home slot out of the block b,
+    * where it no longer fits: back to the home block if
+    * it was forwarded and fits there, or else to another block.
+    */
+   private void relocate(int slot, BlockId b, int s, Object[] vals) {
+      if (b != blk) {
+         remove(b, s);
+         setEntry(blk, slot, USED, 0, 0);
+         if (store(blk, slot, USED, vals))
+            return;
+      }
+      else {
+         addGarbage(blk, length(blk, slot));
+         setEntry(blk, slot, USED, 0, 0);
+      }
+      String filename = blk.fileName();
+      int start = blk.number();
+      int blknum = fsm.nextNotFull(start+1, start, tx.size(filename));
+      while (true) {
+         BlockId target;
+         if (blknum < 0) {
+            target = tx.append(filename);
+            tx.pin(target);
+            format(target);
+         }
+         else {
+            target = new BlockId(filename, blknum);
+            tx.pin(target);
+         }
+         int targetslot = insert(target, -1, MOVED, vals);
+         tx.unpin(target);
+         if (targetslot >= 0) {
+            setEntry(blk, slot, FORWARDED, target.number(), targetslot);
+            return;
+         }
+         if (blknum < 0)
+            throw new IllegalArgumentException("record too long for a block of " + filename);
+         blknum = fsm.nextNotFull(blknum+1, start, tx.size(filename));
+      }
+   }
+
+   /**
+    * Writes the values as the record of the slot, whose
+    * entry has no record, compacting the block if needed.
+    * @return false if the block has no room for the record
+    */
+   private boolean store(BlockId b, int s, int status, Object[] vals) {
+      int size = size(vals);
+      if (available(b) < size)
+         return false;
+      if (dirStart(b) - tx.getInt(b, FREESTART) < size)
+         compact(b);
+      int offset = tx.getInt(b, FREESTART);
+      writeRecord(b, offset, vals);
+      tx.setInt(b, FREESTART, offset + size, true);
+      setEntry(b, s, status, offset, size);
+      return true;
+   }
+
+   /**
+    * Empties the slot, and marks its block
+    * as not full in the free-space map.
+    */
+   private void remove(BlockId b, int s) {
+      addGarbage(b, length(b, s));
+      setEntry(b, s, EMPTY, 0, 0);
+      fsm.setNotFull(b.number());
+   }
+
+   /**
+    * Moves the records of the block next to each other,
+    * in the order of their offsets, so that all the free
+    * space is at the beginning of the free space.
+    */
+   private void compact(BlockId b) {
+      int numslots = tx.getInt(b, NUMSLOTS);
+      List<int[]> records = new ArrayList<>(); // of offsets and slots
+      for (int s=0; s<numslots; s++)
+         if (length(b, s) > 0)
+            records.add(new int[] {tx.getInt(b, entryPos(s) + Integer.BYTES), s});
+      records.sort(Comparator.comparingInt(r -> r[0]));
+      int pos = HEADER_SIZE;
+      for (int[] r : records) {
+         int s = r[1];
+         int length = length(b, s);
+         if (r[0] != pos) {
+            tx.setBytes(b, pos, tx.getBytes(b, r[0], length), true);
+            tx.setInt(b, entryPos(s) + Integer.BYTES, pos, true);
+         }
+         pos += length;
+      }
+      tx.setInt(b, FREESTART, pos, true);
+      tx.setInt(b, GARBAGE, 0, true);
+   }
+
+   private Object[] readRecord(BlockId b, int s) {
+      Schema sch = layout.schema();
+      Object[] vals = new Object[sch.fields().size()];
+      int pos = tx.getInt(b, entryPos(s) + Integer.BYTES);
+      for (int i=0; i<vals.length; i++) {
+         if (sch.type(sch.fields().get(i)) == INTEGER)
+            vals[i] = tx.getInt(b, pos);
+         else
+            vals[i] = tx.getString(b, pos);
+         pos += size(vals[i]);
+      }
+      return vals;
+   }
+
+   /**
+    * Writes the values as a record at the offset of the block.
+    * The record is written as a whole, since the bytes it
+    * overwrites need not hold values of the same types.
+    */
+   private void writeRecord(BlockId b, int offset, Object[] vals) {
+      Page p = new Page(new byte[size(vals)]);
+      int pos = 0;
+      for (Object val : vals) {
+         if (val instanceof Integer)
+            p.setInt(pos, (Integer) val);
+         else
+            p.setString(pos, (String) val);
+         pos += size(val);
+      }
+      tx.setBytes(b, offset, p.getRawBytes(0, pos), true);
+   }
+
+   private int fieldPos(BlockId b, int s, String fldname) {
+      Schema sch = layout.schema();
+      int pos = tx.getInt(b, entryPos(s) + Integer.BYTES);
+      for (String f : sch.fields()) {
+         if (f.equals(fldname))
+            return pos;
+         if (sch.type(f) == INTEGER)
+            pos += Integer.BYTES;
+         else
+            pos += Integer.BYTES + tx.getInt(b, pos);
+      }
+      throw new IllegalArgumentException("no field " + fldname);
+   }
+
+   private static int size(Object[] vals) {
+      int size = 0;
+      for (Object val : vals)
+         size += size(val);
+      return size;
+   }
+
+   private static int size(Object val) {
+      if (val instanceof Integer)
+         return Integer.BYTES;
+      return Integer.BYTES + ((String) val).getBytes(Page.CHARSET).length;
+   }
+
+   /**
+    * Determines whether the block has room for
+    * a new slot with a record of the specified size.
+    */
+   private boolean hasRoom(BlockId b, int size) {
+      return available(b) >= ENTRY_SIZE + size;
+   }
+
+   /**
+    * Returns the bytes of the block that no record
+    * takes: the free space and the garbage.
+    */
+   private int available(BlockId b) {
+      return dirStart(b) - tx.getInt(b, FREESTART) + tx.getInt(b, GARBAGE);
+   }
+
+   private void addGarbage(BlockId b, int length) {
+      if (length > 0)
+         tx.setInt(b, GARBAGE, tx.getInt(b, GARBAGE) + length, true);
+   }
+
+   private int dirStart(BlockId b) {
+      return tx.blockSize() - tx.getInt(b, NUMSLOTS) * ENTRY_SIZE;
+   }
+
+   private int entryPos(int s) {
+      return tx.blockSize() - (s+1) * ENTRY_SIZE;
+   }
+
+   private int status(BlockId b, int s) {
+      return tx.getInt(b, entryPos(s));
+   }
+
+   /**
+    * Returns the length of the slot's record,
+    * or 0 if the slot has no record in the block.
+    */
+   private int length(BlockId b, int s) {
+      int status = status(b, s);
+      if (status != USED && status != MOVED)
+         return 0;
+      return tx.getInt(b, entryPos(s) + 2 * Integer.BYTES);
+   }
+
+   private void setEntry(BlockId b, int s, int status, int offset, int length) {
+      int pos = entryPos(s);
+      tx.setInt(b, pos, status, true);
+      tx.setInt(b, pos + Integer.BYTES, offset, true);
+      tx.setInt(b, pos + 2 * Integer.BYTES, length, true);
+   }
+
+   private BlockId target(int slot) {
+      return new BlockId(blk.fileName(), tx.getInt(blk, entryPos(slot) + Integer.BYTES));
+   }
+
+   private int targetSlot(int slot) {
+      return tx.getInt(blk, entryPos(slot) + 2 * Integer.BYTES);
+   }
+}
@@ -0,0 +1,126 @@
+package simpledb.record;
+
+import java.util.*;
+import simpledb.plan.*;
+import simpledb.query.Scan;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Checks the slotted format: the same short strings in a
+ * varchar(100) field take fewer blocks than in the fixed format;
+ * records keep their RIDs and values while their strings grow
+ * (moving them to other blocks) and shrink, and after deletes
+ * and a rollback; and a table created in SQL with
+ * "format slotted" stores its records in that format.
+ */
+public class SlottedPageTest {
+   private static final int N = 300;
+
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("slottedtest");
+      Schema sch = new Schema();
+      sch.addIntField("A");
+      sch.addStringField("B", 100);
+      sch.addIntField("C");
+
+      int fixed = fill(db, "fixedt", new Layout(sch, PageFormat.FIXED));
+      Layout layout = new Layout(sch, PageFormat.SLOTTED);
+      int slotted = fill(db, "slottedt", layout);
+      System.out.println(N + " records: " + fixed + " fixed blocks, " + slotted + " slotted blocks");
+      check("slotted format takes fewer blocks", slotted * 2 < fixed);
+
+      Map<RID,String> expected = new HashMap<>();
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "slottedt", layout);
+      while (ts.next()) {
+         int a = ts.getInt("A");
+         String b = (a % 4 == 0) ? "x".repeat(90) + a : "rec" + a;
+         ts.setString("B", b);
+         expected.put(ts.getRid(), b);
+      }
+      ts.close();
+      tx.commit();
+      check("growing every fourth string", matches(db, layout, expected));
+
+      tx = db.newTx();
+      ts = new TableScan(tx, "slottedt", layout);
+      while (ts.next()) {
+         int a = ts.getInt("A");
+         if (a % 8 == 0) {
+            ts.setString("B", "short" + a);
+            expected.put(ts.getRid(), "short" + a);
+         }
+         else if (a % 3 == 0) {
+            expected.remove(ts.getRid());
+            ts.delete();
+         }
+      }
+      ts.close();
+      tx.commit();
+      check("shrinking and deleting", matches(db, layout, expected));
+
+      tx = db.newTx();
+      ts = new TableScan(tx, "slottedt", layout);
+      while (ts.next()) {
+         ts.setString("B", "y".repeat(99));
+         if (ts.getInt("A") % 5 == 0)
+            ts.delete();
+      }
+      ts.close();
+      tx.rollback();
+      check("rolling back", matches(db, layout, expected));
+
+      Planner planner = db.planner();
+      tx = db.newTx();
+      planner.executeUpdate("create table S(A int, B varchar(100)) format slotted", tx);
+      planner.executeUpdate("insert into S(A,B) values(1, 'one')", tx);
+      planner.executeUpdate("update S set B='uno' where A=1", tx);
+      Plan p = planner.createQueryPlan("select B from S where A=1", tx);
+      Scan s = p.open();
+      boolean ok = s.next() && s.getString("b").equals("uno") && !s.next();
+      s.close();
+      tx.commit();
+      tx = db.newTx();
+      ok = ok && db.mdMgr().getLayout("s", tx).format() == PageFormat.SLOTTED;
+      tx.commit();
+      check("creating a slotted table in SQL", ok);
+   }
+
+   private static int fill(SimpleDB db, String tblname, Layout layout) {
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, tblname, layout);
+      for (int i=0; i<N; i++) {
+         ts.insert();
+         ts.setInt("A", i);
+         ts.setString("B", "rec" + i);
+         ts.setInt("C", -i);
+      }
+      ts.close();
+      int size = tx.size(tblname + ".tbl");
+      tx.commit();
+      return size;
+   }
+
+   private static boolean matches(SimpleDB db, Layout layout, Map<RID,String> expected) {
+      Transaction tx = db.newTx();
+      TableScan ts = new TableScan(tx, "slottedt", layout);
+      Map<RID,String> found = new HashMap<>();
+      boolean ok = true;
+      while (ts.next()) {
+         found.put(ts.getRid(), ts.getString("B"));
+         ok = ok && ts.getInt("C") == -ts.getInt("A");
+      }
+      for (RID rid : expected.keySet()) {
+         ts.moveToRid(rid);
+         ok = ok && ts.getString("B").equals(expected.get(rid));
+      }
+      ts.close();
+      tx.commit();
+      return ok && found.equals(expected);
+   }
+
+   private static void check(String msg, boolean ok) {
+      System.out.println(msg + (ok ? ": ok" : ": FAILED"));
+   }
+}
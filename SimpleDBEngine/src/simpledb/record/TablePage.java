@@ -0,0 +1,113 @@
+package simpledb.record;
+
+import java.util.Collection;
+import simpledb.file.BlockId;
+import simpledb.tx.Transaction;
+
+/**
+ * A block of a table, whose records are stored in one of
+ * the page formats and are identified by their slot numbers.
+ * The block is pinned when the page is created, and must be
+ * unpinned by the client.
+ */
+public interface TablePage {
+   /**
+    * Returns the page of the table's block, which
+    * stores its records in the layout's format.
+    * @param tx the transaction
+    * @param blk a reference to the disk block
+    * @param layout the layout of the table's records
+    * @return the page of the block
+    */
+   static TablePage open(Transaction tx, BlockId blk, Layout layout) {
+      return open(tx, blk, layout, null);
+   }
+
+   /**
+    * Returns the page of the table's block, for a scan
+    * that only needs the specified fields.
+    * A page in the PAX format reads those fields
+    * for all its records at once.
+    * @param tx the transaction
+    * @param blk a reference to the disk block
+    * @param layout the layout of the table's records
+    * @param fields the fields needed, or null for all of them
+    * @return the page of the block
+    */
+   static TablePage open(Transaction tx, BlockId blk, Layout layout, Collection<String> fields) {
+      if (layout.format() == PageFormat.SLOTTED)
+         return new SlottedPage(tx, blk, layout);
+      if (layout.format() == PageFormat.PAX)
+         return new PaxPage(tx, blk, layout, fields);
+      return new RecordPage(tx, blk, layout);
+   }
+
+   /**
+    * Return the integer value stored for the
+    * specified field of a specified slot.
+    * @param slot the slot of the record
+    * @param fldname the name of the field.
+    * @return the integer stored in that field
+    */
+   int getInt(int slot, String fldname);
+
+   /**
+    * Return the string value stored for the
+    * specified field of the specified slot.
+    * @param slot the slot of the record
+    * @param fldname the name of the field.
+    * @return the string stored in that field
+    */
+   String getString(int slot, String fldname);
+
+   /**
+    * Store an integer at the specified field
+    * of the specified slot.
+    * @param slot the slot of the record
+    * @param fldname the name of the field
+    * @param val the integer value stored in that field
+    */
+   void setInt(int slot, String fldname, int val);
+
+   /**
+    * Store a string at the specified field
+    * of the specified slot.
+    * @param slot the slot of the record
+    * @param fldname the name of the field
+    * @param val the string value stored in that field
+    */
+   void setString(int slot, String fldname, String val);
+
+   /**
+    * Delete the record in the specified slot.
+    * @param slot the slot of the record
+    */
+   void delete(int slot);
+
+   /**
+    * Format a new block, so that it holds no records.
+    */
+   void format();
+
+   /**
+    * Return the first slot after the specified one
+    * that holds a record.
+    * @param slot the slot to search after, or -1
+    * @return the slot, or -1 if there is none
+    */
+   int nextAfter(int slot);
+
+   /**
+    * Insert a record with default values in the
+    * first free slot after the specified one.
+    * @param slot the slot to search after, or -1
+    * @return the new slot, or -1 if the block has no room
+    */
+   int insertAfter(int slot);
+
+   /**
+    * Return the block of the page.
+    * @return a reference to the disk block
+    */
+   BlockId block();
+}
@@ -1,6 +1,7 @@
 package simpledb.record;
 
 import static java.sql.Types.INTEGER;
+import java.util.Collection;
 import simpledb.file.BlockId;
 import simpledb.query.*;
 import simpledb.tx.Transaction;
@@ -13,14 +14,32 @@ import simpledb.tx.Transaction;
 public class TableScan implements UpdateScan {
    private Transaction tx;
    private Layout layout;
-   private RecordPage rp;
+   private TablePage rp;
    private String filename;
+   private FreeSpaceMap fsm;
    private int currentslot;
+   private Collection<String> fields;
 
    public TableScan(Transaction tx, String tblname, Layout layout) {
+      this(tx, tblname, layout, null);
+   }
+
+   /**
+    * Creates a scan of the table that only needs the
+    * specified fields, which the table's pages can then
+    * read for all their records at once.
+    * The other fields can still be read, less efficiently.
+    * @param tx the transaction
+    * @param tblname the name of the table
+    * @param layout the layout of the table's records
+    * @param fields the fields needed, or null for all of them
+    */
+   public TableScan(Transaction tx, String tblname, Layout layout, Collection<String> fields) {
       this.tx = tx;
       this.layout = layout;
+      this.fields = fields;
       filename = tblname + ".tbl";
+      fsm = new FreeSpaceMap(tx, filename);
       if (tx.size(filename) == 0)
          moveToNewBlock();
       else 
@@ -85,13 +104,24 @@ public class TableScan implements UpdateScan {
          setString(fldname, val.asString());
    }
 
+   /**
+    * Insert a new record somewhere in the table.
+    * The current block is tried first, unless it is marked
+    * full in the table's free-space map; after that, the
+    * free-space map is consulted to go straight to the
+    * following blocks that are not full, going round to
+    * the beginning of the table. A new block is appended
+    * only if none of them has a slot free.
+    */
    public void insert() {
-      currentslot = rp.insertAfter(currentslot);
+      int start = rp.block().number();
+      currentslot = fsm.isFull(start) ? -1 : rp.insertAfter(currentslot);
       while (currentslot < 0) {
-         if (atLastBlock()) 
+         int blknum = fsm.nextNotFull(rp.block().number()+1, start, tx.size(filename));
+         if (blknum < 0)
             moveToNewBlock();
-         else 
-            moveToBlock(rp.block().number()+1);
+         else
+            moveToBlock(blknum);
          currentslot = rp.insertAfter(currentslot);
       }
    }
@@ -103,7 +133,7 @@ public class TableScan implements UpdateScan {
    public void moveToRid(RID rid) {
       close();
       BlockId blk = new BlockId(filename, rid.blockNumber());
-      rp = new RecordPage(tx, blk, layout);
+      rp = TablePage.open(tx, blk, layout, fields);
       currentslot = rid.slot();
    }
 
@@ -116,14 +146,14 @@ public class TableScan implements UpdateScan {
    private void moveToBlock(int blknum) {
       close();
       BlockId blk = new BlockId(filename, blknum);
-      rp = new RecordPage(tx, blk, layout);
+      rp = TablePage.open(tx, blk, layout, fields);
       currentslot = -1;
    }
 
    private void moveToNewBlock() {
       close();
       BlockId blk = tx.append(filename);
-      rp = new RecordPage(tx, blk, layout);
+      rp = TablePage.open(tx, blk, layout, fields);
       rp.format();
       currentslot = -1;
    }
@@ -1,10 +1,18 @@
 package simpledb.server;
 
 import java.io.File;
+import java.util.*;
+import simpledb.file.Durability;
 import simpledb.file.FileMgr;
+import simpledb.file.MappedFileMgr;
 import simpledb.log.LogMgr;
 import simpledb.buffer.BufferMgr;
+import simpledb.buffer.ReplacementPolicy;
 import simpledb.tx.Transaction;
+import simpledb.tx.concurrency.ConcurrencyMgr;
+import simpledb.tx.concurrency.DeadlockPolicy;
+import simpledb.tx.recovery.CheckpointScheduler;
+import simpledb.tx.recovery.RecoveryMgr;
 import simpledb.metadata.MetadataMgr;
 import simpledb.plan.*;
 import simpledb.index.planner.IndexUpdatePlanner;
@@ -19,6 +27,26 @@ public class SimpleDB {
    public static int BLOCK_SIZE = 400;
    public static int BUFFER_SIZE = 8;
    public static String LOG_FILE = "simpledb.log";
+   public static int LOG_BUFFER_SIZE = 8; // log pages
+   public static int LOG_SEGMENT_SIZE = LogMgr.DEFAULT_SEGMENT_SIZE; // blocks
+   public static String PLANNER = "basic";
+   public static String BUFFER_POLICY = "lru";
+   public static String LOG_DURABILITY = "fsync";
+   public static String DATA_DURABILITY = "fsync";
+   public static double FLUSH_HIGH_WATERMARK = 0.5;
+   public static double FLUSH_LOW_WATERMARK = 0.25;
+   public static long FLUSH_INTERVAL = 100; // milliseconds
+   public static long GROUP_COMMIT_DELAY = 0; // milliseconds
+   public static int GROUP_COMMIT_BATCH = 16;
+   public static boolean MAPPED_DATA_FILES = false;
+   public static long CHECKPOINT_INTERVAL = 60000; // milliseconds; 0 disables
+   public static long CHECKPOINT_LOG_VOLUME = 16 * 1024 * 1024; // bytes; 0 disables
+   public static int RECOVERY_THREADS = Runtime.getRuntime().availableProcessors();
+   public static int UNDO_BUFFER_SIZE = 64 * 1024; // bytes per transaction
+   public static String DEADLOCK_POLICY = "detect";
+   public static int LOCK_ESCALATION = 1000; // locks per file; 0 disables
+   public static boolean RECORD_LOCKS = true;
+   public static long VERSION_STORE_SIZE = 16 * 1024 * 1024; // bytes
 
    private  FileMgr     fm;
    private  BufferMgr   bm;
@@ -26,6 +54,157 @@ public class SimpleDB {
    private  MetadataMgr mdm;
    private  Planner planner;
 
+   // the names of the properties that configure() recognizes
+   private static final Set<String> PROPERTIES = new HashSet<>(Arrays.asList(
+         "blocksize", "buffers", "logbuffers", "logsegment", "planner",
+         "policy", "logdurability", "datadurability", "mapped",
+         "groupcommit.delay", "groupcommit.batch",
+         "flush.high", "flush.low", "flush.interval",
+         "checkpoint.interval", "checkpoint.volume", "recovery.threads", "undobuffer",
+         "deadlock", "lockescalation", "recordlocks", "versionstore"));
+
+   /**
+    * Sets the configuration variables from the specified properties.
+    * Properties that are not present leave their variable unchanged.
+    * The recognized properties are
+    * blocksize, buffers, logbuffers, logsegment, planner (basic or heuristic),
+    * policy, logdurability, datadurability, mapped,
+    * groupcommit.delay, groupcommit.batch,
+    * flush.high, flush.low, flush.interval,
+    * checkpoint.interval, checkpoint.volume, recovery.threads, undobuffer,
+    * deadlock (timeout, detect, wait-die or wound-wait), lockescalation,
+    * recordlocks and versionstore.
+    * Any other property is rejected. A value that is not a
+    * number or a boolean where one is expected, that does not
+    * fit in its variable, or that is out of range (such as a
+    * flush watermark outside [0,1]) is rejected too.
+    * Every property is checked before any variable is changed,
+    * so a rejected configuration changes nothing.
+    * The block size of an existing database cannot be changed:
+    * opening it with another size is rejected by the
+    * {@link FileMgr}, which records the size it was created with.
+    * @param props the configuration properties
+    */
+   public static void configure(Properties props) {
+      for (String name : props.stringPropertyNames())
+         if (!PROPERTIES.contains(name))
+            throw new IllegalArgumentException("unknown configuration property: " + name);
+      int blocksize = intProperty(props, "blocksize", BLOCK_SIZE);
+      int buffers = intProperty(props, "buffers", BUFFER_SIZE);
+      int logbuffers = intProperty(props, "logbuffers", LOG_BUFFER_SIZE);
+      int logsegment = intProperty(props, "logsegment", LOG_SEGMENT_SIZE);
+      String planner = props.getProperty("planner", PLANNER);
+      String policy = props.getProperty("policy", BUFFER_POLICY);
+      String logdurability = props.getProperty("logdurability", LOG_DURABILITY);
+      String datadurability = props.getProperty("datadurability", DATA_DURABILITY);
+      boolean mapped = booleanProperty(props, "mapped", MAPPED_DATA_FILES);
+      long gcdelay = longProperty(props, "groupcommit.delay", GROUP_COMMIT_DELAY);
+      int gcbatch = intProperty(props, "groupcommit.batch", GROUP_COMMIT_BATCH);
+      double high = doubleProperty(props, "flush.high", FLUSH_HIGH_WATERMARK);
+      double low = doubleProperty(props, "flush.low", FLUSH_LOW_WATERMARK);
+      long flushinterval = longProperty(props, "flush.interval", FLUSH_INTERVAL);
+      long ckptinterval = longProperty(props, "checkpoint.interval", CHECKPOINT_INTERVAL);
+      long ckptvolume = longProperty(props, "checkpoint.volume", CHECKPOINT_LOG_VOLUME);
+      int recoverythreads = intProperty(props, "recovery.threads", RECOVERY_THREADS);
+      int undobuffer = intProperty(props, "undobuffer", UNDO_BUFFER_SIZE);
+      String deadlock = props.getProperty("deadlock", DEADLOCK_POLICY);
+      int escalation = intProperty(props, "lockescalation", LOCK_ESCALATION);
+      boolean recordlocks = booleanProperty(props, "recordlocks", RECORD_LOCKS);
+      long versionstore = longProperty(props, "versionstore", VERSION_STORE_SIZE);
+
+      if (blocksize < 128)
+         throw new IllegalArgumentException("block size too small: " + blocksize);
+      if (buffers < 3)
+         throw new IllegalArgumentException("too few buffers: " + buffers);
+      if (logbuffers < 1)
+         throw new IllegalArgumentException("too few log buffers: " + logbuffers);
+      if (logsegment < 1)
+         throw new IllegalArgumentException("log segment too small: " + logsegment);
+      if (!(high >= 0 && high <= 1))
+         throw new IllegalArgumentException("high watermark not between 0 and 1: " + high);
+      if (!(low >= 0 && low <= 1))
+         throw new IllegalArgumentException("low watermark not between 0 and 1: " + low);
+      if (low > high)
+         throw new IllegalArgumentException("low watermark exceeds high watermark");
+      if (recoverythreads < 1)
+         throw new IllegalArgumentException("too few recovery threads: " + recoverythreads);
+      if (undobuffer < 0)
+         throw new IllegalArgumentException("negative undo buffer size: " + undobuffer);
+      if (escalation < 0)
+         throw new IllegalArgumentException("negative lock escalation threshold: " + escalation);
+      if (versionstore < 0)
+         throw new IllegalArgumentException("negative version store size: " + versionstore);
+      if (!planner.equals("basic") && !planner.equals("heuristic"))
+         throw new IllegalArgumentException("unknown planner: " + planner);
+      ReplacementPolicy.create(policy); // rejects unknown policies
+      Durability.parse(logdurability);
+      Durability.parse(datadurability);
+      DeadlockPolicy.parse(deadlock);
+
+      BLOCK_SIZE = blocksize;
+      BUFFER_SIZE = buffers;
+      LOG_BUFFER_SIZE = logbuffers;
+      LOG_SEGMENT_SIZE = logsegment;
+      PLANNER = planner;
+      BUFFER_POLICY = policy;
+      LOG_DURABILITY = logdurability;
+      DATA_DURABILITY = datadurability;
+      MAPPED_DATA_FILES = mapped;
+      GROUP_COMMIT_DELAY = gcdelay;
+      GROUP_COMMIT_BATCH = gcbatch;
+      FLUSH_HIGH_WATERMARK = high;
+      FLUSH_LOW_WATERMARK = low;
+      FLUSH_INTERVAL = flushinterval;
+      CHECKPOINT_INTERVAL = ckptinterval;
+      CHECKPOINT_LOG_VOLUME = ckptvolume;
+      RECOVERY_THREADS = recoverythreads;
+      UNDO_BUFFER_SIZE = undobuffer;
+      DEADLOCK_POLICY = deadlock;
+      LOCK_ESCALATION = escalation;
+      RECORD_LOCKS = recordlocks;
+      VERSION_STORE_SIZE = versionstore;
+   }
+
+   private static int intProperty(Properties props, String name, int defaultval) {
+      long val = longProperty(props, name, defaultval);
+      if (val < Integer.MIN_VALUE || val > Integer.MAX_VALUE)
+         throw new IllegalArgumentException("value out of range for " + name + ": " + val);
+      return (int) val;
+   }
+
+   private static long longProperty(Properties props, String name, long defaultval) {
+      String val = props.getProperty(name);
+      if (val == null)
+         return defaultval;
+      try {
+         return Long.parseLong(val.trim());
+      }
+      catch (NumberFormatException e) {
+         throw new IllegalArgumentException("bad value for " + name + ": " + val);
+      }
+   }
+
+   private static double doubleProperty(Properties props, String name, double defaultval) {
+      String val = props.getProperty(name);
+      if (val == null)
+         return defaultval;
+      try {
+         return Double.parseDouble(val.trim());
+      }
+      catch (NumberFormatException e) {
+         throw new IllegalArgumentException("bad value for " + name + ": " + val);
+      }
+   }
+
+   private static boolean booleanProperty(Properties props, String name, boolean defaultval) {
+      String val = props.getProperty(name);
+      if (val == null)
+         return defaultval;
+      if (!val.trim().equalsIgnoreCase("true") && !val.trim().equalsIgnoreCase("false"))
+         throw new IllegalArgumentException("bad value for " + name + ": " + val);
+      return Boolean.parseBoolean(val.trim());
+   }
+
    /**
     * A constructor useful for debugging.
     * @param dirname the name of the database directory
@@ -33,15 +212,37 @@ public class SimpleDB {
     * @param buffsize the number of buffers
     */
    public SimpleDB(String dirname, int blocksize, int buffsize) {
+      this(dirname, blocksize, buffsize, BUFFER_POLICY);
+   }
+
+   /**
+    * A constructor useful for comparing buffer replacement policies.
+    * @param dirname the name of the database directory
+    * @param blocksize the block size
+    * @param buffsize the number of buffers
+    * @param policy the name of the buffer replacement policy
+    */
+   public SimpleDB(String dirname, int blocksize, int buffsize, String policy) {
       File dbDirectory = new File(dirname);
-      fm = new FileMgr(dbDirectory, blocksize);
-      lm = new LogMgr(fm, LOG_FILE);
-      bm = new BufferMgr(fm, lm, buffsize); 
+      fm = MAPPED_DATA_FILES ? new MappedFileMgr(dbDirectory, blocksize)
+                             : new FileMgr(dbDirectory, blocksize);
+      fm.setDataDurability(Durability.parse(DATA_DURABILITY));
+      fm.setDurability(LOG_FILE, Durability.parse(LOG_DURABILITY));
+      lm = new LogMgr(fm, LOG_FILE, LOG_BUFFER_SIZE, LOG_SEGMENT_SIZE);
+      lm.setGroupCommit(GROUP_COMMIT_DELAY, GROUP_COMMIT_BATCH);
+      bm = new BufferMgr(fm, lm, buffsize, policy); 
+      RecoveryMgr.REDO_THREADS = RECOVERY_THREADS;
+      RecoveryMgr.UNDO_BUFFER_SIZE = UNDO_BUFFER_SIZE;
+      ConcurrencyMgr.setDeadlockPolicy(DeadlockPolicy.parse(DEADLOCK_POLICY));
+      ConcurrencyMgr.ESCALATION_THRESHOLD = LOCK_ESCALATION;
+      ConcurrencyMgr.RECORD_LOCKS = RECORD_LOCKS;
+      Transaction.VERSION_STORE_SIZE = VERSION_STORE_SIZE;
    }
    
    /**
     * A simpler constructor for most situations. Unlike the
-    * 3-arg constructor, it also initializes the metadata tables.
+    * 3-arg constructor, it also initializes the metadata tables
+    * and starts the background buffer flusher and checkpoint scheduler.
     * @param dirname the name of the database directory
     */
    public SimpleDB(String dirname) {
@@ -55,12 +256,21 @@ public class SimpleDB {
          tx.recover();
       }
       mdm = new MetadataMgr(isnew, tx);
-      QueryPlanner qp = new BasicQueryPlanner(mdm);
-      UpdatePlanner up = new BasicUpdatePlanner(mdm);
-//    QueryPlanner qp = new HeuristicQueryPlanner(mdm);
-//    UpdatePlanner up = new IndexUpdatePlanner(mdm);
+      QueryPlanner qp;
+      UpdatePlanner up;
+      if (PLANNER.equals("heuristic")) {
+         qp = new HeuristicQueryPlanner(mdm);
+         up = new IndexUpdatePlanner(mdm);
+      }
+      else {
+         qp = new BasicQueryPlanner(mdm);
+         up = new BasicUpdatePlanner(mdm);
+      }
       planner = new Planner(qp, up);
       tx.commit();
+      bm.startFlusher(FLUSH_HIGH_WATERMARK, FLUSH_LOW_WATERMARK, FLUSH_INTERVAL);
+      if (CHECKPOINT_INTERVAL > 0 || CHECKPOINT_LOG_VOLUME > 0)
+         new CheckpointScheduler(lm, bm, CHECKPOINT_INTERVAL, CHECKPOINT_LOG_VOLUME).start();
    }
    
    /**
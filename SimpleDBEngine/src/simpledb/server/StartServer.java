@@ -1,13 +1,42 @@
 package simpledb.server;
 
+import java.io.FileReader;
+import java.io.Reader;
 import java.rmi.registry.*;
+import java.util.Properties;
 
 import simpledb.jdbc.network.*;
 
+/**
+ * Starts the database server.
+ * Usage: StartServer [dirname] [-config file] [-name value ...]
+ * <P>
+ * The properties in the config file are read first,
+ * and each -name value pair then overrides one property;
+ * for example, -blocksize 4096 -buffers 20000 -planner heuristic.
+ * See {@link SimpleDB#configure(Properties)} for the property names.
+ */
 public class StartServer {
    public static void main(String args[]) throws Exception {
       // configure and initialize the database
-      String dirname = (args.length == 0) ? "studentdb" : args[0];
+      String dirname = "studentdb";
+      Properties props = new Properties();
+      Properties flags = new Properties();
+      for (int i=0; i<args.length; i++) {
+         if (!args[i].startsWith("-"))
+            dirname = args[i];
+         else if (i+1 == args.length)
+            throw new IllegalArgumentException("missing value for " + args[i]);
+         else if (args[i].equals("-config")) {
+            try (Reader r = new FileReader(args[++i])) {
+               props.load(r);
+            }
+         }
+         else
+            flags.setProperty(args[i].substring(1), args[++i]);
+      }
+      props.putAll(flags);
+      SimpleDB.configure(props);
       SimpleDB db = new SimpleDB(dirname);
       
       // create a registry specific for the server on the default port
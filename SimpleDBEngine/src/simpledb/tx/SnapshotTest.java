@@ -0,0 +1,94 @@
+package simpledb.tx;
+
+import simpledb.buffer.BufferMgr;
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+import simpledb.server.SimpleDB;
+
+/**
+ * Checks that a read-only transaction reads a snapshot:
+ * it is not blocked by a writer holding XLocks, and it does
+ * not see the changes of the writers that commit or roll back
+ * after it began. Also checks that writes to temporary tables,
+ * which snapshots never read, are not kept for them.
+ */
+public class SnapshotTest {
+   private static FileMgr fm;
+   private static LogMgr lm;
+   private static BufferMgr bm;
+   private static BlockId blk1 = new BlockId("testfile", 1);
+   private static BlockId blk2 = new BlockId("testfile", 2);
+
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("snapshottest", 400, 8);
+      fm = db.fileMgr();
+      lm = db.logMgr();
+      bm = db.bufferMgr();
+
+      Transaction tx0 = new Transaction(fm, lm, bm);
+      write(tx0, 1);
+      tx0.commit();
+
+      Transaction w1 = new Transaction(fm, lm, bm);
+      write(w1, 2);
+      Transaction r1 = new Transaction(fm, lm, bm);
+      r1.setReadOnly();
+      check("r1 while w1 holds its XLocks", r1, 1);
+      w1.commit();
+      check("r1 after w1 commits", r1, 1);
+
+      Transaction r2 = new Transaction(fm, lm, bm);
+      r2.setReadOnly();
+      check("r2 begun after w1 commits", r2, 2);
+      Transaction w2 = new Transaction(fm, lm, bm);
+      write(w2, 3);
+      check("r2 while w2 holds its XLocks", r2, 2);
+      w2.rollback();
+      check("r1 after w2 rolls back", r1, 1);
+      check("r2 after w2 rolls back", r2, 2);
+
+      try {
+         r1.pin(blk1);
+         r1.setInt(blk1, 0, 4, true);
+         System.out.println("r1 wrote testfile: FAILED");
+      }
+      catch (IllegalStateException e) {
+         System.out.println("r1 cannot write testfile: ok");
+      }
+      r1.commit();
+      r2.commit();
+
+      Transaction r3 = new Transaction(fm, lm, bm);
+      r3.setReadOnly();
+      Transaction w3 = new Transaction(fm, lm, bm);
+      BlockId tmp = new BlockId("temptest", 0);
+      w3.pin(tmp);
+      w3.setInt(tmp, 0, 5, false);
+      w3.setString(tmp, 4, "temp", false);
+      w3.unpin(tmp);
+      boolean empty = Transaction.versionStoreIsEmpty();
+      System.out.println("w3's temp writes are not kept: " + (empty ? "ok" : "FAILED"));
+      w3.commit();
+      r3.commit();
+   }
+
+   private static void write(Transaction tx, int val) {
+      tx.pin(blk1);
+      tx.pin(blk2);
+      tx.setInt(blk1, 0, val, true);
+      tx.setInt(blk2, 0, val, true);
+      tx.unpin(blk1);
+      tx.unpin(blk2);
+   }
+
+   private static void check(String msg, Transaction tx, int expected) {
+      tx.pin(blk1);
+      tx.pin(blk2);
+      int val1 = tx.getInt(blk1, 0);
+      int val2 = tx.getInt(blk2, 0);
+      tx.unpin(blk1);
+      tx.unpin(blk2);
+      boolean ok = (val1 == expected && val2 == expected);
+      System.out.println(msg + ": read " + val1 + ", " + val2 + (ok ? ": ok" : ": FAILED"));
+   }
+}
@@ -0,0 +1,15 @@
+package simpledb.tx;
+
+import simpledb.file.BlockId;
+
+/**
+ * A runtime exception indicating that a read-only transaction
+ * needs to abort because the version of a block in its snapshot
+ * was not kept.
+ */
+@SuppressWarnings("serial")
+public class SnapshotTooOldException extends RuntimeException {
+   public SnapshotTooOldException(BlockId blk) {
+      super("snapshot too old for " + blk);
+   }
+}
@@ -6,7 +6,10 @@ import simpledb.buffer.*;
 import simpledb.tx.recovery.*;
 import simpledb.tx.concurrency.ConcurrencyMgr;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Vector;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -15,6 +18,16 @@ import java.util.concurrent.locks.ReentrantLock;
  * Provide transaction management for clients,
  * ensuring that all transactions are serializable, recoverable,
  * and in general satisfy the ACID properties.
+ * A read-only transaction instead reads a snapshot of the
+ * database, as the transactions that committed before it
+ * began left it, and takes no locks to do so; it may write
+ * only temporary tables.
+ * <p>
+ * The changes to temporary tables are not logged: the tables
+ * belong to the transaction that creates them and are deleted
+ * when the server restarts, so neither rollback nor recovery
+ * needs their old contents. Their files therefore never
+ * enter the log's file dictionary.
  * @author Edward Sciore
  */
 public class Transaction {
@@ -22,6 +35,12 @@ public class Transaction {
    public static Vector<Integer> activeTrans; // ArrayList, but thread safe
    public static Vector<Integer> completedTrans;
    private static final int END_OF_FILE = -1;
+   /**
+    * The bytes of the block versions kept for the snapshots
+    * of read-only transactions.
+    */
+   public static long VERSION_STORE_SIZE = 16 * 1024 * 1024;
+   private static VersionStore versions = new VersionStore();
    private RecoveryMgr    recoveryMgr;
    private ConcurrencyMgr concurMgr;
    private BufferMgr bm;
@@ -29,6 +48,12 @@ public class Transaction {
    private int txnum;
    private BufferList mybuffers;
    private boolean isCommitted = false;
+   private boolean rollingBack = false;
+   private BlockId insertBlk = null; // the block of the slot being inserted, if any
+   private int insertOffset, insertSize, insertFlag;
+   private VersionStore.Writer writer = new VersionStore.Writer();
+   private long snapshot = -1; // -1 unless the transaction is read-only
+   private Map<BlockId,Page> snapshotPages = new HashMap<>(); // of the pinned blocks
    
    /**
     * Create a new transaction and its associated 
@@ -51,21 +76,25 @@ public class Transaction {
       this.bm = bm;
       txnum       = nextTxNumber();
       recoveryMgr = new RecoveryMgr(this, txnum, lm, bm);
-      concurMgr   = new ConcurrencyMgr();
+      concurMgr   = new ConcurrencyMgr(txnum);
       mybuffers = new BufferList(bm);
       activeTrans.add(txnum);
    }
    
    /**
     * Commit the current transaction.
-    * Flush all modified buffers (and their log records),
-    * write and flush a commit record to the log,
+    * Write and flush a commit record to the log,
     * release all locks, and unpin any pinned buffers.
+    * Modified buffers are not forced to disk;
+    * they are written when they are replaced or checkpointed,
+    * and the log is enough to redo them after a crash.
     */
    public void commit() {
       if (isCommitted) return;
+      endInsert();
       recoveryMgr.commit();
       System.out.println("transaction " + txnum + " committed");
+      endVersions();
       concurMgr.release();
       mybuffers.unpinAll();
       completedTrans.add(txnum);
@@ -75,14 +104,18 @@ public class Transaction {
    
    /**
     * Rollback the current transaction.
-    * Undo any modified values,
-    * flush those buffers,
+    * Undo any modified values, logging each undo;
+    * the undo takes no locks, as the transaction
+    * still holds the locks on the values it modified.
     * write and flush a rollback record to the log,
     * release all locks, and unpin any pinned buffers.
     */
    public void rollback() {
+      endInsert();
+      rollingBack = true;
       recoveryMgr.rollback();
       System.out.println("transaction " + txnum + " rolled back");
+      endVersions();
       concurMgr.release();
       mybuffers.unpinAll();
       completedTrans.add(txnum);
@@ -92,8 +125,8 @@ public class Transaction {
    /**
     * Flush all modified buffers.
     * Then go through the log, rolling back all
-    * uncommitted transactions.  Finally, 
-    * write a quiescent checkpoint record to the log.
+    * uncommitted transactions.  Finally,
+    * take a fuzzy checkpoint.
     * This method is called during system startup,
     * before user transactions begin.
     */
@@ -101,6 +134,31 @@ public class Transaction {
       recoveryMgr.recover();
    }
 
+   /**
+    * Makes the transaction read-only. From now on it reads
+    * the database as the transactions that have committed so
+    * far left it, without locking the blocks it reads, and
+    * without waiting for the transactions that modify them.
+    * The transaction may write only temporary tables;
+    * any other write throws an IllegalStateException.
+    * The method should be called before the transaction
+    * reads anything, and cannot be called once it has written.
+    */
+   public void setReadOnly() {
+      if (writer.hasWritten())
+         throw new IllegalStateException("transaction " + txnum + " has written");
+      if (snapshot < 0)
+         snapshot = versions.beginSnapshot();
+   }
+
+   /**
+    * Determines whether the transaction is read-only.
+    * @return true if the transaction reads a snapshot
+    */
+   public boolean isReadOnly() {
+      return snapshot >= 0;
+   }
+
    public void checkpoint(){
       Vector<Integer> v = recoveryMgr.start();
       if (!isCommitted)
@@ -133,37 +191,117 @@ public class Transaction {
     * @param blk a reference to the disk block
     */
    public void unpin(BlockId blk) {
+      if (insertBlk != null && insertBlk.equals(blk))
+         endInsert();
       mybuffers.unpin(blk);
+      if (mybuffers.getBuffer(blk) == null)
+         snapshotPages.remove(blk);
    }
    
    /**
     * Return the integer value stored at the
     * specified offset of the specified block.
     * The method first obtains an SLock on the block,
-    * then it calls the buffer to retrieve the value.
+    * then it calls the buffer to retrieve the value;
+    * a read-only transaction reads the block from its snapshot.
     * @param blk a reference to a disk block
     * @param offset the byte offset within the block
     * @return the integer stored at that offset
     */
    public int getInt(BlockId blk, int offset) {
-      concurMgr.sLock(blk);
-      Buffer buff = mybuffers.getBuffer(blk);
-      return buff.contents().getInt(offset);
+      if (!readsSnapshot(blk))
+         concurMgr.sLock(blk);
+      return readInt(blk, offset);
+   }
+
+   /**
+    * Return the integer value stored at the specified offset
+    * of the specified block, which belongs to the record
+    * in the specified slot. The method obtains an SLock
+    * on the record instead of the block.
+    * @param blk a reference to a disk block
+    * @param slot the slot of the record
+    * @param offset the byte offset within the block
+    * @return the integer stored at that offset
+    */
+   public int getInt(BlockId blk, int slot, int offset) {
+      if (!readsSnapshot(blk))
+         concurMgr.sLock(blk, slot);
+      return readInt(blk, offset);
    }
    
    /**
     * Return the string value stored at the
     * specified offset of the specified block.
     * The method first obtains an SLock on the block,
-    * then it calls the buffer to retrieve the value.
+    * then it calls the buffer to retrieve the value;
+    * a read-only transaction reads the block from its snapshot.
     * @param blk a reference to a disk block
     * @param offset the byte offset within the block
     * @return the string stored at that offset
     */
    public String getString(BlockId blk, int offset) {
-      concurMgr.sLock(blk);
-      Buffer buff = mybuffers.getBuffer(blk);
-      return buff.contents().getString(offset);
+      if (!readsSnapshot(blk))
+         concurMgr.sLock(blk);
+      return readString(blk, offset);
+   }
+
+   /**
+    * Return the string value stored at the specified offset
+    * of the specified block, which belongs to the record
+    * in the specified slot. The method obtains an SLock
+    * on the record instead of the block.
+    * @param blk a reference to a disk block
+    * @param slot the slot of the record
+    * @param offset the byte offset within the block
+    * @return the string stored at that offset
+    */
+   public String getString(BlockId blk, int slot, int offset) {
+      if (!readsSnapshot(blk))
+         concurMgr.sLock(blk, slot);
+      return readString(blk, offset);
+   }
+
+   /**
+    * Return the bytes stored in the specified range
+    * of the specified block, as getInt does a value.
+    * @param blk a reference to a disk block
+    * @param offset the byte offset within the block
+    * @param length the number of bytes
+    * @return the bytes stored in that range
+    */
+   public byte[] getBytes(BlockId blk, int offset, int length) {
+      if (!readsSnapshot(blk))
+         concurMgr.sLock(blk);
+      return readBytes(blk, offset, length);
+   }
+
+   /**
+    * Return the integer value currently stored at the
+    * specified offset of the specified block, without
+    * locking anything. The value can change at any time;
+    * the method is meant for finding a slot worth locking.
+    * @param blk a reference to a disk block
+    * @param offset the byte offset within the block
+    * @return the integer stored at that offset
+    */
+   public int peekInt(BlockId blk, int offset) {
+      return readInt(blk, offset);
+   }
+
+   /**
+    * Return a copy of the bytes currently stored at the
+    * specified offset of the specified block, without
+    * locking anything. Only the bytes of the records that the
+    * transaction has locked are sure to stay as they are;
+    * the method is meant for reading many such records at once.
+    * @param blk a reference to a disk block
+    * @param offset the byte offset within the block
+    * @param length the number of bytes
+    * @return the bytes stored at that offset
+    */
+   public byte[] peekBytes(BlockId blk, int offset, int length) {
+      return readBytes(blk, offset, length);
    }
    
    /**
@@ -180,14 +318,26 @@ public class Transaction {
     * @param val the value to be stored
     */
    public void setInt(BlockId blk, int offset, int val, boolean okToLog) {
-      concurMgr.xLock(blk);
-      Buffer buff = mybuffers.getBuffer(blk);
-      int lsn = -1;
-      if (okToLog)
-         lsn = recoveryMgr.setInt(buff, offset, val);
-      Page p = buff.contents();
-      p.setInt(offset, val);
-      buff.setModified(txnum, lsn);
+      checkWritable(blk.fileName());
+      if (!rollingBack)
+         concurMgr.xLock(blk);
+      writeInt(blk, offset, val, okToLog);
+   }
+
+   /**
+    * Store an integer at the specified offset of the
+    * specified block, which belongs to the record in the
+    * specified slot. The method obtains an XLock on the
+    * record instead of the block.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    * @param offset a byte offset within that block
+    * @param val the value to be stored
+    */
+   public void setInt(BlockId blk, int slot, int offset, int val, boolean okToLog) {
+      checkWritable(blk.fileName());
+      concurMgr.xLock(blk, slot);
+      writeInt(blk, offset, val, okToLog);
    }
    
    /**
@@ -204,30 +354,102 @@ public class Transaction {
     * @param val the value to be stored
     */
    public void setString(BlockId blk, int offset, String val, boolean okToLog) {
-      concurMgr.xLock(blk);
+      checkWritable(blk.fileName());
+      if (!rollingBack)
+         concurMgr.xLock(blk);
+      writeString(blk, offset, val, okToLog);
+   }
+
+   /**
+    * Store a string at the specified offset of the
+    * specified block, which belongs to the record in the
+    * specified slot. The method obtains an XLock on the
+    * record instead of the block.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    * @param offset a byte offset within that block
+    * @param val the value to be stored
+    */
+   public void setString(BlockId blk, int slot, int offset, String val, boolean okToLog) {
+      checkWritable(blk.fileName());
+      concurMgr.xLock(blk, slot);
+      writeString(blk, offset, val, okToLog);
+   }
+
+   /**
+    * Store the bytes at the specified offset of the
+    * specified block, whatever the bytes they overwrite.
+    * The method first obtains an XLock on the block.
+    * The change is logged with the bytes it overwrites,
+    * in as many log records as their size requires.
+    * @param blk a reference to the disk block
+    * @param offset a byte offset within that block
+    * @param val the bytes to be stored
+    */
+   public void setBytes(BlockId blk, int offset, byte[] val, boolean okToLog) {
+      checkWritable(blk.fileName());
+      if (!rollingBack)
+         concurMgr.xLock(blk);
       Buffer buff = mybuffers.getBuffer(blk);
-      int lsn = -1;
-      if (okToLog)
-         lsn = recoveryMgr.setString(buff, offset, val);
-      Page p = buff.contents();
-      p.setString(offset, val);
-      buff.setModified(txnum, lsn);
+      int chunk = recoveryMgr.maxSetBytes();
+      for (int pos=0; pos<val.length; pos+=chunk) {
+         byte[] part = Arrays.copyOfRange(val, pos, Math.min(val.length, pos + chunk));
+         synchronized (buff) {
+            Page p = buff.contents();
+            if (!isTemp(blk.fileName()))
+               versions.beforeWrite(writer, blk, offset + pos, p.getRawBytes(offset + pos, part.length));
+            int lsn = -1;
+            if (okToLog && !isTemp(blk.fileName()))
+               lsn = recoveryMgr.setBytes(buff, offset + pos, part);
+            p.setRawBytes(offset + pos, part);
+            buff.setModified(txnum, lsn);
+         }
+      }
+   }
+
+   /**
+    * Obtains an XLock on the record in the specified slot
+    * of the block, if that can be done without waiting
+    * for another transaction's lock on the record.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    * @return true if the transaction holds an XLock on the record
+    */
+   public boolean tryXLock(BlockId blk, int slot) {
+      checkWritable(blk.fileName());
+      return concurMgr.tryXLock(blk, slot);
    }
 
    /**
     * Return the number of blocks in the specified file.
     * This method first obtains an SLock on the 
     * "end of the file", before asking the file manager
-    * to return the file size.
+    * to return the file size. A read-only transaction takes
+    * no lock; the blocks appended after its snapshot began
+    * are empty in the snapshot.
     * @param filename the name of the file
     * @return the number of blocks in the file
     */
    public int size(String filename) {
-      BlockId dummyblk = new BlockId(filename, END_OF_FILE);
-      concurMgr.sLock(dummyblk);
+      if (snapshot < 0) {
+         BlockId dummyblk = new BlockId(filename, END_OF_FILE);
+         concurMgr.sLock(dummyblk);
+      }
       return fm.length(filename);
    }
-   
+
+   /**
+    * Return the number of blocks in the specified file,
+    * without locking the end of the file. As with peekInt,
+    * the size can change at any time; the method is meant
+    * for files that only hold hints.
+    * @param filename the name of the file
+    * @return the number of blocks in the file
+    */
+   public int peekSize(String filename) {
+      return fm.length(filename);
+   }
+
    /**
     * Append a new block to the end of the specified file
     * and returns a reference to it.
@@ -237,19 +459,202 @@ public class Transaction {
     * @return a reference to the newly-created disk block
     */
    public BlockId append(String filename) {
+      checkWritable(filename);
       BlockId dummyblk = new BlockId(filename, END_OF_FILE);
       concurMgr.xLock(dummyblk);
       return fm.append(filename);
    }
    
+   /**
+    * Begins the insertion of a record into the slot
+    * at the specified offset of the block,
+    * after obtaining an XLock on the record.
+    * Until the insertion ends, the changes to the slot are
+    * not logged one by one; when it ends, the new contents of
+    * the whole slot are logged as a single record.
+    * The insertion ends when the transaction begins another
+    * one, unpins the block, commits or rolls back.
+    * The block stays pinned until then, so the unlogged
+    * changes cannot reach the disk before they are logged.
+    * A slot too big for a log record is logged as usual,
+    * and a slot of a temporary table is not logged at all.
+    * @param blk a reference to the disk block
+    * @param slot the slot
+    * @param offset the offset of the slot
+    * @param slotsize the size of the slot
+    */
+   public void beginInsert(BlockId blk, int slot, int offset, int slotsize) {
+      endInsert();
+      if (isTemp(blk.fileName()) || !recoveryMgr.fitsSlotRecord(slotsize))
+         return;
+      checkWritable(blk.fileName());
+      concurMgr.xLock(blk, slot);
+      insertBlk = blk;
+      insertOffset = offset;
+      insertSize = slotsize;
+      insertFlag = readInt(blk, offset);
+   }
+
+   /**
+    * Returns the number of bytes of a block that are
+    * available to the records stored in it: the block size
+    * less the page LSN kept at the end of every data page.
+    * @return the usable size of a block
+    */
    public int blockSize() {
-      return fm.blockSize();
+      return fm.blockSize() - Buffer.PAGE_LSN_SIZE;
    }
    
    public int availableBuffs() {
       return bm.available();
    }
    
+   /**
+    * Logs the slot being inserted, if any,
+    * as a single slot record.
+    */
+   private void endInsert() {
+      if (insertBlk == null)
+         return;
+      Buffer buff = mybuffers.getBuffer(insertBlk);
+      synchronized (buff) {
+         int lsn = recoveryMgr.setSlot(buff, insertOffset, insertFlag, insertSize);
+         buff.setModified(txnum, lsn);
+      }
+      insertBlk = null;
+   }
+
+   /**
+    * Determines whether the transaction reads the block from
+    * its snapshot: whether it is read-only and has not
+    * modified the block itself.
+    */
+   private boolean readsSnapshot(BlockId blk) {
+      return snapshot >= 0 && !writer.hasWritten(blk);
+   }
+
+   /**
+    * Returns the value at the offset of the block, from the
+    * transaction's snapshot or from the buffer. The buffer is
+    * the latch of its page: since transactions modify different
+    * records of a page at the same time, each access to the
+    * page is made while synchronized on the buffer.
+    */
+   private int readInt(BlockId blk, int offset) {
+      if (readsSnapshot(blk))
+         return snapshotPage(blk).getInt(offset);
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) {
+         return buff.contents().getInt(offset);
+      }
+   }
+
+   private String readString(BlockId blk, int offset) {
+      if (readsSnapshot(blk))
+         return snapshotPage(blk).getString(offset);
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) {
+         return buff.contents().getString(offset);
+      }
+   }
+
+   private byte[] readBytes(BlockId blk, int offset, int length) {
+      if (readsSnapshot(blk))
+         return snapshotPage(blk).getRawBytes(offset, length);
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) {
+         return buff.contents().getRawBytes(offset, length);
+      }
+   }
+
+   /**
+    * Returns a copy of the block as of the transaction's snapshot,
+    * which is kept while the block stays pinned.
+    */
+   private Page snapshotPage(BlockId blk) {
+      Page p = snapshotPages.get(blk);
+      if (p == null) {
+         Buffer buff = mybuffers.getBuffer(blk);
+         synchronized (buff) {
+            p = new Page(buff.contents().getRawBytes(0, fm.blockSize()));
+         }
+         versions.undoChanges(blk, p, snapshot);
+         snapshotPages.put(blk, p);
+      }
+      return p;
+   }
+
+   /**
+    * Stores the value at the offset of the block: the bytes it
+    * overwrites are saved for the snapshots (unless the block
+    * belongs to a temporary table, which snapshots never read),
+    * the change is logged
+    * (unless it is part of an insertion), and the page is modified,
+    * all while synchronized on the buffer.
+    */
+   private void writeInt(BlockId blk, int offset, int val, boolean okToLog) {
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) {
+         Page p = buff.contents();
+         if (!isTemp(blk.fileName()))
+            versions.beforeWrite(writer, blk, offset, p.getRawBytes(offset, Integer.BYTES));
+         int lsn = -1;
+         if (okToLog && !isTemp(blk.fileName()) && !isInserting(blk, offset))
+            lsn = recoveryMgr.setInt(buff, offset, val);
+         p.setInt(offset, val);
+         buff.setModified(txnum, lsn);
+      }
+   }
+
+   private void writeString(BlockId blk, int offset, String val, boolean okToLog) {
+      Buffer buff = mybuffers.getBuffer(blk);
+      int length = Integer.BYTES + val.getBytes(Page.CHARSET).length;
+      synchronized (buff) {
+         Page p = buff.contents();
+         if (!isTemp(blk.fileName()))
+            versions.beforeWrite(writer, blk, offset, p.getRawBytes(offset, length));
+         int lsn = -1;
+         if (okToLog && !isTemp(blk.fileName()) && !isInserting(blk, offset))
+            lsn = recoveryMgr.setString(buff, offset, val);
+         p.setString(offset, val);
+         buff.setModified(txnum, lsn);
+      }
+   }
+
+   /**
+    * Finishes the transaction's writes and ends its snapshot,
+    * if any, before its locks are released.
+    */
+   private void endVersions() {
+      versions.finish(writer);
+      if (snapshot >= 0)
+         versions.endSnapshot(snapshot);
+      snapshotPages.clear();
+   }
+
+   /**
+    * Determines whether the version store holds no changes.
+    * Used for testing.
+    * @return true if no before-image is kept for the snapshots
+    */
+   static boolean versionStoreIsEmpty() {
+      return versions.isEmpty();
+   }
+
+   private void checkWritable(String filename) {
+      if (snapshot >= 0 && !isTemp(filename))
+         throw new IllegalStateException("transaction " + txnum + " is read-only");
+   }
+
+   private static boolean isTemp(String filename) {
+      return filename.startsWith("temp");
+   }
+
+   private boolean isInserting(BlockId blk, int offset) {
+      return insertBlk != null && insertBlk.equals(blk)
+            && offset >= insertOffset && offset < insertOffset + insertSize;
+   }
+
    private static synchronized int nextTxNumber() {
       nextTxNum++;
       return nextTxNum;
@@ -0,0 +1,213 @@
+package simpledb.tx;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import simpledb.file.*;
+
+/**
+ * The earlier contents of the blocks that transactions modify,
+ * from which read-only transactions read a snapshot of the database.
+ * Before a transaction modifies bytes of a block, it saves
+ * the bytes it is about to overwrite as a change of the block.
+ * Since the same bytes are locked by one writer at a time,
+ * the changes of any byte follow one another in the order
+ * of their writers.
+ * <p>
+ * A writer gets a sequence number when it finishes, and a
+ * snapshot is the sequence number of the last writer to finish
+ * before it began. A snapshot therefore sees every writer whose
+ * number is no greater than its own. It reads a block by
+ * copying its current contents and undoing, latest first,
+ * the changes of the writers that it does not see.
+ * <p>
+ * The changes of a writer are dropped once every snapshot,
+ * present and future, sees the writer. The bytes of the changes
+ * kept are limited to Transaction.VERSION_STORE_SIZE; a change
+ * beyond that limit is only noted, and a snapshot that needs to
+ * undo it gets a SnapshotTooOldException.
+ * The changes of each block are kept in a list that is only
+ * accessed inside the map's atomic methods for the block.
+ */
+class VersionStore {
+   private static final int CHANGE_OVERHEAD = 32; // bytes
+
+   /**
+    * A transaction that modifies blocks,
+    * and the blocks that it has modified.
+    */
+   static class Writer {
+      private volatile long seq = 0; // 0 until the writer finishes
+      private Set<BlockId> blocks = new HashSet<>();
+
+      /**
+       * Determines whether the writer has modified the block.
+       * Only the writer's own thread may call this method.
+       * @param blk a reference to the disk block
+       * @return true if the writer modified the block
+       */
+      boolean hasWritten(BlockId blk) {
+         return blocks.contains(blk);
+      }
+
+      /**
+       * Determines whether the writer has modified any block.
+       * @return true if the writer modified a block
+       */
+      boolean hasWritten() {
+         return !blocks.isEmpty();
+      }
+   }
+
+   private static class Change {
+      Writer writer;
+      int offset;
+      byte[] before; // null if not kept
+
+      Change(Writer writer, int offset, byte[] before) {
+         this.writer = writer;
+         this.offset = offset;
+         this.before = before;
+      }
+   }
+
+   private Map<BlockId,List<Change>> changes = new ConcurrentHashMap<>();
+   private AtomicLong size = new AtomicLong(0);
+   private Deque<Writer> finished = new ArrayDeque<>(); // in sequence order
+   private TreeMap<Long,Integer> snapshots = new TreeMap<>(); // the count of each
+   private long lastSeq = 0;
+
+   /**
+    * Saves the bytes that the writer is about to overwrite.
+    * The writer must hold the lock on those bytes, and must
+    * call this method while holding the latch of the block's page.
+    * @param w the writer
+    * @param blk a reference to the disk block
+    * @param offset the offset of the bytes
+    * @param before the current contents of the bytes
+    */
+   void beforeWrite(Writer w, BlockId blk, int offset, byte[] before) {
+      w.blocks.add(blk);
+      long needed = before.length + CHANGE_OVERHEAD;
+      if (size.addAndGet(needed) > Transaction.VERSION_STORE_SIZE) {
+         size.addAndGet(-needed);
+         before = null;
+      }
+      Change c = new Change(w, offset, before);
+      changes.compute(blk, (k, list) -> {
+         if (list == null)
+            list = new ArrayList<>();
+         Change last = list.isEmpty() ? null : list.get(list.size()-1);
+         if (c.before != null || last == null || last.writer != w || last.before != null)
+            list.add(c);
+         return list;
+      });
+   }
+
+   /**
+    * Marks the writer as finished, so that the snapshots begun
+    * from now on see its changes, and drops the changes
+    * that no snapshot needs any longer.
+    * A writer must finish before it releases its locks.
+    * @param w the writer
+    */
+   void finish(Writer w) {
+      List<Writer> droppable;
+      synchronized (this) {
+         w.seq = ++lastSeq;
+         if (w.hasWritten())
+            finished.add(w);
+         droppable = droppable();
+      }
+      drop(droppable);
+   }
+
+   /**
+    * Begins a snapshot of the changes of the writers
+    * that have finished so far.
+    * @return the snapshot
+    */
+   synchronized long beginSnapshot() {
+      snapshots.merge(lastSeq, 1, Integer::sum);
+      return lastSeq;
+   }
+
+   /**
+    * Ends the snapshot, and drops the changes
+    * that no snapshot needs any longer.
+    * @param snapshot the snapshot
+    */
+   void endSnapshot(long snapshot) {
+      List<Writer> droppable;
+      synchronized (this) {
+         snapshots.computeIfPresent(snapshot, (k, n) -> (n == 1) ? null : n-1);
+         droppable = droppable();
+      }
+      drop(droppable);
+   }
+
+   /**
+    * Turns a copy of the current contents of a block into
+    * the contents of the block in the snapshot, by undoing
+    * the changes that the snapshot does not see.
+    * The copy must have been made while holding the latch
+    * of the block's page.
+    * @param blk a reference to the disk block
+    * @param p the copy of the current contents of the block
+    * @param snapshot the snapshot
+    */
+   void undoChanges(BlockId blk, Page p, long snapshot) {
+      changes.computeIfPresent(blk, (k, list) -> {
+         for (int i=list.size()-1; i>=0; i--) {
+            Change c = list.get(i);
+            long seq = c.writer.seq;
+            if (seq == 0 || seq > snapshot) {
+               if (c.before == null)
+                  throw new SnapshotTooOldException(blk);
+               p.setRawBytes(c.offset, c.before);
+            }
+         }
+         return list;
+      });
+   }
+
+   /**
+    * Determines whether the store holds no changes.
+    * @return true if no writer's changes are kept
+    */
+   boolean isEmpty() {
+      return changes.isEmpty();
+   }
+
+   /**
+    * Removes from the finished writers those that the oldest
+    * snapshot sees, and so every later snapshot sees too.
+    * Must be called while synchronized on the store.
+    */
+   private List<Writer> droppable() {
+      long oldest = snapshots.isEmpty() ? lastSeq : snapshots.firstKey();
+      List<Writer> result = new ArrayList<>();
+      while (!finished.isEmpty() && finished.peekFirst().seq <= oldest)
+         result.add(finished.removeFirst());
+      return result;
+   }
+
+   private void drop(List<Writer> writers) {
+      for (Writer w : writers) {
+         for (BlockId blk : w.blocks) {
+            changes.computeIfPresent(blk, (k, list) -> {
+               Iterator<Change> iter = list.iterator();
+               while (iter.hasNext()) {
+                  Change c = iter.next();
+                  if (c.writer == w) {
+                     if (c.before != null)
+                        size.addAndGet(-(c.before.length + CHANGE_OVERHEAD));
+                     iter.remove();
+                  }
+               }
+               return list.isEmpty() ? null : list;
+            });
+         }
+      }
+   }
+}
@@ -5,61 +5,265 @@ import simpledb.file.BlockId;
 
 /**
  * The concurrency manager for the transaction.
- * Each transaction has its own concurrency manager. 
- * The concurrency manager keeps track of which locks the 
+ * Each transaction has its own concurrency manager.
+ * The concurrency manager keeps track of which locks the
  * transaction currently has, and interacts with the
- * global lock table as needed. 
+ * global lock table as needed.
+ * Locks are taken at two granularities: before locking a block,
+ * the transaction takes an intention lock (IS or IX) on its file.
+ * Once the transaction holds ESCALATION_THRESHOLD block locks
+ * on a file, it tries to escalate them to a single S or X lock
+ * on the file; if the file lock cannot be granted at once,
+ * the transaction keeps its block locks and tries again after
+ * another ESCALATION_THRESHOLD locks.
+ * A file lock in mode S, SIX or X makes the block SLocks
+ * of that file unnecessary, and mode X its block XLocks too.
+ * <p>
+ * The blocks of a table are not locked as a whole, but record
+ * by record: a record lock locks one slot of a block, so that
+ * transactions can update different records of the same block
+ * at the same time. Record locks go with the same intention
+ * locks on the file, and count towards its escalation.
+ * If RECORD_LOCKS is false, a record lock locks its whole block.
  * @author Edward Sciore
  */
 public class ConcurrencyMgr {
+   /**
+    * The number of block locks on a file after which
+    * a transaction escalates to a lock on the whole file;
+    * 0 means that locks are never escalated.
+    */
+   public static int ESCALATION_THRESHOLD = 1000;
+
+   /**
+    * Whether records are locked one by one,
+    * rather than by locking their blocks.
+    */
+   public static boolean RECORD_LOCKS = true;
 
    /**
-    * The global lock table. This variable is static because 
+    * The global lock table. This variable is static because
     * all transactions share the same table.
     */
-   private static LockTable locktbl = new LockTable();
-   private Map<BlockId,String> locks  = new HashMap<BlockId,String>();
+   private static LockTable locktbl = new LockTable(DeadlockPolicy.DETECT);
+   private Map<Object,String> locks  = new HashMap<Object,String>(); // of blocks and records
+   private Map<String,LockMode> filelocks = new HashMap<>();
+   private Map<String,Integer> lockcounts = new HashMap<>();
+   private int txnum;
+
+   /**
+    * Creates a concurrency manager for the specified transaction.
+    * The transaction's number is also its age for the deadlock policy.
+    * @param txnum the id of the transaction
+    */
+   public ConcurrencyMgr(int txnum) {
+      this.txnum = txnum;
+   }
+
+   /**
+    * Sets how the global lock table deals with deadlocks.
+    * @param policy the deadlock policy
+    */
+   public static void setDeadlockPolicy(DeadlockPolicy policy) {
+      locktbl.setPolicy(policy);
+   }
 
    /**
     * Obtain an SLock on the block, if necessary.
     * The method will ask the lock table for an SLock
-    * if the transaction currently has no locks on that block.
+    * if the transaction currently has no locks on that block
+    * and no lock on its file that covers reading it.
+    * The file is first locked in mode IS.
     * @param blk a reference to the disk block
     */
    public void sLock(BlockId blk) {
-      if (locks.get(blk) == null) {
-         locktbl.sLock(blk);
-         locks.put(blk, "S");
-      }
+      sLock(blk, blk.fileName());
+   }
+
+   /**
+    * Obtain an SLock on the record in the specified slot
+    * of the block, if necessary, as with a block.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    */
+   public void sLock(BlockId blk, int slot) {
+      if (RECORD_LOCKS)
+         sLock(new RecordId(blk, slot), blk.fileName());
+      else
+         sLock(blk);
    }
 
    /**
     * Obtain an XLock on the block, if necessary.
     * If the transaction does not have an XLock on that block,
-    * then the method first gets an SLock on that block
+    * or an X lock on its file, then the method first locks
+    * the file in mode IX, gets an SLock on the block
     * (if necessary), and then upgrades it to an XLock.
     * @param blk a reference to the disk block
     */
    public void xLock(BlockId blk) {
-      if (!hasXLock(blk)) {
-         sLock(blk);
-         locktbl.xLock(blk);
-         locks.put(blk, "X");
+      xLock(blk, blk.fileName());
+   }
+
+   /**
+    * Obtain an XLock on the record in the specified slot
+    * of the block, if necessary, as with a block.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    */
+   public void xLock(BlockId blk, int slot) {
+      if (RECORD_LOCKS)
+         xLock(new RecordId(blk, slot), blk.fileName());
+      else
+         xLock(blk);
+   }
+
+   /**
+    * Obtain an XLock on the record in the specified slot
+    * of the block, if the transaction has none and it can be
+    * granted without waiting for another transaction's record lock.
+    * This lets an inserter pass over an empty slot that
+    * another transaction has locked.
+    * If RECORD_LOCKS is false, the method waits for an XLock
+    * on the block, as xLock does.
+    * @param blk a reference to the disk block
+    * @param slot the slot of the record
+    * @return true if the transaction has an XLock on the record
+    */
+   public boolean tryXLock(BlockId blk, int slot) {
+      if (!RECORD_LOCKS) {
+         xLock(blk);
+         return true;
       }
+      RecordId rec = new RecordId(blk, slot);
+      String filename = blk.fileName();
+      if (hasXLock(rec) || fileCovers(filename, LockMode.X))
+         return true;
+      lockFile(filename, LockMode.IX);
+      boolean upgrade = (locks.get(rec) != null);
+      if (!locktbl.tryXLock(rec, txnum, upgrade))
+         return false;
+      locks.put(rec, "X");
+      if (!upgrade)
+         lockcounts.merge(filename, 1, Integer::sum);
+      escalate(filename, LockMode.X);
+      return true;
    }
 
    /**
     * Release all locks by asking the lock table to
-    * unlock each one.
+    * unlock each one: first the block locks,
+    * then the file locks.
     */
    public void release() {
-      for (BlockId blk : locks.keySet()) 
-         locktbl.unlock(blk);
+      for (Object item : locks.keySet())
+         locktbl.unlock(item, txnum);
+      for (String filename : filelocks.keySet())
+         locktbl.unlockFile(filename, txnum);
       locks.clear();
+      filelocks.clear();
+      lockcounts.clear();
+      locktbl.finished(txnum);
    }
 
-   private boolean hasXLock(BlockId blk) {
-      String locktype = locks.get(blk);
+   /**
+    * Returns the number of block and record locks the transaction holds.
+    * @return the number of block and record locks
+    */
+   int blockLocks() {
+      return locks.size();
+   }
+
+   /**
+    * Returns the number of block and record entries in the global lock table.
+    * @return the number of block and record entries
+    */
+   static int lockTableSize() {
+      return locktbl.size();
+   }
+
+   /**
+    * Obtains an SLock on the block or record, unless the transaction
+    * has a lock on it or a lock on its file that covers reading it.
+    * The file is first locked in mode IS.
+    */
+   private void sLock(Object item, String filename) {
+      if (locks.get(item) == null && !fileCovers(filename, LockMode.S)) {
+         lockFile(filename, LockMode.IS);
+         itemSLock(item, filename);
+         escalate(filename, LockMode.S);
+      }
+   }
+
+   /**
+    * Obtains an XLock on the block or record, unless the transaction
+    * has one or an X lock on its file: the file is first locked
+    * in mode IX, and an SLock on the item is then upgraded.
+    */
+   private void xLock(Object item, String filename) {
+      if (!hasXLock(item) && !fileCovers(filename, LockMode.X)) {
+         lockFile(filename, LockMode.IX);
+         if (locks.get(item) == null)
+            itemSLock(item, filename);
+         locktbl.xLock(item, txnum);
+         locks.put(item, "X");
+         escalate(filename, LockMode.X);
+      }
+   }
+
+   private boolean hasXLock(Object item) {
+      String locktype = locks.get(item);
       return locktype != null && locktype.equals("X");
    }
+
+   private boolean fileCovers(String filename, LockMode mode) {
+      LockMode current = filelocks.get(filename);
+      return current != null && current.covers(mode);
+   }
+
+   private void lockFile(String filename, LockMode mode) {
+      if (!fileCovers(filename, mode)) {
+         locktbl.lockFile(filename, mode, txnum);
+         filelocks.merge(filename, mode, LockMode::combine);
+      }
+   }
+
+   private void itemSLock(Object item, String filename) {
+      locktbl.sLock(item, txnum);
+      locks.put(item, "S");
+      lockcounts.merge(filename, 1, Integer::sum);
+   }
+
+   /**
+    * Escalates the transaction's block and record locks on the file
+    * to a lock on the file in the specified mode, if it holds
+    * a multiple of ESCALATION_THRESHOLD of them
+    * and the file lock can be granted without waiting.
+    * The locks that the file lock covers are then released.
+    */
+   private void escalate(String filename, LockMode mode) {
+      int count = lockcounts.get(filename);
+      if (ESCALATION_THRESHOLD <= 0 || count % ESCALATION_THRESHOLD != 0)
+         return;
+      if (!locktbl.tryLockFile(filename, mode, txnum))
+         return;
+      filelocks.merge(filename, mode, LockMode::combine);
+      boolean all = (filelocks.get(filename) == LockMode.X);
+      Iterator<Map.Entry<Object,String>> iter = locks.entrySet().iterator();
+      while (iter.hasNext()) {
+         Map.Entry<Object,String> e = iter.next();
+         if (fileName(e.getKey()).equals(filename) && (all || e.getValue().equals("S"))) {
+            locktbl.unlock(e.getKey(), txnum);
+            iter.remove();
+            count--;
+         }
+      }
+      lockcounts.put(filename, count);
+   }
+
+   private static String fileName(Object item) {
+      if (item instanceof RecordId)
+         return ((RecordId) item).fileName();
+      return ((BlockId) item).fileName();
+   }
 }
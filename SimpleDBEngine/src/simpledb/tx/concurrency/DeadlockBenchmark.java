@@ -0,0 +1,89 @@
+package simpledb.tx.concurrency;
+
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+import simpledb.file.BlockId;
+
+/**
+ * Measures transaction latency under a workload that deadlocks,
+ * for each deadlock policy.
+ * Each thread runs transactions that XLock two random blocks,
+ * out of a few, in random order; a transaction that is aborted
+ * releases its locks and is retried after a short random pause,
+ * keeping its number (and so its age), until the time is up.
+ * The latency of a transaction runs from its first attempt to its commit.
+ * Each policy runs for a fixed time, longer than the lock
+ * table's timeout, and the benchmark reports the committed
+ * transactions, the aborts and the latency percentiles.
+ */
+public class DeadlockBenchmark {
+   private static final int THREADS = 8;
+   private static final int NUMBLOCKS = 8;
+   private static final long DURATION = 12000; // milliseconds
+   private static final long WORK_NANOS = 100000;
+
+   public static void main(String[] args) throws Exception {
+      for (DeadlockPolicy policy : DeadlockPolicy.values())
+         run(policy);
+   }
+
+   private static int nexttx = 0;
+
+   private static synchronized int nextTxNumber() {
+      return ++nexttx;
+   }
+
+   private static void run(DeadlockPolicy policy) throws InterruptedException {
+      ConcurrencyMgr.setDeadlockPolicy(policy);
+      long end = System.currentTimeMillis() + DURATION;
+      List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+      int[] aborts = new int[THREADS];
+      Thread[] threads = new Thread[THREADS];
+      for (int t=0; t<THREADS; t++) {
+         int id = t;
+         threads[t] = new Thread(() -> {
+            Random rand = new Random(id);
+            while (System.currentTimeMillis() < end) {
+               int txnum = nextTxNumber();
+               int b1 = rand.nextInt(NUMBLOCKS);
+               int b2 = (b1 + 1 + rand.nextInt(NUMBLOCKS - 1)) % NUMBLOCKS;
+               long start = System.nanoTime();
+               boolean committed = false;
+               while (!committed && System.currentTimeMillis() < end) {
+                  ConcurrencyMgr cm = new ConcurrencyMgr(txnum);
+                  try {
+                     cm.xLock(new BlockId("benchfile", b1));
+                     LockSupport.parkNanos(WORK_NANOS);
+                     cm.xLock(new BlockId("benchfile", b2));
+                     LockSupport.parkNanos(WORK_NANOS);
+                     cm.release();
+                     committed = true;
+                  }
+                  catch (LockAbortException e) {
+                     cm.release();
+                     aborts[id]++;
+                     LockSupport.parkNanos(rand.nextInt((int) WORK_NANOS));
+                  }
+               }
+               if (committed)
+                  latencies.add(System.nanoTime() - start);
+            }
+         });
+      }
+      for (Thread t : threads)
+         t.start();
+      for (Thread t : threads)
+         t.join();
+
+      long[] lat = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+      int totalAborts = Arrays.stream(aborts).sum();
+      System.out.printf("%-10s %,7d txs %,7d aborts  latency ms: p50 %8.2f  p99 %8.2f  max %8.2f%n",
+                        policy, lat.length, totalAborts,
+                        percentile(lat, 0.50), percentile(lat, 0.99), lat[lat.length-1] / 1e6);
+   }
+
+   private static double percentile(long[] sorted, double p) {
+      int i = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+      return sorted[Math.max(i, 0)] / 1e6;
+   }
+}
@@ -0,0 +1,38 @@
+package simpledb.tx.concurrency;
+
+/**
+ * The ways in which the lock table can deal with deadlocks.
+ * A transaction's age is given by its number:
+ * a lower number is an older transaction.
+ */
+public enum DeadlockPolicy {
+   /** A waiting request is aborted only when it has waited too long. */
+   TIMEOUT,
+   /**
+    * The waits-for graph is searched for a cycle whenever a request
+    * has to wait, and periodically while it waits; the youngest
+    * transaction of a cycle is aborted at once.
+    */
+   DETECT,
+   /**
+    * A request waits only for younger transactions;
+    * a request that conflicts with an older one is aborted.
+    */
+   WAIT_DIE,
+   /**
+    * A request waits only for older transactions;
+    * the younger transactions it conflicts with are aborted
+    * when they next wait for or ask for a lock.
+    */
+   WOUND_WAIT;
+
+   /**
+    * Returns the policy having the specified name, ignoring case;
+    * a dash may be used in place of an underscore.
+    * @param name the name of the policy
+    * @return the corresponding policy
+    */
+   public static DeadlockPolicy parse(String name) {
+      return valueOf(name.trim().toUpperCase().replace('-', '_'));
+   }
+}
@@ -0,0 +1,136 @@
+package simpledb.tx.concurrency;
+
+import java.util.*;
+
+/**
+ * The lock on a whole file, which transactions hold in one
+ * of the modes IS, IX, S, SIX and X.
+ * A transaction holds a single mode; asking for another mode
+ * converts its lock to the combination of the two.
+ * Requests are granted in FIFO order, except that a conversion
+ * goes ahead of the new requests, and is passed over while it
+ * cannot be granted (as with an upgrade of a block lock).
+ * File locks are taken once per transaction and file,
+ * so the entry simply synchronizes every operation.
+ */
+class FileLockEntry implements Lockable {
+   private WaitsForGraph graph;
+   private Map<Integer,LockMode> holders = new HashMap<>();
+   private Deque<Waiter> queue = new ArrayDeque<>();
+   private boolean removed = false;
+
+   FileLockEntry(WaitsForGraph graph) {
+      this.graph = graph;
+   }
+
+   /**
+    * Grants the transaction a lock in the specified mode,
+    * combined with the mode it already holds,
+    * waiting if a conflicting lock is held.
+    * @param txnum the id of the requesting transaction
+    * @param mode the mode requested
+    * @param maxTime the longest time to wait, in milliseconds;
+    * if 0, the method returns at once
+    * @return false if the lock could not be granted without waiting,
+    * or if the entry has been removed from the lock table
+    */
+   boolean lock(int txnum, LockMode mode, long maxTime) {
+      Waiter w;
+      synchronized (this) {
+         if (removed)
+            return false;
+         LockMode current = holders.get(txnum);
+         LockMode wanted = (current == null) ? mode : current.combine(mode);
+         if (wanted == current)
+            return true;
+         w = new Waiter(this, txnum, wanted);
+         boolean conversion = (current != null);
+         if ((conversion || queue.isEmpty()) && canGrant(w)) {
+            holders.put(txnum, wanted);
+            return true;
+         }
+         if (maxTime == 0)
+            return false;
+         if (conversion)
+            queue.addFirst(w);
+         else
+            queue.addLast(w);
+      }
+      w.await(graph, maxTime);
+      synchronized (this) {
+         if (w.granted)
+            return true;
+         if (!w.aborted) {
+            queue.remove(w);
+            grantWaiters();
+         }
+      }
+      throw new LockAbortException();
+   }
+
+   /**
+    * Releases the transaction's lock, and grants the lock
+    * to the waiting requests that it was keeping back.
+    * @param txnum the id of the transaction
+    * @return true if the entry has no holders and no waiters,
+    * and so has been marked as removed
+    */
+   synchronized boolean unlock(int txnum) {
+      holders.remove(txnum);
+      grantWaiters();
+      removed = holders.isEmpty() && queue.isEmpty();
+      return removed;
+   }
+
+   /**
+    * Determines whether the entry has been removed from the lock table,
+    * in which case a requester must get a new one.
+    * @return true if the entry has been removed
+    */
+   synchronized boolean isRemoved() {
+      return removed;
+   }
+
+   public synchronized Collection<Integer> blockers(Waiter w) {
+      List<Integer> result = new ArrayList<>();
+      for (Map.Entry<Integer,LockMode> e : holders.entrySet())
+         if (e.getKey() != w.txnum && !w.mode.compatible(e.getValue()))
+            result.add(e.getKey());
+      return result;
+   }
+
+   public synchronized void abort(Waiter w) {
+      if (w.granted || w.aborted)
+         return;
+      queue.remove(w);
+      w.abort();
+      grantWaiters();
+   }
+
+   /**
+    * Grants the waiting requests in queue order, passing over
+    * any conversion that cannot be granted yet, until a new
+    * request cannot be granted.
+    */
+   private void grantWaiters() {
+      Iterator<Waiter> iter = queue.iterator();
+      while (iter.hasNext()) {
+         Waiter w = iter.next();
+         if (!canGrant(w)) {
+            if (holders.containsKey(w.txnum))
+               continue;
+            return;
+         }
+         iter.remove();
+         holders.put(w.txnum, w.mode);
+         w.grant();
+      }
+   }
+
+   private boolean canGrant(Waiter w) {
+      for (Map.Entry<Integer,LockMode> e : holders.entrySet())
+         if (e.getKey() != w.txnum && !w.mode.compatible(e.getValue()))
+            return false;
+      return true;
+   }
+}
@@ -0,0 +1,245 @@
+package simpledb.tx.concurrency;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The lock on a single block.
+ * The state of the lock is a count: the number of SLocks,
+ * or -1 if the block is XLocked.
+ * The entry also keeps the ids of the transactions holding
+ * the lock, and of the one holding the XLock if any, from which
+ * the edges of the waits-for graph are found.
+ * Locks are granted in FIFO order from the entry's own wait queue,
+ * except that an upgrade from an SLock to an XLock goes to the
+ * front of the queue (a request queued ahead of it could never
+ * be granted while its SLock is held), and that an SLock request
+ * is not held back by a waiting upgrade. As in the original lock
+ * table, a reader may join the readers an upgrade is waiting for;
+ * queueing it behind the upgrade would make it wait for those
+ * readers too, a deadlock whenever one of them waits for it.
+ * Each waiting thread waits on its own monitor, and a thread
+ * that releases the lock grants it to the waiters at the head of
+ * the queue before waking them; so only threads that have been
+ * granted the lock wake up.
+ * While no SLock request is waiting, an SLock is granted, and
+ * any lock released, by a compare-and-set of the count,
+ * without locking.
+ */
+class LockEntry implements Lockable {
+   static final int REMOVED = Integer.MIN_VALUE;
+   private static final int FREE = 0, X = -1;
+
+   private WaitsForGraph graph;
+   private AtomicInteger state = new AtomicInteger(FREE);
+   private Set<Integer> holders = ConcurrentHashMap.newKeySet();
+   private volatile int xHolder = -1;
+   private volatile int waiting = 0, sWaiting = 0;
+   private Deque<Waiter> queue = new ArrayDeque<>();
+
+   LockEntry(WaitsForGraph graph) {
+      this.graph = graph;
+   }
+
+   /**
+    * Grants an SLock, waiting if the block is XLocked
+    * or if other SLock requests are waiting for the block.
+    * @param txnum the id of the requesting transaction
+    * @param maxTime the longest time to wait, in milliseconds
+    * @return false if the entry has been removed from the lock table
+    */
+   boolean sLock(int txnum, long maxTime) {
+      while (sWaiting == 0) {
+         int s = state.get();
+         if (s == REMOVED)
+            return false;
+         if (s == X)
+            break;
+         if (state.compareAndSet(s, s+1)) {
+            holders.add(txnum);
+            return true;
+         }
+      }
+      return await(new Waiter(this, txnum, LockMode.S), maxTime);
+   }
+
+   /**
+    * Upgrades the caller's SLock to an XLock,
+    * waiting until no other transaction has an SLock.
+    * @param txnum the id of the requesting transaction
+    * @param maxTime the longest time to wait, in milliseconds
+    * @return false if the entry has been removed from the lock table
+    */
+   boolean xLock(int txnum, long maxTime) {
+      if (state.compareAndSet(1, X)) {
+         xHolder = txnum;
+         return true;
+      }
+      return await(new Waiter(this, txnum, LockMode.X), maxTime);
+   }
+
+   /**
+    * Grants an XLock, or upgrades the caller's SLock to one,
+    * if the lock is free (or held by the caller's SLock alone)
+    * and no request is waiting.
+    * @param txnum the id of the requesting transaction
+    * @param upgrade true if the caller holds an SLock
+    * @return false if the lock could not be granted without waiting,
+    * or if the entry has been removed from the lock table
+    */
+   boolean tryXLock(int txnum, boolean upgrade) {
+      if (waiting > 0 || !state.compareAndSet(upgrade ? 1 : FREE, X))
+         return false;
+      holders.add(txnum);
+      xHolder = txnum;
+      return true;
+   }
+
+   /**
+    * Determines whether the entry has been removed from the lock table,
+    * in which case a requester must get a new one.
+    * @return true if the entry has been removed
+    */
+   boolean isRemoved() {
+      return state.get() == REMOVED;
+   }
+
+   /**
+    * Releases the transaction's SLock or XLock, and grants
+    * the lock to the waiters at the head of the queue.
+    * @param txnum the id of the transaction
+    */
+   void unlock(int txnum) {
+      holders.remove(txnum);
+      if (xHolder == txnum)
+         xHolder = -1;
+      int s;
+      do {
+         s = state.get();
+      } while (!state.compareAndSet(s, (s > 1) ? s-1 : FREE));
+      if (waiting > 0) {
+         synchronized (this) {
+            grantWaiters();
+         }
+      }
+   }
+
+   /**
+    * Returns the ids of the other transactions holding the lock
+    * in a mode that conflicts with the waiting request:
+    * every other holder for an upgrade, but only the holder
+    * of the XLock for an SLock request, since SLocks do not
+    * conflict with each other.
+    */
+   public Collection<Integer> blockers(Waiter w) {
+      if (!upgrade(w)) {
+         int x = xHolder;
+         return (x >= 0 && x != w.txnum) ? Collections.singletonList(x)
+                                          : Collections.emptyList();
+      }
+      List<Integer> result = new ArrayList<>();
+      for (int h : holders)
+         if (h != w.txnum)
+            result.add(h);
+      return result;
+   }
+
+   /**
+    * Marks the entry as removed, if the lock is free and has no
+    * waiters, so that it can be taken out of the lock table.
+    * @return true if the entry was marked
+    */
+   synchronized boolean markRemoved() {
+      return waiting == 0 && state.compareAndSet(FREE, REMOVED);
+   }
+
+   public synchronized void abort(Waiter w) {
+      if (w.granted || w.aborted)
+         return;
+      dequeue(w);
+      w.abort();
+      grantWaiters();
+   }
+
+   /**
+    * Queues the request and waits until a releasing thread
+    * grants it. If the request is aborted by the deadlock
+    * policy, or is not granted in time, it is withdrawn
+    * and a LockAbortException is thrown.
+    */
+   private boolean await(Waiter w, long maxTime) {
+      synchronized (this) {
+         if (state.get() == REMOVED)
+            return false;
+         waiting++;
+         if (upgrade(w))
+            queue.addFirst(w);
+         else {
+            sWaiting++;
+            queue.addLast(w);
+         }
+         grantWaiters();
+      }
+      if (!w.granted)
+         w.await(graph, maxTime);
+      synchronized (this) {
+         if (w.granted)
+            return true;
+         if (!w.aborted) {
+            dequeue(w);
+            grantWaiters();
+         }
+      }
+      throw new LockAbortException();
+   }
+
+   /**
+    * Grants the lock to the waiters in queue order, for as long
+    * as it can: to a single upgrade, or to a run of SLock requests,
+    * passing over any upgrade that cannot be granted yet.
+    * Must be called while synchronized on the entry.
+    */
+   private void grantWaiters() {
+      Iterator<Waiter> iter = queue.iterator();
+      while (iter.hasNext()) {
+         Waiter w = iter.next();
+         if (!tryGrant(w)) {
+            if (upgrade(w))
+               continue;
+            return;
+         }
+         iter.remove();
+         waiting--;
+         if (!upgrade(w))
+            sWaiting--;
+         holders.add(w.txnum);
+         if (upgrade(w))
+            xHolder = w.txnum;
+         w.grant();
+         if (upgrade(w))
+            return;
+      }
+   }
+
+   private void dequeue(Waiter w) {
+      queue.remove(w);
+      waiting--;
+      if (!upgrade(w))
+         sWaiting--;
+   }
+
+   private boolean tryGrant(Waiter w) {
+      while (true) {
+         int s = state.get();
+         if (upgrade(w) ? s != 1 : s < 0)
+            return false;
+         if (state.compareAndSet(s, upgrade(w) ? X : s+1))
+            return true;
+      }
+   }
+
+   private static boolean upgrade(Waiter w) {
+      return w.mode == LockMode.X;
+   }
+}
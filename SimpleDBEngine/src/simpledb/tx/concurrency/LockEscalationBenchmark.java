@@ -0,0 +1,50 @@
+package simpledb.tx.concurrency;
+
+import simpledb.file.BlockId;
+
+/**
+ * Measures the cost of the locks taken by full scans of a large
+ * file, with and without escalation to a file lock.
+ * A number of reader transactions each SLock every block of
+ * the file, as a table scan does; the benchmark reports the
+ * time taken, and the number of block locks held by a reader
+ * and of entries in the lock table just before the readers commit.
+ */
+public class LockEscalationBenchmark {
+   private static final int NUMBLOCKS = 1000000;
+   private static final int[] READERS = {1, 4};
+   private static final int[] THRESHOLDS = {0, ConcurrencyMgr.ESCALATION_THRESHOLD};
+
+   public static void main(String[] args) throws Exception {
+      int txnum = 1;
+      for (int threshold : THRESHOLDS) {
+         ConcurrencyMgr.ESCALATION_THRESHOLD = threshold;
+         for (int numreaders : READERS) {
+            ConcurrencyMgr[] cms = new ConcurrencyMgr[numreaders];
+            Thread[] threads = new Thread[numreaders];
+            for (int t=0; t<numreaders; t++) {
+               ConcurrencyMgr cm = new ConcurrencyMgr(txnum++);
+               cms[t] = cm;
+               threads[t] = new Thread(() -> {
+                  for (int b=0; b<NUMBLOCKS; b++)
+                     cm.sLock(new BlockId("benchfile", b));
+               });
+            }
+            long start = System.nanoTime();
+            for (Thread t : threads)
+               t.start();
+            for (Thread t : threads)
+               t.join();
+            double secs = (System.nanoTime() - start) / 1e9;
+            int held = cms[0].blockLocks();
+            int entries = ConcurrencyMgr.lockTableSize();
+            for (ConcurrencyMgr cm : cms)
+               cm.release();
+            System.out.printf("threshold %5d, %d readers: %6.2f s, %,9.0f locks/sec, "
+                              + "%,8d block locks per reader, %,8d table entries%n",
+                              threshold, numreaders, secs, numreaders * NUMBLOCKS / secs,
+                              held, entries);
+         }
+      }
+   }
+}
@@ -0,0 +1,66 @@
+package simpledb.tx.concurrency;
+
+/**
+ * The modes of a lock on a whole file.
+ * IS and IX are intention locks: a transaction holding one
+ * locks individual blocks of the file in S or X mode.
+ * S and X lock every block of the file, and SIX is an S lock
+ * on the file together with the intention to XLock some blocks.
+ */
+enum LockMode {
+   IS, IX, S, SIX, X;
+
+   private static final boolean[][] COMPATIBLE = {
+      //          IS     IX     S      SIX    X
+      /* IS  */ { true,  true,  true,  true,  false },
+      /* IX  */ { true,  true,  false, false, false },
+      /* S   */ { true,  false, true,  false, false },
+      /* SIX */ { true,  false, false, false, false },
+      /* X   */ { false, false, false, false, false },
+   };
+
+   /**
+    * Determines whether a lock in this mode can be held
+    * by one transaction while another holds the specified mode.
+    * @param other the mode of the other lock
+    * @return true if the modes are compatible
+    */
+   boolean compatible(LockMode other) {
+      return COMPATIBLE[ordinal()][other.ordinal()];
+   }
+
+   /**
+    * Determines whether this mode allows everything
+    * that the specified mode allows.
+    * @param other another mode
+    * @return true if this mode is at least as strong
+    */
+   boolean covers(LockMode other) {
+      if (this == other || this == X || other == IS)
+         return true;
+      return this == SIX && (other == IX || other == S);
+   }
+
+   /**
+    * Returns the weakest mode that covers both this mode
+    * and the specified one.
+    * @param other another mode
+    * @return the combination of the two modes
+    */
+   LockMode combine(LockMode other) {
+      if (covers(other))
+         return this;
+      if (other.covers(this))
+         return other;
+      return SIX; // IX and S
+   }
+
+   /**
+    * Determines whether this mode locks every block of the file
+    * in S mode, so that no block needs an SLock of its own.
+    * @return true if the mode is S, SIX or X
+    */
+   boolean coversBlockReads() {
+      return covers(S);
+   }
+}
@@ -1,103 +1,211 @@
 package simpledb.tx.concurrency;
 
-import java.util.*;
-import simpledb.file.BlockId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The lock table, which provides methods to lock and unlock blocks.
+ * Each locked block has its own lock entry, which keeps
+ * its own queue of waiting transactions.
+ * The records of a block (a {@link RecordId}) are locked
+ * in the same way, with entries of their own; the table does
+ * not relate the lock on a record to the lock on its block,
+ * as a file's blocks are locked either as a whole or record
+ * by record, never both.
  * If a transaction requests a lock that causes a conflict with an
- * existing lock, then that transaction is placed on a wait list.
- * There is only one wait list for all blocks.
- * When the last lock on a block is unlocked, then all transactions
- * are removed from the wait list and rescheduled.
- * If one of those transactions discovers that the lock it is waiting for
- * is still locked, it will place itself back on the wait list.
+ * existing lock, or an SLock while other SLock requests are waiting,
+ * then that transaction is placed on the block's queue.
+ * When a lock is released, it is granted to the transactions
+ * waiting on the block, in the order they asked for it
+ * (an upgrade to an XLock ahead of them), and only those
+ * transactions are woken up.
+ * An uncontended SLock is granted without any locking.
+ * The entry of a block is kept after its lock is released,
+ * so that the blocks in use get their locks without
+ * creating an entry each time, unless the table holds more
+ * than a certain number of entries; then the entry of a block
+ * is removed as soon as its lock is free.
+ * The table also locks whole files, in the modes of {@link LockMode}.
+ * Deadlocks are handled by the table's {@link DeadlockPolicy},
+ * which by default finds them in the waits-for graph as soon
+ * as they occur; a request also aborts if it remains
+ * on the queue for a certain amount of time
+ * (currently 10 seconds).
  * @author Edward Sciore
  */
 class LockTable {
    private static final long MAX_TIME = 10000; // 10 seconds
-   
-   private Map<BlockId,Integer> locks = new HashMap<BlockId,Integer>();
-   
+   private static final int MAX_ENTRIES = 1024;
+
+   /**
+    * The number of times a waiting thread has woken up,
+    * over all lock tables.
+    */
+   static final LongAdder wakeups = new LongAdder();
+
+   private Map<Object,LockEntry> locks = new ConcurrentHashMap<>(); // of blocks and records
+   private Map<String,FileLockEntry> files = new ConcurrentHashMap<>();
+   private WaitsForGraph graph;
+
+   /**
+    * Creates a lock table that handles deadlocks
+    * with the specified policy.
+    * @param policy the deadlock policy
+    */
+   LockTable(DeadlockPolicy policy) {
+      graph = new WaitsForGraph(policy);
+   }
+
+   /**
+    * Changes the deadlock policy of the table.
+    * @param policy the deadlock policy
+    */
+   void setPolicy(DeadlockPolicy policy) {
+      graph.setPolicy(policy);
+   }
+
    /**
     * Grant an SLock on the specified block.
     * If an XLock exists when the method is called,
-    * then the calling thread will be placed on a wait list
-    * until the lock is released.
-    * If the thread remains on the wait list for a certain 
-    * amount of time (currently 10 seconds),
-    * then an exception is thrown.
-    * @param blk a reference to the disk block
+    * or other SLock requests are waiting for the block,
+    * then the calling thread will be placed on the block's queue
+    * until the lock can be granted to it.
+    * If the deadlock policy aborts the request, or the thread
+    * remains on the queue for too long, then an exception is thrown.
+    * @param item a reference to the disk block, or a record
+    * @param txnum the id of the requesting transaction
     */
-   public synchronized void sLock(BlockId blk) {
-      try {
-         long timestamp = System.currentTimeMillis();
-         while (hasXlock(blk) && !waitingTooLong(timestamp))
-            wait(MAX_TIME);
-         if (hasXlock(blk))
-            throw new LockAbortException();
-         int val = getLockVal(blk);  // will not be negative
-         locks.put(blk, val+1);
-      }
-      catch(InterruptedException e) {
-         throw new LockAbortException();
-      }
+   public void sLock(Object item, int txnum) {
+      graph.checkWounded(txnum);
+      while (!entry(item).sLock(txnum, MAX_TIME))
+         Thread.onSpinWait();
+   }
+
+   /**
+    * Upgrade the caller's SLock on the specified block to an XLock.
+    * If another transaction has an SLock when the method is called,
+    * then the calling thread will be placed at the front of the
+    * block's queue until the other SLocks are released.
+    * If the deadlock policy aborts the request, or the thread
+    * remains on the queue for too long, then an exception is thrown.
+    * @param item a reference to the disk block, or a record
+    * @param txnum the id of the requesting transaction
+    */
+   void xLock(Object item, int txnum) {
+      graph.checkWounded(txnum);
+      while (!entry(item).xLock(txnum, MAX_TIME))
+         Thread.onSpinWait();
    }
-   
+
    /**
-    * Grant an XLock on the specified block.
-    * If a lock of any type exists when the method is called,
-    * then the calling thread will be placed on a wait list
-    * until the locks are released.
-    * If the thread remains on the wait list for a certain 
-    * amount of time (currently 10 seconds),
-    * then an exception is thrown.
-    * @param blk a reference to the disk block
+    * Grant an XLock on the specified block or record,
+    * or upgrade the caller's SLock to one, if that can be done
+    * without waiting.
+    * @param item a reference to the disk block, or a record
+    * @param txnum the id of the requesting transaction
+    * @param upgrade true if the caller holds an SLock on the item
+    * @return true if the lock was granted
     */
-   synchronized void xLock(BlockId blk) {
-      try {
-         long timestamp = System.currentTimeMillis();
-         while (hasOtherSLocks(blk) && !waitingTooLong(timestamp))
-            wait(MAX_TIME);
-         if (hasOtherSLocks(blk))
-            throw new LockAbortException();
-         locks.put(blk, -1);
-      }
-      catch(InterruptedException e) {
-         throw new LockAbortException();
+   boolean tryXLock(Object item, int txnum, boolean upgrade) {
+      graph.checkWounded(txnum);
+      while (true) {
+         LockEntry e = entry(item);
+         if (e.tryXLock(txnum, upgrade))
+            return true;
+         if (!e.isRemoved())
+            return false;
       }
    }
-   
+
    /**
     * Release a lock on the specified block.
-    * If this lock is the last lock on that block,
-    * then the waiting transactions are notified.
-    * @param blk a reference to the disk block
+    * The lock is granted to the transactions waiting at the head of
+    * the block's queue. If the table is large and the block
+    * is no longer locked, its entry is removed;
+    * a thread that finds the entry removed gets a new one.
+    * @param item a reference to the disk block, or a record
+    * @param txnum the id of the transaction holding the lock
+    */
+   void unlock(Object item, int txnum) {
+      LockEntry e = locks.get(item);
+      e.unlock(txnum);
+      if (locks.size() > MAX_ENTRIES && e.markRemoved())
+         locks.remove(item, e);
+   }
+
+   /**
+    * Grant a lock on the specified file in the specified mode,
+    * combined with the mode the transaction already holds.
+    * If a conflicting lock exists when the method is called,
+    * then the calling thread will be placed on the file's queue
+    * until the lock can be granted to it.
+    * If the deadlock policy aborts the request, or the thread
+    * remains on the queue for too long, then an exception is thrown.
+    * @param filename the name of the file
+    * @param mode the mode requested
+    * @param txnum the id of the requesting transaction
     */
-   synchronized void unlock(BlockId blk) {
-      int val = getLockVal(blk);
-      if (val > 1)
-         locks.put(blk, val-1);
-      else {
-         locks.remove(blk);
-         notifyAll();
+   void lockFile(String filename, LockMode mode, int txnum) {
+      graph.checkWounded(txnum);
+      while (!fileEntry(filename).lock(txnum, mode, MAX_TIME))
+         Thread.onSpinWait();
+   }
+
+   /**
+    * Grant a lock on the specified file in the specified mode,
+    * combined with the mode the transaction already holds,
+    * if that can be done without waiting.
+    * @param filename the name of the file
+    * @param mode the mode requested
+    * @param txnum the id of the requesting transaction
+    * @return true if the lock was granted
+    */
+   boolean tryLockFile(String filename, LockMode mode, int txnum) {
+      while (true) {
+         FileLockEntry e = fileEntry(filename);
+         if (e.lock(txnum, mode, 0))
+            return true;
+         if (!e.isRemoved())
+            return false;
       }
    }
-   
-   private boolean hasXlock(BlockId blk) {
-      return getLockVal(blk) < 0;
+
+   /**
+    * Release the transaction's lock on the specified file.
+    * The entry of a file is removed as soon as the file
+    * is no longer locked.
+    * @param filename the name of the file
+    * @param txnum the id of the transaction holding the lock
+    */
+   void unlockFile(String filename, int txnum) {
+      FileLockEntry e = files.get(filename);
+      if (e.unlock(txnum))
+         files.remove(filename, e);
+   }
+
+   /**
+    * Returns the number of block and record entries in the table.
+    * @return the number of block and record entries
+    */
+   int size() {
+      return locks.size();
    }
-   
-   private boolean hasOtherSLocks(BlockId blk) {
-      return getLockVal(blk) > 1;
+
+   /**
+    * Tells the deadlock policy that the transaction
+    * has released all of its locks.
+    * @param txnum the id of the transaction
+    */
+   void finished(int txnum) {
+      graph.finished(txnum);
    }
-   
-   private boolean waitingTooLong(long starttime) {
-      return System.currentTimeMillis() - starttime > MAX_TIME;
+
+   private LockEntry entry(Object item) {
+      return locks.computeIfAbsent(item, b -> new LockEntry(graph));
    }
-   
-   private int getLockVal(BlockId blk) {
-      Integer ival = locks.get(blk);
-      return (ival == null) ? 0 : ival.intValue();
+
+   private FileLockEntry fileEntry(String filename) {
+      return files.computeIfAbsent(filename, f -> new FileLockEntry(graph));
    }
 }
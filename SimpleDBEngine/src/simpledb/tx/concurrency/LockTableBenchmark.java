@@ -0,0 +1,157 @@
+package simpledb.tx.concurrency;
+
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+import simpledb.file.BlockId;
+
+/**
+ * Measures lock throughput under contention from many readers
+ * and a few writers, comparing the lock table against the
+ * original one, with a single wait list for all blocks
+ * (reproduced below as WaitListLockTable).
+ * Each reader SLocks a few random blocks and releases them;
+ * each writer repeatedly XLocks a block of its own, which
+ * the readers also read.
+ * The benchmark reports the transactions per second and the
+ * number of times a waiting thread was woken up.
+ */
+public class LockTableBenchmark {
+   private static final int NUMBLOCKS = 32;
+   private static final int BLOCKS_PER_READ = 4;
+   private static final int READERS = 16;
+   private static final int WRITERS = 2;
+   private static final int TXS_PER_THREAD = 5000;
+   private static final int WORK = 200;
+   private static final long WRITE_NANOS = 20000;
+
+   interface Locks {
+      void sLock(BlockId blk, int txnum);
+      void xLock(BlockId blk, int txnum);
+      void unlock(BlockId blk, int txnum);
+      long wakeups();
+   }
+
+   public static void main(String[] args) throws Exception {
+      WaitListLockTable old = new WaitListLockTable();
+      LockTable lt = new LockTable(DeadlockPolicy.DETECT);
+      Locks before = new Locks() {
+         public void sLock(BlockId blk, int txnum)  { old.sLock(blk); }
+         public void xLock(BlockId blk, int txnum)  { old.xLock(blk); }
+         public void unlock(BlockId blk, int txnum) { old.unlock(blk); }
+         public long wakeups()           { return old.wakeups; }
+      };
+      Locks after = new Locks() {
+         public void sLock(BlockId blk, int txnum)  { lt.sLock(blk, txnum); }
+         public void xLock(BlockId blk, int txnum)  { lt.xLock(blk, txnum); }
+         public void unlock(BlockId blk, int txnum) { lt.unlock(blk, txnum); }
+         public long wakeups()           { return LockTable.wakeups.sum(); }
+      };
+      for (int round=0; round<3; round++) {
+         run("wait list", before);
+         run("per-block queues", after);
+      }
+   }
+
+   private static void run(String name, Locks locks) throws InterruptedException {
+      long wakeups = locks.wakeups();
+      Thread[] threads = new Thread[READERS + WRITERS];
+      for (int t=0; t<READERS; t++) {
+         int seed = t;
+         threads[t] = new Thread(() -> {
+            Random rand = new Random(seed);
+            for (int i=0; i<TXS_PER_THREAD; i++) {
+               Set<BlockId> blks = new HashSet<>();
+               while (blks.size() < BLOCKS_PER_READ)
+                  blks.add(new BlockId("benchfile", rand.nextInt(NUMBLOCKS)));
+               for (BlockId blk : blks)
+                  locks.sLock(blk, seed);
+               work();
+               for (BlockId blk : blks)
+                  locks.unlock(blk, seed);
+            }
+         });
+      }
+      for (int t=0; t<WRITERS; t++) {
+         BlockId blk = new BlockId("benchfile", t);
+         int txnum = READERS + t;
+         threads[READERS + t] = new Thread(() -> {
+            for (int i=0; i<TXS_PER_THREAD; i++) {
+               locks.sLock(blk, txnum);
+               locks.xLock(blk, txnum);
+               LockSupport.parkNanos(WRITE_NANOS);
+               locks.unlock(blk, txnum);
+            }
+         });
+      }
+      long start = System.nanoTime();
+      for (Thread t : threads)
+         t.start();
+      for (Thread t : threads)
+         t.join();
+      double secs = (System.nanoTime() - start) / 1e9;
+      System.out.printf("%-16s %,10.0f txs/sec  %,10d wakeups%n", name,
+                        threads.length * TXS_PER_THREAD / secs,
+                        locks.wakeups() - wakeups);
+   }
+
+   private static int sink;
+
+   private static void work() {
+      int x = sink;
+      for (int i=0; i<WORK; i++)
+         x = x * 31 + i;
+      sink = x;
+   }
+
+   /**
+    * The lock table before per-block queues: every request
+    * locks the whole table, and the release of the last lock
+    * on any block wakes every waiting thread.
+    */
+   static class WaitListLockTable {
+      private static final long MAX_TIME = 10000;
+      private Map<BlockId,Integer> locks = new HashMap<>();
+      long wakeups = 0;
+
+      synchronized void sLock(BlockId blk) {
+         try {
+            while (getLockVal(blk) < 0) {
+               wait(MAX_TIME);
+               wakeups++;
+            }
+            locks.put(blk, getLockVal(blk) + 1);
+         }
+         catch (InterruptedException e) {
+            throw new LockAbortException();
+         }
+      }
+
+      synchronized void xLock(BlockId blk) {
+         try {
+            while (getLockVal(blk) > 1) {
+               wait(MAX_TIME);
+               wakeups++;
+            }
+            locks.put(blk, -1);
+         }
+         catch (InterruptedException e) {
+            throw new LockAbortException();
+         }
+      }
+
+      synchronized void unlock(BlockId blk) {
+         int val = getLockVal(blk);
+         if (val > 1)
+            locks.put(blk, val-1);
+         else {
+            locks.remove(blk);
+            notifyAll();
+         }
+      }
+
+      private int getLockVal(BlockId blk) {
+         Integer ival = locks.get(blk);
+         return (ival == null) ? 0 : ival.intValue();
+      }
+   }
+}
@@ -0,0 +1,27 @@
+package simpledb.tx.concurrency;
+
+import java.util.Collection;
+
+/**
+ * A lock that requests can wait for: the lock on a block
+ * or on a file. The waits-for graph uses it to find
+ * the transactions a waiting request waits for, and to
+ * abort the request.
+ */
+interface Lockable {
+   /**
+    * Returns the ids of the other transactions whose locks
+    * keep the waiting request from being granted.
+    * @param w a waiting request
+    * @return the transactions the request waits for
+    */
+   Collection<Integer> blockers(Waiter w);
+
+   /**
+    * Withdraws a waiting request, which makes its thread
+    * throw a LockAbortException.
+    * Nothing happens if the request has already been granted.
+    * @param w a request queued on this lock
+    */
+   void abort(Waiter w);
+}
@@ -0,0 +1,37 @@
+package simpledb.tx.concurrency;
+
+import simpledb.file.BlockId;
+
+/**
+ * The record in a slot of a block, which is what a record lock locks.
+ * The lock table keeps the locks on records next to the locks
+ * on blocks, so a RecordId is never equal to a BlockId.
+ */
+class RecordId {
+   private BlockId blk;
+   private int slot;
+
+   RecordId(BlockId blk, int slot) {
+      this.blk = blk;
+      this.slot = slot;
+   }
+
+   String fileName() {
+      return blk.fileName();
+   }
+
+   public boolean equals(Object obj) {
+      if (!(obj instanceof RecordId))
+         return false;
+      RecordId r = (RecordId) obj;
+      return blk.equals(r.blk) && slot == r.slot;
+   }
+
+   public String toString() {
+      return "[" + blk + ", slot " + slot + "]";
+   }
+
+   public int hashCode() {
+      return 31 * blk.hashCode() + slot;
+   }
+}
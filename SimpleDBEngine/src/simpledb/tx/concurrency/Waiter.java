@@ -0,0 +1,83 @@
+package simpledb.tx.concurrency;
+
+/**
+ * A request waiting in the queue of a lock.
+ * Each request waits on its own monitor;
+ * the thread that grants or aborts it sets the
+ * corresponding flag and notifies it.
+ */
+class Waiter {
+   final Lockable lock;
+   final int txnum;
+   final LockMode mode;
+   volatile boolean granted = false;
+   volatile boolean aborted = false;
+
+   /**
+    * Creates a request for a lock.
+    * A request for a block lock has mode S, or X for an upgrade.
+    * @param lock the lock requested
+    * @param txnum the id of the requesting transaction
+    * @param mode the mode requested
+    */
+   Waiter(Lockable lock, int txnum, LockMode mode) {
+      this.lock = lock;
+      this.txnum = txnum;
+      this.mode = mode;
+   }
+
+   /**
+    * Marks the request as granted and wakes its thread.
+    */
+   void grant() {
+      synchronized (this) {
+         granted = true;
+         notify();
+      }
+   }
+
+   /**
+    * Marks the request as aborted and wakes its thread.
+    */
+   void abort() {
+      synchronized (this) {
+         aborted = true;
+         notify();
+      }
+   }
+
+   /**
+    * Waits until the request is granted or aborted, or the time
+    * is up, asking the waits-for graph to apply the deadlock
+    * policy when the wait starts and again at regular intervals.
+    * @param graph the waits-for graph
+    * @param maxTime the longest time to wait, in milliseconds
+    */
+   void await(WaitsForGraph graph, long maxTime) {
+      graph.startWait(this);
+      long deadline = System.currentTimeMillis() + maxTime;
+      try {
+         while (true) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+               return;
+            synchronized (this) {
+               if (granted || aborted)
+                  return;
+               wait(Math.min(remaining, WaitsForGraph.CHECK_INTERVAL));
+            }
+            LockTable.wakeups.increment();
+            if (!granted && !aborted)
+               graph.recheck(this);
+         }
+      }
+      catch (InterruptedException e) {
+         // the request is withdrawn by the caller,
+         // and the interrupt is left for its thread to see
+         Thread.currentThread().interrupt();
+      }
+      finally {
+         graph.endWait(this);
+      }
+   }
+}
@@ -0,0 +1,161 @@
+package simpledb.tx.concurrency;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import static simpledb.tx.concurrency.DeadlockPolicy.*;
+
+/**
+ * The waits-for graph of the lock table, which applies
+ * its deadlock policy.
+ * A transaction waiting for a lock waits for every other
+ * transaction whose lock on the same block or file
+ * conflicts with its request.
+ * The policy is applied when a request starts to wait, and
+ * again every CHECK_INTERVAL milliseconds while it waits,
+ * which catches any conflict that was missed while a lock
+ * was being granted.
+ * Under the DETECT policy, the graph is searched for a cycle
+ * through the request; the youngest transaction of a cycle
+ * is chosen as the victim, and its request is aborted.
+ * Under WAIT_DIE and WOUND_WAIT, the decision is made
+ * from the ages of the conflicting transactions alone.
+ */
+class WaitsForGraph {
+   static final long CHECK_INTERVAL = 50; // milliseconds
+
+   private volatile DeadlockPolicy policy;
+   private Map<Integer,Waiter> waiting = new HashMap<>();
+   private Set<Integer> wounded = ConcurrentHashMap.newKeySet();
+
+   WaitsForGraph(DeadlockPolicy policy) {
+      this.policy = policy;
+   }
+
+   void setPolicy(DeadlockPolicy policy) {
+      this.policy = policy;
+   }
+
+   /**
+    * Throws a LockAbortException if the transaction has been
+    * wounded by an older one.
+    * @param txnum the id of a transaction asking for a lock
+    */
+   void checkWounded(int txnum) {
+      if (policy == WOUND_WAIT && wounded.contains(txnum))
+         throw new LockAbortException();
+   }
+
+   /**
+    * Forgets the transaction, which has released its locks.
+    * @param txnum the id of the transaction
+    */
+   void finished(int txnum) {
+      wounded.remove(txnum);
+   }
+
+   /**
+    * Adds the waiting request to the graph and applies the policy,
+    * which may abort the request itself or other waiting requests.
+    * @param w a request that has been queued and not granted
+    */
+   synchronized void startWait(Waiter w) {
+      waiting.put(w.txnum, w);
+      apply(w);
+   }
+
+   /**
+    * Applies the policy again to the request, which is still waiting.
+    * @param w the waiting request
+    */
+   synchronized void recheck(Waiter w) {
+      if (waiting.get(w.txnum) == w)
+         apply(w);
+   }
+
+   /**
+    * Removes the request from the graph.
+    * @param w a request that is no longer waiting
+    */
+   synchronized void endWait(Waiter w) {
+      waiting.remove(w.txnum, w);
+   }
+
+   private void apply(Waiter w) {
+      switch (policy) {
+      case DETECT:
+         detect(w);
+         break;
+      case WAIT_DIE:
+         for (int h : w.lock.blockers(w))
+            if (h < w.txnum) {
+               abort(w);
+               return;
+            }
+         break;
+      case WOUND_WAIT:
+         if (wounded.contains(w.txnum) || olderWaitsFor(w.txnum)) {
+            abort(w);
+            return;
+         }
+         for (int h : w.lock.blockers(w))
+            if (h > w.txnum)
+               wound(h);
+         break;
+      default:
+         break;
+      }
+   }
+
+   /**
+    * Determines whether an older transaction waits for the
+    * specified one, which has got its lock after the older
+    * one started to wait (as an SLock may pass an upgrade).
+    */
+   private boolean olderWaitsFor(int txnum) {
+      for (Waiter o : waiting.values())
+         if (o.txnum < txnum && o.lock.blockers(o).contains(txnum))
+            return true;
+      return false;
+   }
+
+   private void detect(Waiter w) {
+      Deque<Integer> cycle = new ArrayDeque<>();
+      while (!w.aborted && reaches(w.txnum, w.txnum, new HashSet<>(), cycle)) {
+         int victim = Collections.max(cycle);
+         abort(waiting.get(victim));
+         cycle.clear();
+      }
+   }
+
+   /**
+    * Determines whether the target transaction can be reached
+    * from the specified transaction. If so, the transactions on
+    * the path are added to the cycle.
+    */
+   private boolean reaches(int txnum, int target, Set<Integer> visited, Deque<Integer> cycle) {
+      Waiter w = waiting.get(txnum);
+      if (w == null || w.granted || w.aborted)
+         return false;
+      for (int h : w.lock.blockers(w)) {
+         if (h == txnum)
+            continue;
+         if (h == target || (visited.add(h) && reaches(h, target, visited, cycle))) {
+            cycle.push(txnum);
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private void wound(int txnum) {
+      wounded.add(txnum);
+      Waiter w = waiting.get(txnum);
+      if (w != null)
+         abort(w);
+   }
+
+   private void abort(Waiter w) {
+      waiting.remove(w.txnum, w);
+      w.lock.abort(w);
+   }
+}
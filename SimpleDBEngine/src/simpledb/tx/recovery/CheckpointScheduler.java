@@ -0,0 +1,61 @@
+package simpledb.tx.recovery;
+
+import simpledb.buffer.BufferMgr;
+import simpledb.log.LogMgr;
+
+/**
+ * The background thread that takes fuzzy checkpoints.
+ * A checkpoint is taken when the interval has passed since
+ * the previous one, or when the specified number of bytes
+ * have been appended to the log since the previous one,
+ * whichever comes first. Either trigger can be disabled
+ * by setting it to 0.
+ * The thread is a daemon, so it does not keep the
+ * server process alive.
+ */
+public class CheckpointScheduler extends Thread {
+   private static final long CHECK_PERIOD = 100; // milliseconds
+   private LogMgr lm;
+   private BufferMgr bm;
+   private long interval, volume;
+
+   /**
+    * Creates the scheduler; call start() to run it.
+    * @param lm the log manager
+    * @param bm the buffer manager
+    * @param interval the time between checkpoints, in milliseconds (0 for no limit)
+    * @param volume the number of log bytes between checkpoints (0 for no limit)
+    */
+   public CheckpointScheduler(LogMgr lm, BufferMgr bm, long interval, long volume) {
+      super("checkpoint-scheduler");
+      this.lm = lm;
+      this.bm = bm;
+      this.interval = interval;
+      this.volume = volume;
+      setDaemon(true);
+   }
+
+   public void run() {
+      long lastTime = System.currentTimeMillis();
+      long lastBytes = lm.appendedBytes();
+      try {
+         while (!isInterrupted()) {
+            // the log volume is only checked every CHECK_PERIOD
+            long sleep = (volume > 0 || interval <= 0) ? CHECK_PERIOD
+                       : Math.max(1, lastTime + interval - System.currentTimeMillis());
+            Thread.sleep(sleep);
+            long now = System.currentTimeMillis();
+            long bytes = lm.appendedBytes();
+            if ((interval > 0 && now - lastTime >= interval)
+                  || (volume > 0 && bytes - lastBytes >= volume)) {
+               RecoveryMgr.checkpoint(lm, bm);
+               lastTime = now;
+               lastBytes = bytes;
+            }
+         }
+      }
+      catch (InterruptedException e) {
+         // the server is shutting down
+      }
+   }
+}
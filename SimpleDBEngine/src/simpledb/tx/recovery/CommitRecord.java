@@ -29,7 +29,6 @@ public class CommitRecord implements LogRecord {
     * contains no undo information.
     */
    public void undo(Transaction tx) {}
-   public void redo(Transaction tx) {}
 
    public String toString() {
       return "<COMMIT " + txnum + ">";
@@ -1,24 +1,45 @@
 package simpledb.tx.recovery;
 
+import simpledb.file.BlockId;
 import simpledb.file.Page;
 import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
-import java.util.Vector;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
- * The END CHECKPOINT log record.
+ * The END CHECKPOINT log record of a fuzzy checkpoint.
+ * It holds the active transaction table (each active
+ * transaction with the LSN of its START record), the dirty
+ * page table (each dirty block with its recovery LSN, the LSN
+ * of the first change not yet written to disk), and the redo LSN,
+ * the smallest of those LSNs and that of the START CHECKPOINT record.
+ * Recovery needs no log record before the redo LSN.
  * @author Edward Sciore
  */
 public class EndCheckpointRecord implements LogRecord {
-    Vector<Integer> activeTrans;
-    public EndCheckpointRecord(Page p) {
-        int tpos = Integer.BYTES;
-        activeTrans = new Vector<>();
-        int size = p.getInt(tpos);
-        for (int i = 0; i < size; i++) {
-            tpos += Integer.BYTES;
-            activeTrans.add(p.getInt(tpos));
+    private int redoLSN;
+    private Map<Integer,Integer> activeTxs = new LinkedHashMap<>();
+    private Map<BlockId,Integer> dirtyPages = new LinkedHashMap<>();
+
+    public EndCheckpointRecord(Page p, LogMgr lm) {
+        int pos = Integer.BYTES;
+        redoLSN = p.getInt(pos);
+        pos += Integer.BYTES;
+        int numtxs = p.getInt(pos);
+        pos += Integer.BYTES;
+        for (int i = 0; i < numtxs; i++) {
+            activeTxs.put(p.getInt(pos), p.getInt(pos + Integer.BYTES));
+            pos += 2 * Integer.BYTES;
+        }
+        int numblks = p.getInt(pos);
+        pos += Integer.BYTES;
+        for (int i = 0; i < numblks; i++) {
+            String filename = lm.fileName(p.getInt(pos));
+            BlockId blk = new BlockId(filename, p.getInt(pos + Integer.BYTES));
+            dirtyPages.put(blk, p.getInt(pos + 2 * Integer.BYTES));
+            pos += 3 * Integer.BYTES;
         }
     }
 
@@ -39,27 +60,71 @@ public class EndCheckpointRecord implements LogRecord {
      * contains no undo information.
      */
     public void undo(Transaction tx) {}
-    public void redo(Transaction tx) {}
+
+    /**
+     * Returns the LSN at which recovery must start.
+     * @return the redo LSN
+     */
+    public int redoLSN() {
+        return redoLSN;
+    }
+
+    public Map<Integer,Integer> activeTransactions() {
+        return activeTxs;
+    }
+
+    public Map<BlockId,Integer> dirtyPages() {
+        return dirtyPages;
+    }
 
     public String toString() {
-        return "<ENDCHECKPOINT "+ activeTrans.toString() + ">";
+        return "<ENDCHECKPOINT " + redoLSN + " " + activeTxs + " " + dirtyPages + ">";
     }
 
     /**
-     * A static method to write a checkpoint record to the log.
-     * This log record contains the CHECKPOINT operator,
-     * and nothing else.
+     * A static method to write an end checkpoint record to the log.
+     * This log record contains the ENDCHECKPOINT operator,
+     * the redo LSN, the active transaction table
+     * and the dirty page table, whose blocks are
+     * identified by file id and block number.
+     * Recovery relies only on the redo LSN, so if the tables
+     * do not fit in a log page, the dirty page table
+     * (and if need be the active transaction table) is left out.
      * @return the LSN of the last log value
      */
-    public static int writeToLog(LogMgr lm, Vector<Integer> activeTrans) {
-        byte[] rec = new byte[Integer.BYTES * (activeTrans.size() + 2)];
+    public static int writeToLog(LogMgr lm, int redoLSN, Map<Integer,Integer> activeTxs,
+                                 Map<BlockId,Integer> dirtyPages) {
+        int attsize = 2 * Integer.BYTES * activeTxs.size();
+        int dptsize = 3 * Integer.BYTES * dirtyPages.size();
+        int size = 4 * Integer.BYTES;
+        if (size + attsize + dptsize > lm.maxRecordSize())
+            dirtyPages = Map.of();
+        else
+            size += dptsize;
+        if (size + attsize > lm.maxRecordSize())
+            activeTxs = Map.of();
+        else
+            size += attsize;
+        byte[] rec = new byte[size];
         Page p = new Page(rec);
         p.setInt(0, ENDCHECKPOINT);
-        int tpos = Integer.BYTES;
-        p.setInt(tpos, activeTrans.size());
-        for (Integer txnum : activeTrans) {
-            tpos += Integer.BYTES;
-            p.setInt(tpos, txnum);
+        int pos = Integer.BYTES;
+        p.setInt(pos, redoLSN);
+        pos += Integer.BYTES;
+        p.setInt(pos, activeTxs.size());
+        pos += Integer.BYTES;
+        for (Map.Entry<Integer,Integer> e : activeTxs.entrySet()) {
+            p.setInt(pos, e.getKey());
+            p.setInt(pos + Integer.BYTES, e.getValue());
+            pos += 2 * Integer.BYTES;
+        }
+        p.setInt(pos, dirtyPages.size());
+        pos += Integer.BYTES;
+        for (Map.Entry<BlockId,Integer> e : dirtyPages.entrySet()) {
+            p.setInt(pos, lm.fileId(e.getKey().fileName()));
+            p.setInt(pos + Integer.BYTES, e.getKey().number());
+            p.setInt(pos + 2 * Integer.BYTES, e.getValue());
+            pos += 3 * Integer.BYTES;
         }
         return lm.append(rec);
     }
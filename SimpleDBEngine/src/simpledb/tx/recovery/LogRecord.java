@@ -1,6 +1,8 @@
 package simpledb.tx.recovery;
 
+import simpledb.file.BlockId;
 import simpledb.file.Page;
+import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
 /**
@@ -10,7 +12,8 @@ import simpledb.tx.Transaction;
 public interface LogRecord {
    static final int STARTCHECKPOINT = 0, START = 1,
          COMMIT = 2, ROLLBACK  = 3,
-         SETINT = 4, SETSTRING = 5, ENDCHECKPOINT = 6;
+         SETINT = 4, SETSTRING = 5, ENDCHECKPOINT = 6, SLOT = 7,
+         SETBYTES = 8;
 
    /**
     * Returns the log record's type.
@@ -28,19 +31,53 @@ public interface LogRecord {
    /**
     * Undoes the operation encoded by this log record.
     * The only log record types for which this method
-    * does anything interesting are SETINT and SETSTRING.
+    * does anything interesting are SETINT, SETSTRING, SLOT and SETBYTES.
     * @param txnum the id of the transaction that is performing the undo.
     */
    void undo(Transaction tx);
 
-   void redo(Transaction tx);
+   /**
+    * Reapplies the operation encoded by this log record
+    * to the page of the record's block, which the caller has pinned.
+    * The change is made directly on the page, without a transaction,
+    * so that the redo phase of recovery can replay the records
+    * of different blocks on different threads.
+    * Only SETINT, SETSTRING, SLOT and SETBYTES records do anything.
+    * @param p the contents of the record's block
+    */
+   default void redo(Page p) {}
+
+   /**
+    * Returns the block changed by the log record.
+    * Only SETINT, SETSTRING, SLOT and SETBYTES records change a block;
+    * the other records return null.
+    * @return the changed block, or null
+    */
+   default BlockId block() {
+      return null;
+   }
+
+   /**
+    * Writes a record to the log that describes the undo of this record,
+    * on behalf of the transaction that made the original change.
+    * The redo pass of recovery replays these records along with
+    * everything else, so a rolled-back change stays rolled back
+    * without its page having to be forced to disk.
+    * Records that have nothing to undo write nothing.
+    * @param lm the log manager
+    * @return the LSN of the new record, or -1 if none was written
+    */
+   default int writeUndoToLog(LogMgr lm) {
+      return -1;
+   }
 
    /**
     * Interpret the bytes returned by the log iterator.
     * @param bytes
+    * @param lm the log manager, which knows the name of each file id
     * @return
     */
-   static LogRecord createLogRecord(byte[] bytes) {
+   static LogRecord createLogRecord(byte[] bytes, LogMgr lm) {
       Page p = new Page(bytes);
       switch (p.getInt(0)) {
       case STARTCHECKPOINT:
@@ -52,11 +89,15 @@ public interface LogRecord {
       case ROLLBACK:
          return new RollbackRecord(p);
       case SETINT:
-         return new SetIntRecord(p);
+         return new SetIntRecord(p, lm);
       case SETSTRING:
-         return new SetStringRecord(p);
+         return new SetStringRecord(p, lm);
       case ENDCHECKPOINT:
-         return new EndCheckpointRecord(p);
+         return new EndCheckpointRecord(p, lm);
+      case SLOT:
+         return new SlotRecord(p, lm);
+      case SETBYTES:
+         return new SetBytesRecord(p, lm);
       default:
          return null;
       }
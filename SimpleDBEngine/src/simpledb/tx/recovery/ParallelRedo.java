@@ -0,0 +1,153 @@
+package simpledb.tx.recovery;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import simpledb.buffer.*;
+
+/**
+ * The redo phase of recovery, run by a pool of worker threads.
+ * The log records are partitioned by the block they change,
+ * and each worker replays the records of its partitions
+ * in the order it receives them, which is log order.
+ * The changes to a block are therefore reapplied in the order
+ * they were made, while changes to different blocks
+ * are reapplied in parallel.
+ * With a single thread, the records are replayed by the caller.
+ */
+class ParallelRedo {
+   private static final int QUEUE_SIZE = 1024;
+   private static final Redo DONE = new Redo(null, -1);
+   private BufferMgr bm;
+   private List<BlockingQueue<Redo>> queues = new ArrayList<>();
+   private Thread[] workers;
+   private AtomicReference<RuntimeException> failure = new AtomicReference<>();
+   private AtomicInteger skipped = new AtomicInteger();
+
+   /**
+    * Starts the worker threads.
+    * Each worker pins one buffer at a time, so there are
+    * never more workers than available buffers.
+    * @param bm the buffer manager
+    * @param numthreads the number of worker threads
+    */
+   ParallelRedo(BufferMgr bm, int numthreads) {
+      this.bm = bm;
+      int n = Math.min(numthreads, bm.available());
+      if (n <= 1)
+         n = 0;
+      workers = new Thread[n];
+      for (int i=0; i<n; i++) {
+         BlockingQueue<Redo> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+         queues.add(queue);
+         workers[i] = new Thread(() -> work(queue), "redo-" + i);
+         workers[i].start();
+      }
+   }
+
+   /**
+    * Replays the specified log record, or hands it
+    * to the worker responsible for the record's block.
+    * Records that change no block are ignored.
+    * @param rec the log record
+    * @param lsn the LSN of the log record
+    */
+   void redo(LogRecord rec, int lsn) {
+      if (rec.block() == null)
+         return;
+      if (workers.length == 0) {
+         apply(rec, lsn);
+         return;
+      }
+      int i = Math.floorMod(rec.block().hashCode(), workers.length);
+      put(queues.get(i), new Redo(rec, lsn));
+   }
+
+   /**
+    * Waits for the workers to replay the records they
+    * have been given, and then stops them.
+    * A failure in any worker is rethrown here.
+    */
+   void finish() {
+      for (BlockingQueue<Redo> queue : queues)
+         put(queue, DONE);
+      for (Thread worker : workers) {
+         try {
+            worker.join();
+         }
+         catch (InterruptedException e) {
+            throw new RuntimeException("recovery interrupted");
+         }
+      }
+      if (failure.get() != null)
+         throw failure.get();
+   }
+
+   /**
+    * Returns the number of records that were not replayed
+    * because their page already contained the change.
+    * @return the number of skipped records
+    */
+   int skipped() {
+      return skipped.get();
+   }
+
+   /**
+    * Reapplies the change to the block's page, unless the
+    * page LSN shows that the page already contains it.
+    * The buffer is marked modified at the record's LSN,
+    * so that its recovery LSN is known to the next checkpoint.
+    */
+   private void apply(LogRecord rec, int lsn) {
+      Buffer buff = bm.pin(rec.block());
+      if (lsn > buff.pageLSN()) {
+         rec.redo(buff.contents());
+         buff.setModified(rec.txNumber(), lsn);
+      }
+      else
+         skipped.incrementAndGet();
+      bm.unpin(buff);
+   }
+
+   /**
+    * The body of a worker thread.
+    * After a failure the worker keeps taking records,
+    * without replaying them, so that the caller never blocks.
+    */
+   private void work(BlockingQueue<Redo> queue) {
+      try {
+         for (Redo r = queue.take(); r != DONE; r = queue.take()) {
+            if (failure.get() != null)
+               continue;
+            try {
+               apply(r.rec, r.lsn);
+            }
+            catch (RuntimeException e) {
+               failure.compareAndSet(null, e);
+            }
+         }
+      }
+      catch (InterruptedException e) {
+         failure.compareAndSet(null, new RuntimeException("recovery interrupted"));
+      }
+   }
+
+   private void put(BlockingQueue<Redo> queue, Redo r) {
+      try {
+         queue.put(r);
+      }
+      catch (InterruptedException e) {
+         throw new RuntimeException("recovery interrupted");
+      }
+   }
+
+   private static class Redo {
+      LogRecord rec;
+      int lsn;
+
+      Redo(LogRecord rec, int lsn) {
+         this.rec = rec;
+         this.lsn = lsn;
+      }
+   }
+}
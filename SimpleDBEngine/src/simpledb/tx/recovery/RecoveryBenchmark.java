@@ -0,0 +1,100 @@
+package simpledb.tx.recovery;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+import simpledb.buffer.*;
+import simpledb.tx.Transaction;
+
+/**
+ * Measures restart time for different numbers of redo threads.
+ * The log of a crashed database is built by writing the records
+ * of many small transactions directly to the log, without
+ * changing any data page, as if the server had crashed before
+ * writing its buffers; the last transaction does not commit.
+ * Each run recovers a fresh copy of that database and then
+ * checks that every value is the last committed one.
+ */
+public class RecoveryBenchmark {
+   private static final int[] THREAD_COUNTS = {1, 2, 4, 8};
+   private static final int NUMBLOCKS = 2000;
+   private static final int NUMTXS = 20000;
+   private static final int CHANGES_PER_TX = 10;
+   private static final int BLOCKSIZE = 400;
+   private static final int BUFFERS = 64;
+   private static final String FILENAME = "benchfile";
+
+   public static void main(String[] args) throws IOException {
+      File crashed = new File("recoverybenchmark");
+      int[][] expected = crash(crashed);
+      for (int numthreads : THREAD_COUNTS) {
+         File dir = new File("recoverybenchmark" + numthreads);
+         copy(crashed, dir);
+         SimpleDB db = new SimpleDB(dir.getName(), BLOCKSIZE, BUFFERS);
+         RecoveryMgr.REDO_THREADS = numthreads;
+         long start = System.nanoTime();
+         Transaction tx = db.newTx();
+         tx.recover();
+         tx.commit();
+         double secs = (System.nanoTime() - start) / 1e9;
+         System.out.printf("%d redo thread(s): recovery took %6.3f sec, values %s%n",
+                           numthreads, secs, check(db.bufferMgr(), expected) ? "ok" : "WRONG");
+      }
+   }
+
+   /**
+    * Creates the database and logs the transactions.
+    * Each transaction sets a few random slots to its number.
+    * @return the value each slot should have after recovery
+    */
+   private static int[][] crash(File dir) {
+      int slots = (BLOCKSIZE - Buffer.PAGE_LSN_SIZE) / Integer.BYTES;
+      int[][] expected = new int[NUMBLOCKS][slots];
+      SimpleDB db = new SimpleDB(dir.getName(), BLOCKSIZE, BUFFERS);
+      FileMgr fm = db.fileMgr();
+      LogMgr lm = db.logMgr();
+      for (int b=0; b<NUMBLOCKS; b++)
+         fm.append(FILENAME);
+      Random rand = new Random(448);
+      int lsn = 0;
+      for (int txnum=1; txnum<=NUMTXS; txnum++) {
+         StartRecord.writeToLog(lm, txnum);
+         for (int i=0; i<CHANGES_PER_TX; i++) {
+            int b = rand.nextInt(NUMBLOCKS);
+            int slot = rand.nextInt(slots);
+            lsn = SetIntRecord.writeToLog(lm, txnum, new BlockId(FILENAME, b),
+                                          slot * Integer.BYTES, expected[b][slot], txnum);
+            if (txnum < NUMTXS)
+               expected[b][slot] = txnum;
+         }
+         if (txnum < NUMTXS)
+            lsn = CommitRecord.writeToLog(lm, txnum);
+      }
+      lm.flush(lsn);
+      return expected;
+   }
+
+   private static boolean check(BufferMgr bm, int[][] expected) {
+      for (int b=0; b<NUMBLOCKS; b++) {
+         Buffer buff = bm.pin(new BlockId(FILENAME, b));
+         for (int slot=0; slot<expected[b].length; slot++)
+            if (buff.contents().getInt(slot * Integer.BYTES) != expected[b][slot])
+               return false;
+         bm.unpin(buff);
+      }
+      return true;
+   }
+
+   private static void copy(File from, File to) throws IOException {
+      if (to.exists())
+         for (File f : to.listFiles())
+            f.delete();
+      to.mkdirs();
+      for (File f : from.listFiles())
+         Files.copy(f.toPath(), new File(to, f.getName()).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+   }
+}
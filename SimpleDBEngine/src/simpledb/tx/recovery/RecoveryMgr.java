@@ -1,6 +1,7 @@
 package simpledb.tx.recovery;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import simpledb.file.*;
 import simpledb.log.*;
@@ -19,9 +20,23 @@ public class RecoveryMgr {
     private BufferMgr bm;
     private Transaction tx;
     private int txnum;
+    // the LSNs of the transaction's change records, oldest first
+    private List<Integer> chain = new ArrayList<>();
+    // the bytes of the first of those records, up to UNDO_BUFFER_SIZE
+    private List<byte[]> undoBuffer = new ArrayList<>();
+    private int undoBufferBytes = 0;
     public static int undos = 0;
     public static int redos = 0;
+    public static int skippedRedos = 0; // redos not needed, according to the page LSN
     public static boolean DEBUG_MODE = false;
+    // the number of threads that replay the log during recovery
+    public static int REDO_THREADS = Runtime.getRuntime().availableProcessors();
+    // the bytes of undo records a transaction keeps in memory
+    public static int UNDO_BUFFER_SIZE = 64 * 1024;
+    // the active transaction table: the LSN of each active transaction's START record
+    private static Map<Integer,Integer> activeTxs = new ConcurrentHashMap<>();
+    private static int checkpointStartLSN = -1;
+    private static int previousStartLSN = 0;
 
     /**
      * Create a recovery manager for the specified transaction.
@@ -33,7 +48,8 @@ public class RecoveryMgr {
         this.txnum = txnum;
         this.lm = lm;
         this.bm = bm;
-        StartRecord.writeToLog(lm, txnum);
+        int lsn = StartRecord.writeToLog(lm, txnum);
+        activeTxs.put(txnum, lsn);
     }
 
     /**
@@ -42,59 +58,92 @@ public class RecoveryMgr {
     public void commit() {
         int lsn = CommitRecord.writeToLog(lm, txnum);
         lm.flush(lsn);
+        activeTxs.remove(txnum);
     }
 
     /**
-     * Write a rollback record to the log and flush it to disk.
+     * Undo the transaction's changes, then write a rollback
+     * record to the log and flush it to disk.
+     * The undone pages are not forced: each undo is itself
+     * logged, so the log alone makes the rollback durable.
      */
     public void rollback() {
         doRollback();
-        bm.flushAll(txnum);
         int lsn = RollbackRecord.writeToLog(lm, txnum);
         lm.flush(lsn);
+        activeTxs.remove(txnum);
     }
 
     /**
-     * Recover uncompleted transactions from the log
-     * and then write a quiescent checkpoint record to the log and flush it.
+     * Recover uncompleted transactions from the log,
+     * write the recovered pages to disk,
+     * and then take a checkpoint.
      */
     public void recover() {
         doRecover();
         bm.flushAll();
+        checkpoint(lm, bm);
     }
 
+    /**
+     * Begin a fuzzy checkpoint by writing a START CHECKPOINT record.
+     * @return the transactions active when the checkpoint began
+     */
     public Vector<Integer> start() {
         Vector<Integer> active = Transaction.getActiveTransCopy();
-        int lsn = StartCheckpointRecord.writeToLog(lm);
-        lm.flush(lsn);
+        startCheckpoint(lm);
         return active;
     }
 
+    /**
+     * Complete a fuzzy checkpoint begun by start().
+     * Unlike a quiescent checkpoint, it neither waits for the
+     * active transactions to finish nor flushes any buffers.
+     * @param active the transactions active when the checkpoint began (unused)
+     */
     public void end(Vector<Integer> active) {
-        while (wait(active)) {
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
-        long time = System.nanoTime();
-        for (Integer tx: active) {
-            bm.flushAll(tx);
-        }
-        int lsn = EndCheckpointRecord.writeToLog(lm, Transaction.completedTrans);
-        lm.flush(lsn);
-        System.out.println("Checkpoint Time: " + (System.nanoTime() - time));
+        endCheckpoint(lm, bm);
+    }
+
+    /**
+     * Take a fuzzy (ARIES-style) checkpoint.
+     * The END CHECKPOINT record holds the active transaction table
+     * and the dirty page table, and the redo LSN computed from them:
+     * the LSN of the oldest record that recovery may need, either to
+     * redo a change that is not yet on disk or to undo an active
+     * transaction. The log before the redo LSN is then truncated.
+     * The checkpoint does not wait for any transaction.
+     * The only buffers it writes are the unpinned ones that
+     * have been dirty since before the previous checkpoint, so that
+     * a page that never leaves the pool does not hold back the redo LSN.
+     * @param lm the log manager
+     * @param bm the buffer manager
+     */
+    public static synchronized void checkpoint(LogMgr lm, BufferMgr bm) {
+        startCheckpoint(lm);
+        endCheckpoint(lm, bm);
     }
 
-    public boolean wait(Collection<Integer> active) {
-        int count = 0;
-        if (Transaction.activeTrans.contains(txnum))
-            count++;
-        for (Integer i : active)
-            if (!Transaction.activeTrans.contains(i))
-                count++;
-        return count != active.size();
+    private static synchronized void startCheckpoint(LogMgr lm) {
+        checkpointStartLSN = StartCheckpointRecord.writeToLog(lm);
+    }
+
+    private static synchronized void endCheckpoint(LogMgr lm, BufferMgr bm) {
+        if (checkpointStartLSN < 0)
+            startCheckpoint(lm);
+        bm.flushOlderThan(previousStartLSN);
+        Map<Integer,Integer> att = new TreeMap<>(activeTxs);
+        Map<BlockId,Integer> dpt = bm.dirtyPages();
+        int redoLSN = checkpointStartLSN;
+        for (int lsn : att.values())
+            redoLSN = Math.min(redoLSN, lsn);
+        for (int lsn : dpt.values())
+            redoLSN = Math.min(redoLSN, lsn);
+        int lsn = EndCheckpointRecord.writeToLog(lm, redoLSN, att, dpt);
+        lm.flush(lsn);
+        lm.truncate(redoLSN);
+        previousStartLSN = checkpointStartLSN;
+        checkpointStartLSN = -1;
     }
 
     /**
@@ -107,7 +156,7 @@ public class RecoveryMgr {
     public int setInt(Buffer buff, int offset, int newval) {
         int oldval = buff.contents().getInt(offset);
         BlockId blk = buff.block();
-        return SetIntRecord.writeToLog(lm, txnum, blk, offset, oldval, newval);
+        return append(SetIntRecord.toBytes(lm, txnum, blk, offset, oldval, newval));
     }
 
     /**
@@ -120,107 +169,211 @@ public class RecoveryMgr {
     public int setString(Buffer buff, int offset, String newval) {
         String oldval = buff.contents().getString(offset);
         BlockId blk = buff.block();
-        return SetStringRecord.writeToLog(lm, txnum, blk, offset, oldval, newval);
+        return append(SetStringRecord.toBytes(lm, txnum, blk, offset, oldval, newval));
+    }
+
+    /**
+     * Write a setbytes record to the log and return its lsn.
+     *
+     * @param buff   the buffer containing the page
+     * @param offset the offset of the bytes in the page
+     * @param newval the bytes to be written
+     */
+    public int setBytes(Buffer buff, int offset, byte[] newval) {
+        byte[] oldval = buff.contents().getRawBytes(offset, newval.length);
+        BlockId blk = buff.block();
+        return append(SetBytesRecord.toBytes(lm, txnum, blk, offset, oldval, newval));
+    }
+
+    /**
+     * Write a slot record to the log and return its lsn.
+     * The record holds the new contents of the whole slot.
+     *
+     * @param buff     the buffer containing the page
+     * @param offset   the offset of the slot in the page
+     * @param oldflag  the flag the slot had before the insertion
+     * @param slotsize the size of the slot
+     */
+    public int setSlot(Buffer buff, int offset, int oldflag, int slotsize) {
+        byte[] image = buff.contents().getRawBytes(offset, slotsize);
+        return append(SlotRecord.toBytes(lm, txnum, buff.block(), offset, oldflag, image));
+    }
+
+    /**
+     * Append a change record of the transaction to the log,
+     * and add it to the transaction's undo chain.
+     * The record itself is kept in memory while the undo
+     * buffer has room; otherwise only its LSN is kept.
+     */
+    private int append(byte[] rec) {
+        int lsn = lm.append(rec);
+        chain.add(lsn);
+        if (undoBuffer.size() == chain.size() - 1
+                && undoBufferBytes + rec.length <= UNDO_BUFFER_SIZE) {
+            undoBuffer.add(rec);
+            undoBufferBytes += rec.length;
+        }
+        return lsn;
+    }
+
+    /**
+     * Return the most bytes that a setbytes record can change.
+     */
+    public int maxSetBytes() {
+        return SetBytesRecord.maxLength(lm.maxRecordSize());
     }
 
     /**
-     * Rollback the transaction, by iterating
-     * through the log records until it finds
-     * the transaction's START record,
-     * calling undo() for each of the transaction's
-     * log records.
+     * Return true if a slot of the specified size
+     * fits in a slot record.
+     *
+     * @param slotsize the size of the slot
+     */
+    public boolean fitsSlotRecord(int slotsize) {
+        return SlotRecord.size(slotsize) <= lm.maxRecordSize();
+    }
+
+    /**
+     * Rollback the transaction, by following its undo chain
+     * from the newest record to the oldest,
+     * calling undo() for each of the records.
+     * The records in the undo buffer are not read from the log;
+     * the others are read by LSN. Either way, the log records
+     * of other transactions are not read.
      */
     private void doRollback() {
-        Iterator<byte[]> iter = lm.iterator();
-        while (iter.hasNext()) {
-            byte[] bytes = iter.next();
-            LogRecord rec = LogRecord.createLogRecord(bytes);
-            if (rec.txNumber() == txnum) {
-                if (rec.op() == START)
-                    return;
-                rec.undo(tx);
-            }
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            byte[] bytes = (i < undoBuffer.size()) ? undoBuffer.get(i) : lm.record(chain.get(i));
+            undo(LogRecord.createLogRecord(bytes, lm));
         }
+        chain.clear();
+        undoBuffer.clear();
+        undoBufferBytes = 0;
+    }
+
+    /**
+     * Undo the change described by the specified log record,
+     * first logging the undo on behalf of the record's transaction.
+     * The undo itself is not logged by the transaction doing it,
+     * which during recovery is not the one that made the change.
+     * The buffer is marked as modified at the LSN of the logged
+     * undo, so that it is not written before that record is on disk,
+     * and so that it appears in the dirty page table of a checkpoint.
+     */
+    private void undo(LogRecord rec) {
+        int lsn = rec.writeUndoToLog(lm);
+        if (lsn < 0) {
+            rec.undo(tx);
+            return;
+        }
+        Buffer buff = bm.pin(rec.block());
+        buff.setModified(txnum, lsn);
+        rec.undo(tx);
+        bm.unpin(buff);
     }
 
     /**
      * Do a complete database recovery.
-     * The method iterates through the log records.
-     * Whenever it finds a log record for an unfinished
-     * transaction, it calls undo() on that record.
-     * The method stops when it encounters a CHECKPOINT record
-     * or the end of the log.
+     * The method reads the log backwards to the most recent
+     * END CHECKPOINT record, to get its redo LSN (or uses the
+     * start of the log, if there is no checkpoint).
+     * It then reads the log forwards from there in a single pass.
+     * Each change is handed to the parallel redo workers,
+     * and is also added to the undo chain of its transaction;
+     * the chain is dropped when the transaction's COMMIT or
+     * ROLLBACK record is reached. The chains that are left belong
+     * to the transactions that had not completed, and their
+     * changes are undone, newest first, without reading the log again.
+     * The transaction doing the recovery has only written its
+     * START record, and gets no chain.
+     * <p>
+     * Transaction numbers start again at every run of the server,
+     * so a number can appear in the log for several transactions.
+     * Within a run, a transaction's START record precedes its other
+     * records, so a START record for a number that still has a
+     * chain ends that chain: it belongs to a transaction of an
+     * earlier run that never completed, and its changes are undone
+     * with those of the transactions left at the end of the log.
      */
     private void doRecover() {
         long time = System.nanoTime();
-        // t1 t2 C t3 e1 e2 EC e3
-        //finding transactions after checkpoint
-        ArrayList<LogRecord> logList = new ArrayList<>();
-        Iterator<byte[]> iter = lm.iterator();
-        while (iter.hasNext()) {
-            byte[] bytes = iter.next();
-            LogRecord rec = LogRecord.createLogRecord(bytes);
-            logList.add(rec);
-            if (rec.op() == ENDCHECKPOINT) {
-                // Find END checkpoint
-                while (iter.hasNext()){
-                    bytes = iter.next();
-                    rec = LogRecord.createLogRecord(bytes);
-                    logList.add(rec);
-                    if (rec.op() == STARTCHECKPOINT){
-                        break;
-                    } // Find corresponding START checkpoint
+        Map<Integer,TreeMap<Integer,LogRecord>> chains = new LinkedHashMap<>();
+        TreeMap<Integer,LogRecord> undoList = new TreeMap<>();
+        Set<Integer> losers = new LinkedHashSet<>();
+        ParallelRedo redo = new ParallelRedo(bm, REDO_THREADS);
+        ForwardLogIterator iter = lm.forwardIterator(redoStart());
+        try {
+            while (iter.hasNext()) {
+                LogRecord rec = LogRecord.createLogRecord(iter.next(), lm);
+                int lsn = iter.lsn();
+                if (rec.op() == START) {
+                    TreeMap<Integer,LogRecord> earlier = chains.remove(rec.txNumber());
+                    if (earlier != null) { // left by an earlier run of the server
+                        undoList.putAll(earlier);
+                        losers.add(rec.txNumber());
+                    }
+                    if (rec.txNumber() != txnum) // not the recovering transaction
+                        chains.put(rec.txNumber(), new TreeMap<>());
                 }
-                break;
+                else if (rec.op() == COMMIT || rec.op() == ROLLBACK)
+                    chains.remove(rec.txNumber());
+                else if (rec.block() != null)
+                    chains.computeIfAbsent(rec.txNumber(), t -> new TreeMap<>()).put(lsn, rec);
+                if (DEBUG_MODE)
+                    System.out.println("Redo: " + rec);
+                redo.redo(rec, lsn);
+                redos++;
             }
         }
-        //redo phase
-        Collections.reverse(logList);
-        Collection<Integer> undoList = new ArrayList<>();
-        for (int i = 0; i < logList.size(); i++) {
-            LogRecord record = logList.get(i);
-            if (record.op() == START) {
-                undoList.add(record.txNumber());
-            } else if (record.op() == COMMIT || record.op() == ROLLBACK) {
-                undoList.remove(record.txNumber());
-            }
-            if (DEBUG_MODE)
-                System.out.println("Redo: " + record);
-            record.redo(tx);
-            redos++;
+        finally {
+            redo.finish();
         }
+        skippedRedos += redo.skipped();
         //undo phase
-        iter = lm.iterator();
-        while (iter.hasNext()) {
-            byte[] bytes = iter.next();
-            LogRecord rec = LogRecord.createLogRecord(bytes);
-            if (undoList.isEmpty()) {
-                break;
-            } else if (undoList.contains(rec.txNumber()) && (rec.op() == SETSTRING || rec.op() == SETINT)) {
-                if (DEBUG_MODE)
-                    System.out.println("Undo: " + rec);
-                rec.undo(tx);
-                undos++;
-            } else if (undoList.contains(rec.txNumber()) && rec.op() == START) {
-                undoList.remove(rec.txNumber());
-                int lsn = RollbackRecord.writeToLog(lm, txnum);
-                lm.flush(lsn);
-            }
+        for (Map.Entry<Integer,TreeMap<Integer,LogRecord>> e : chains.entrySet()) {
+            undoList.putAll(e.getValue());
+            losers.add(e.getKey());
+        }
+        for (LogRecord rec : undoList.descendingMap().values()) {
+            if (DEBUG_MODE)
+                System.out.println("Undo: " + rec);
+            undo(rec);
+            undos++;
         }
+        int lsn = -1;
+        for (int txnum : losers)
+            lsn = RollbackRecord.writeToLog(lm, txnum);
+        if (lsn >= 0)
+            lm.flush(lsn);
         if (DEBUG_MODE) {
             System.out.println("Undos: " + RecoveryMgr.undos);
             System.out.println("Redos: " + RecoveryMgr.redos);
+            System.out.println("Skipped redos: " + RecoveryMgr.skippedRedos);
         }
         System.out.println("Recovery Time:  " + (System.nanoTime() - time));
     }
 
+    /**
+     * Returns the redo LSN of the most recent checkpoint,
+     * or the LSN of the first record in the log if there is none.
+     */
+    private int redoStart() {
+        LogIterator iter = lm.iterator();
+        while (iter.hasNext()) {
+            LogRecord rec = LogRecord.createLogRecord(iter.next(), lm);
+            if (rec.op() == ENDCHECKPOINT)
+                return ((EndCheckpointRecord) rec).redoLSN();
+        }
+        return lm.oldestNeededLSN();
+    }
+
     public String getLog() {
 
         Iterator<byte[]> iter = lm.iterator();
         String list = "";
         while (iter.hasNext()) {
             byte[] bytes = iter.next();
-            LogRecord rec = LogRecord.createLogRecord(bytes);
+            LogRecord rec = LogRecord.createLogRecord(bytes, lm);
             switch (rec.op()) {
                 case STARTCHECKPOINT:
                     list += "START CHECKPOINT -" + rec + "\n";
@@ -240,6 +393,12 @@ public class RecoveryMgr {
                 case SETSTRING:
                     list += "SETSTRING -" + rec + "\n";
                     break;
+                case SLOT:
+                    list += "SLOT -" + rec + "\n";
+                    break;
+                case SETBYTES:
+                    list += "SETBYTES -" + rec + "\n";
+                    break;
                 case ENDCHECKPOINT:
                     list += "END CHECKPOINT -" + rec + "\n";
                     break;
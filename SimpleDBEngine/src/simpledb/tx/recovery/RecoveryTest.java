@@ -87,6 +87,7 @@ public class RecoveryTest {
             recover();
             System.out.println("Undos with Checkpoint: " + RecoveryMgr.undos);
             System.out.println("Redos with Checkpoint: " + RecoveryMgr.redos);
+            System.out.println("Skipped redos with Checkpoint: " + RecoveryMgr.skippedRedos);
             System.out.println("Number of Flushes: " + Buffer.numFlushes);
         }
     }
@@ -115,6 +116,7 @@ public class RecoveryTest {
             recover();
             System.out.println("Undos with Checkpoint: " + RecoveryMgr.undos);
             System.out.println("Redos with Checkpoint: " + RecoveryMgr.redos);
+            System.out.println("Skipped redos with Checkpoint: " + RecoveryMgr.skippedRedos);
             System.out.println("Number of Flushes: " + Buffer.numFlushes);
         }
     }
@@ -133,6 +135,7 @@ public class RecoveryTest {
             recover();
             System.out.println("Undos with Checkpoint: " + RecoveryMgr.undos);
             System.out.println("Redos with Checkpoint: " + RecoveryMgr.redos);
+            System.out.println("Skipped redos with Checkpoint: " + RecoveryMgr.skippedRedos);
         }
     }
 
@@ -198,6 +201,7 @@ public class RecoveryTest {
             recover();
             System.out.println("Undos with Checkpoint: " + RecoveryMgr.undos);
             System.out.println("Redos with Checkpoint: " + RecoveryMgr.redos);
+            System.out.println("Skipped redos with Checkpoint: " + RecoveryMgr.skippedRedos);
             System.out.println("Number of Flushes: " + Buffer.numFlushes);
         }
     }
@@ -0,0 +1,53 @@
+package simpledb.tx.recovery;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.BlockId;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * Measures the latency of rolling back a short transaction
+ * as the log written by other transactions grows.
+ * The transaction changes a few values, then the records
+ * of other transactions are appended to the log, and then
+ * the transaction rolls back. The rollback is also checked.
+ * It is measured with the default undo buffer, and with no
+ * undo buffer, when the records are read from the log by LSN.
+ */
+public class RollbackBenchmark {
+   private static final int[] OTHER_RECORDS = {0, 10000, 100000, 1000000};
+   private static final int CHANGES = 10;
+   private static final int[] UNDO_BUFFER_SIZES = {RecoveryMgr.UNDO_BUFFER_SIZE, 0};
+
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("rollbackbenchmark", 400, 16);
+      LogMgr lm = db.logMgr();
+      BlockId blk = new BlockId("benchfile", 0);
+      BlockId other = new BlockId("otherfile", 0);
+      db.fileMgr().append(blk.fileName());
+      for (int bufsize : UNDO_BUFFER_SIZES) {
+         RecoveryMgr.UNDO_BUFFER_SIZE = bufsize;
+         for (int volume : OTHER_RECORDS) {
+            Transaction tx = db.newTx();
+            tx.pin(blk);
+            for (int i=0; i<CHANGES; i++)
+               tx.setInt(blk, i * Integer.BYTES, volume + i, true);
+            for (int i=0; i<volume; i++)
+               SetIntRecord.writeToLog(lm, -2, other, 0, i, i + 1);
+            long start = System.nanoTime();
+            tx.rollback();
+            double ms = (System.nanoTime() - start) / 1e6;
+
+            tx = db.newTx();
+            tx.pin(blk);
+            boolean ok = true;
+            for (int i=0; i<CHANGES; i++)
+               ok &= tx.getInt(blk, i * Integer.BYTES) == 0;
+            tx.commit();
+            System.out.printf("undo buffer %6d bytes, %,9d other log records: "
+                              + "rollback took %8.3f ms, values %s%n",
+                              bufsize, volume, ms, ok ? "ok" : "WRONG");
+         }
+      }
+   }
+}
@@ -33,7 +33,6 @@ public class RollbackRecord implements LogRecord {
     * contains no undo information.
     */
    public void undo(Transaction tx) {}
-   public void redo(Transaction tx) {}
 
    public String toString() {
       return "<ROLLBACK " + txnum + ">";
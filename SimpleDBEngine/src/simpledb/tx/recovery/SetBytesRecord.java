@@ -0,0 +1,122 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * The log record of a change to a range of bytes of a block,
+ * which holds the bytes of the range before and after the change.
+ * Unlike a setint or setstring record, it does not assume
+ * that the range held a value of some type before the change,
+ * so it can log the writes to bytes that were free space.
+ */
+public class SetBytesRecord implements LogRecord {
+   private int txnum, offset;
+   private byte[] val, newval;
+   private BlockId blk;
+
+   /**
+    * Create a new setbytes log record.
+    * @param p the page containing the log values
+    * @param lm the log manager, which knows the name of each file id
+    */
+   public SetBytesRecord(Page p, LogMgr lm) {
+      int tpos = Integer.BYTES;
+      txnum = p.getInt(tpos);
+      int fpos = tpos + Integer.BYTES;
+      String filename = lm.fileName(p.getInt(fpos));
+      int bpos = fpos + Integer.BYTES;
+      blk = new BlockId(filename, p.getInt(bpos));
+      int opos = bpos + Integer.BYTES;
+      offset = p.getInt(opos);
+      int vpos = opos + Integer.BYTES;
+      val = p.getBytes(vpos);
+      int nvpos = vpos + Integer.BYTES + val.length;
+      newval = p.getBytes(nvpos);
+   }
+
+   public int op() {
+      return SETBYTES;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
+   public String toString() {
+      return "<SETBYTES " + txnum + " " + blk + " " + offset + " " + val.length + " bytes>";
+   }
+
+   /**
+    * Restores the bytes saved in the log record.
+    * The method pins a buffer to the specified block,
+    * calls setBytes to restore the saved bytes,
+    * and unpins the buffer.
+    */
+   public void undo(Transaction tx) {
+      tx.pin(blk);
+      tx.setBytes(blk, offset, val, false); // don't log the undo!
+      tx.unpin(blk);
+   }
+
+   public void redo(Page p) {
+      p.setRawBytes(offset, newval);
+   }
+
+   /**
+    * Logs the undo of this record as a setbytes record
+    * of the same transaction that restores the old bytes.
+    */
+   public int writeUndoToLog(LogMgr lm) {
+      return writeToLog(lm, txnum, blk, offset, newval, val);
+   }
+
+   /**
+    * Returns the most bytes that a setbytes record can change,
+    * for log records of the specified size.
+    * @param maxRecordSize the size of the largest log record
+    * @return the most bytes that a record can change
+    */
+   public static int maxLength(int maxRecordSize) {
+      return (maxRecordSize - 7 * Integer.BYTES) / 2;
+   }
+
+   /**
+    * A static method to write a setbytes record to the log.
+    * This log record contains the SETBYTES operator,
+    * followed by the transaction id, the file id and number
+    * of the modified block, the offset, and the previous
+    * and new bytes at that offset.
+    * @return the LSN of the last log value
+    */
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, byte[] val, byte[] newval) {
+      return lm.append(toBytes(lm, txnum, blk, offset, val, newval));
+   }
+
+   /**
+    * Returns the bytes of a setbytes record, as written by writeToLog.
+    */
+   static byte[] toBytes(LogMgr lm, int txnum, BlockId blk, int offset, byte[] val, byte[] newval) {
+      int tpos = Integer.BYTES;
+      int fpos = tpos + Integer.BYTES;
+      int bpos = fpos + Integer.BYTES;
+      int opos = bpos + Integer.BYTES;
+      int vpos = opos + Integer.BYTES;
+      int nvpos = vpos + Integer.BYTES + val.length;
+      byte[] rec = new byte[nvpos + Integer.BYTES + newval.length];
+      Page p = new Page(rec);
+      p.setInt(0, SETBYTES);
+      p.setInt(tpos, txnum);
+      p.setInt(fpos, lm.fileId(blk.fileName()));
+      p.setInt(bpos, blk.number());
+      p.setInt(opos, offset);
+      p.setBytes(vpos, val);
+      p.setBytes(nvpos, newval);
+      return rec;
+   }
+}
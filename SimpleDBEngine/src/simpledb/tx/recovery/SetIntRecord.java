@@ -10,14 +10,15 @@ public class SetIntRecord implements LogRecord {
 
    /**
     * Create a new setint log record.
-    * @param bb the bytebuffer containing the log values
+    * @param p the page containing the log values
+    * @param lm the log manager, which knows the name of each file id
     */
-   public SetIntRecord(Page p) {
+   public SetIntRecord(Page p, LogMgr lm) {
       int tpos = Integer.BYTES;
       txnum = p.getInt(tpos);
       int fpos = tpos + Integer.BYTES;
-      String filename = p.getString(fpos);
-      int bpos = fpos + Page.maxLength(filename.length());
+      String filename = lm.fileName(p.getInt(fpos));
+      int bpos = fpos + Integer.BYTES;
       int blknum = p.getInt(bpos);
       blk = new BlockId(filename, blknum);
       int opos = bpos + Integer.BYTES;
@@ -36,6 +37,10 @@ public class SetIntRecord implements LogRecord {
       return txnum;
    }
 
+   public BlockId block() {
+      return blk;
+   }
+
    public String toString() {
       return "<SETINT " + txnum + " " + blk + " " + offset + " " + val + " " + newval + ">";
    }
@@ -53,23 +58,37 @@ public class SetIntRecord implements LogRecord {
       tx.unpin(blk);
    }
 
-   public void redo(Transaction tx) {tx.pin(blk);
-      tx.setInt(blk, offset, newval, false); // don't log the undo!
-      tx.unpin(blk);
+   public void redo(Page p) {
+      p.setInt(offset, newval);
+   }
+
+   /**
+    * Logs the undo of this record as a setint record
+    * of the same transaction that restores the old value.
+    */
+   public int writeUndoToLog(LogMgr lm) {
+      return writeToLog(lm, txnum, blk, offset, newval, val);
    }
 
    /**
     * A static method to write a setInt record to the log.
     * This log record contains the SETINT operator,
-    * followed by the transaction id, the filename, number,
-    * and offset of the modified block, and the previous
-    * integer value at that offset.
+    * followed by the transaction id, the file id (from
+    * the log's file dictionary) and number of the modified block,
+    * the offset, and the previous and new integer values at that offset.
     * @return the LSN of the last log value
     */
    public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, int val, int newval) {
+      return lm.append(toBytes(lm, txnum, blk, offset, val, newval));
+   }
+
+   /**
+    * Returns the bytes of a setint record, as written by writeToLog.
+    */
+   static byte[] toBytes(LogMgr lm, int txnum, BlockId blk, int offset, int val, int newval) {
       int tpos = Integer.BYTES;
       int fpos = tpos + Integer.BYTES;
-      int bpos = fpos + Page.maxLength(blk.fileName().length());
+      int bpos = fpos + Integer.BYTES;
       int opos = bpos + Integer.BYTES;
       int vpos = opos + Integer.BYTES;
       int nvpos = vpos + Integer.BYTES;
@@ -77,11 +96,11 @@ public class SetIntRecord implements LogRecord {
       Page p = new Page(rec);
       p.setInt(0, SETINT);
       p.setInt(tpos, txnum);
-      p.setString(fpos, blk.fileName());
+      p.setInt(fpos, lm.fileId(blk.fileName()));
       p.setInt(bpos, blk.number());
       p.setInt(opos, offset);
       p.setInt(vpos, val);
       p.setInt(nvpos, newval);
-      return lm.append(rec);
+      return rec;
    }
 }
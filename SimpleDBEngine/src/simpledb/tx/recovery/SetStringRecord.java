@@ -10,15 +10,16 @@ public class SetStringRecord implements LogRecord {
    private BlockId blk;
 
    /**
-    * Create a new setint log record.
-    * @param bb the bytebuffer containing the log values
+    * Create a new setstring log record.
+    * @param p the page containing the log values
+    * @param lm the log manager, which knows the name of each file id
     */
-   public SetStringRecord(Page p) {
+   public SetStringRecord(Page p, LogMgr lm) {
       int tpos = Integer.BYTES;
       txnum = p.getInt(tpos);
       int fpos = tpos + Integer.BYTES;
-      String filename = p.getString(fpos);
-      int bpos = fpos + Page.maxLength(filename.length());
+      String filename = lm.fileName(p.getInt(fpos));
+      int bpos = fpos + Integer.BYTES;
       int blknum = p.getInt(bpos);
       blk = new BlockId(filename, blknum);
       int opos = bpos + Integer.BYTES;
@@ -37,6 +38,10 @@ public class SetStringRecord implements LogRecord {
       return txnum;
    }
 
+   public BlockId block() {
+      return blk;
+   }
+
    public String toString() {
       return "<SETSTRING " + txnum + " " + blk + " " + offset + " " + val + " " + newval + ">";
    }
@@ -54,24 +59,37 @@ public class SetStringRecord implements LogRecord {
       tx.unpin(blk);
    }
 
-   public void redo(Transaction tx) {
-      tx.pin(blk);
-      tx.setString(blk, offset, newval, false); // don't log the redo!
-      tx.unpin(blk);
+   public void redo(Page p) {
+      p.setString(offset, newval);
+   }
+
+   /**
+    * Logs the undo of this record as a setstring record
+    * of the same transaction that restores the old value.
+    */
+   public int writeUndoToLog(LogMgr lm) {
+      return writeToLog(lm, txnum, blk, offset, newval, val);
    }
 
    /**
-    * A static method to write a setInt record to the log.
-    * This log record contains the SETINT operator,
-    * followed by the transaction id, the filename, number,
-    * and offset of the modified block, and the previous
-    * integer value at that offset.
+    * A static method to write a setString record to the log.
+    * This log record contains the SETSTRING operator,
+    * followed by the transaction id, the file id (from
+    * the log's file dictionary) and number of the modified block,
+    * the offset, and the previous and new string values at that offset.
     * @return the LSN of the last log value
     */
    public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, String val, String newval) {
+      return lm.append(toBytes(lm, txnum, blk, offset, val, newval));
+   }
+
+   /**
+    * Returns the bytes of a setstring record, as written by writeToLog.
+    */
+   static byte[] toBytes(LogMgr lm, int txnum, BlockId blk, int offset, String val, String newval) {
       int tpos = Integer.BYTES;
       int fpos = tpos + Integer.BYTES;
-      int bpos = fpos + Page.maxLength(blk.fileName().length());
+      int bpos = fpos + Integer.BYTES;
       int opos = bpos + Integer.BYTES;
       int vpos = opos + Integer.BYTES;
       int nvpos = vpos + Page.maxLength(val.length());
@@ -80,11 +98,11 @@ public class SetStringRecord implements LogRecord {
       Page p = new Page(rec);
       p.setInt(0, SETSTRING);
       p.setInt(tpos, txnum);
-      p.setString(fpos, blk.fileName());
+      p.setInt(fpos, lm.fileId(blk.fileName()));
       p.setInt(bpos, blk.number());
       p.setInt(opos, offset);
       p.setString(vpos, val);
       p.setString(nvpos, newval);
-      return lm.append(rec);
+      return rec;
    }
 }
\ No newline at end of file
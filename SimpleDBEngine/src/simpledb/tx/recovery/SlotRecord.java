@@ -0,0 +1,125 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * The log record of a whole-slot insertion.
+ * Instead of one record for the slot's flag and one for
+ * each of its fields, the insertion is logged once, with
+ * the new contents of the entire slot.
+ * The record's undo restores the slot's previous flag
+ * (the first integer of the slot), which makes the slot
+ * empty again; the other bytes of an empty slot do not matter.
+ */
+public class SlotRecord implements LogRecord {
+   private int txnum, offset, oldflag;
+   private byte[] image;
+   private BlockId blk;
+
+   /**
+    * Create a new slot log record.
+    * @param p the page containing the log values
+    * @param lm the log manager, which knows the name of each file id
+    */
+   public SlotRecord(Page p, LogMgr lm) {
+      int tpos = Integer.BYTES;
+      txnum = p.getInt(tpos);
+      int fpos = tpos + Integer.BYTES;
+      String filename = lm.fileName(p.getInt(fpos));
+      int bpos = fpos + Integer.BYTES;
+      blk = new BlockId(filename, p.getInt(bpos));
+      int opos = bpos + Integer.BYTES;
+      offset = p.getInt(opos);
+      int fgpos = opos + Integer.BYTES;
+      oldflag = p.getInt(fgpos);
+      int ipos = fgpos + Integer.BYTES;
+      image = p.getBytes(ipos);
+   }
+
+   public int op() {
+      return SLOT;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
+   public String toString() {
+      return "<SLOT " + txnum + " " + blk + " " + offset + " " + oldflag
+            + " " + image.length + " bytes>";
+   }
+
+   /**
+    * Restores the slot's previous flag.
+    * The method pins a buffer to the specified block,
+    * calls setInt to restore the flag,
+    * and unpins the buffer.
+    */
+   public void undo(Transaction tx) {
+      tx.pin(blk);
+      tx.setInt(blk, offset, oldflag, false); // don't log the undo!
+      tx.unpin(blk);
+   }
+
+   public void redo(Page p) {
+      p.setRawBytes(offset, image);
+   }
+
+   /**
+    * Logs the undo of this record as a setint record
+    * of the same transaction that restores the old flag.
+    */
+   public int writeUndoToLog(LogMgr lm) {
+      int newflag = new Page(image).getInt(0);
+      return SetIntRecord.writeToLog(lm, txnum, blk, offset, newflag, oldflag);
+   }
+
+   /**
+    * Returns the size of the slot record of a slot.
+    * @param slotsize the size of the slot
+    * @return the size of its record
+    */
+   public static int size(int slotsize) {
+      return 7 * Integer.BYTES + slotsize;
+   }
+
+   /**
+    * A static method to write a slot record to the log.
+    * This log record contains the SLOT operator,
+    * followed by the transaction id, the file id and number
+    * of the modified block, the offset of the slot,
+    * the slot's previous flag, and the new contents of the slot.
+    * @return the LSN of the last log value
+    */
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, int oldflag, byte[] image) {
+      return lm.append(toBytes(lm, txnum, blk, offset, oldflag, image));
+   }
+
+   /**
+    * Returns the bytes of a slot record, as written by writeToLog.
+    */
+   static byte[] toBytes(LogMgr lm, int txnum, BlockId blk, int offset, int oldflag, byte[] image) {
+      int tpos = Integer.BYTES;
+      int fpos = tpos + Integer.BYTES;
+      int bpos = fpos + Integer.BYTES;
+      int opos = bpos + Integer.BYTES;
+      int fgpos = opos + Integer.BYTES;
+      int ipos = fgpos + Integer.BYTES;
+      byte[] rec = new byte[size(image.length)];
+      Page p = new Page(rec);
+      p.setInt(0, SLOT);
+      p.setInt(tpos, txnum);
+      p.setInt(fpos, lm.fileId(blk.fileName()));
+      p.setInt(bpos, blk.number());
+      p.setInt(opos, offset);
+      p.setInt(fgpos, oldflag);
+      p.setBytes(ipos, image);
+      return rec;
+   }
+}
@@ -29,7 +29,6 @@ public class StartCheckpointRecord implements LogRecord {
     * contains no undo information.
     */
    public void undo(Transaction tx) {}
-   public void redo(Transaction tx) {}
 
    public String toString() {
       return "<STARTCHECKPOINT>";